@@ -17,39 +17,59 @@
 package com.kmagic.solitaire;
 
 import android.graphics.Canvas;
+import android.os.SystemClock;
+import android.view.animation.AccelerateDecelerateInterpolator;
+import android.view.animation.DecelerateInterpolator;
+import android.view.animation.Interpolator;
 import java.lang.Runnable;
 import java.lang.Math;
+import java.util.ArrayList;
 
 /**
- * AnimateCard handles card animations, moving cards around
+ * AnimateCard handles card animations, moving cards around. Every move
+ * is a flight with its own start time, duration and easing, placed by
+ * the time of the frame drawn, so moves take as long at any frame rate
+ * and many can be in the air at once.
  */
 public class AnimateCard {
 
-  // Animation Speed, pixels per frame
-  private static final float PPF = 40;
+  // Animation speed, pixels per millisecond
+  private static final float SPEED = 1.2f;
+  // Shortest time a move takes, milliseconds
+  private static final long MIN_DURATION = 50;
+  // Milliseconds each card of a batch takes to land
+  private static final long BATCH_DURATION = 330;
+  // Milliseconds over which the cards of a batch take off
+  private static final long BATCH_SPREAD = 660;
+
+  private static final Interpolator MOVE_EASING = new AccelerateDecelerateInterpolator();
+  private static final Interpolator BATCH_EASING = new DecelerateInterpolator();
 
   protected SolitaireView mView;
-  private Card[] mCard;
-  private CardAnchor mCardAnchor;
-  private int mCount;
-  private int mFrames;
-  private float mDx;
-  private float mDy;
-  private boolean mAnimate;
-  private Runnable mCallback;
+  private ArrayList<Flight> mFlight;
+  private ArrayList<Flight> mFree;
+  private ArrayList<Runnable> mLanded;
+  private boolean mStopWhenDone;
 
   public AnimateCard(SolitaireView view) {
     mView = view;
-    mAnimate = false;
-    mCard = new Card[104];
-    mCallback = null;
+    mFlight = new ArrayList<>();
+    mFree = new ArrayList<>();
+    mLanded = new ArrayList<>();
+    mStopWhenDone = false;
   }
 
   /**
    * Return animation status
    * @return true if animated, false if not
    */
-  public boolean isAnimated() { return mAnimate; }
+  public boolean isAnimated() { return !mFlight.isEmpty(); }
+
+  /**
+   * Stop animating the view once the cards in flight have landed,
+   * instead of now
+   */
+  public void stopWhenDone() { mStopWhenDone = true; }
 
   /**
    * Draw one or more card(s), actual animation
@@ -57,18 +77,61 @@ public class AnimateCard {
    * @param canvas canvas to draw on, passed to DrawMaster
    */
   public void draw(DrawMaster drawMaster, Canvas canvas) {
-    if (mAnimate) {
-      for (int j = 0; j < mCount; j++) {
-        mCard[j].movePosition(-mDx, -mDy);
+    draw(drawMaster, canvas, SystemClock.uptimeMillis());
+  }
+
+  /**
+   * Draw the cards in flight where they are at a time
+   * @param drawMaster DrawMaster instance to use
+   * @param canvas canvas to draw on, passed to DrawMaster
+   * @param now the time of the frame, uptime milliseconds
+   */
+  public void draw(DrawMaster drawMaster, Canvas canvas, long now) {
+    if (mFlight.isEmpty()) {
+      return;
+    }
+    // Land the flights that are over, in the order they started
+    for (int i = 0; i < mFlight.size(); ) {
+      Flight flight = mFlight.get(i);
+      if (now < flight.getEnd()) {
+        i++;
+        continue;
+      }
+      mFlight.remove(i);
+      for (int j = 0; j < flight.mCount; j++) {
+        flight.mAnchor.addCard(flight.mCard[j]);
+        drawMaster.drawCard(canvas, flight.mCard[j]);
+      }
+      if (flight.mCallback != null) {
+        mLanded.add(flight.mCallback);
       }
-      for (int i = 0; i < mCount; i++) {
-        drawMaster.drawCard(canvas, mCard[i]);
+      recycle(flight);
+    }
+    // Cards waiting to take off go under those in flight
+    for (int i = 0; i < mFlight.size(); i++) {
+      Flight flight = mFlight.get(i);
+      if (now < flight.mStart) {
+        flight.draw(drawMaster, canvas);
+      }
+    }
+    for (int i = 0; i < mFlight.size(); i++) {
+      Flight flight = mFlight.get(i);
+      if (now >= flight.mStart) {
+        flight.place(now);
+        flight.draw(drawMaster, canvas);
       }
-      mFrames--;
-      if (mFrames <= 0) {
-        mAnimate = false;
-        finish();
+    }
+
+    if (!mLanded.isEmpty()) {
+      mView.drawBoard();
+      for (int i = 0; i < mLanded.size(); i++) {
+        mLanded.get(i).run();
       }
+      mLanded.clear();
+    }
+    if (mFlight.isEmpty() && mStopWhenDone) {
+      mStopWhenDone = false;
+      mView.stopAnimating();
     }
   }
 
@@ -83,17 +146,60 @@ public class AnimateCard {
                         CardAnchor anchor,
                         int count,
                         Runnable callback) {
-    float x = anchor.getX();
-    float y = anchor.getNewY();
-    mCardAnchor = anchor;
-    mCallback = callback;
-    mAnimate = true;
+    moveCards(cards, anchor, count, 1, callback);
+  }
+
+  /**
+   * Move cards to a given anchor's location at a multiple of the speed
+   * @param cards the cards to move
+   * @param anchor the card anchor to move the card to
+   * @param count the count/number of cards to move
+   * @param speed the multiple of the animation speed, 1 for normal
+   * @param callback callback to alert calling class
+   */
+  public void moveCards(Card[] cards,
+                        CardAnchor anchor,
+                        int count,
+                        float speed,
+                        Runnable callback) {
+    Flight flight = obtain(count);
+    for (int i = 0; i < count; i++) {
+      flight.mCard[i] = cards[i];
+    }
+    move(flight, count, anchor, speed, callback);
+  }
 
+  /**
+   * Move a batch of cards, each to its own anchor, as one animation. The
+   * cards take off one after another but overlap in flight, and all land
+   * in about a second whatever their count.
+   * @param cards the cards to move, taken off their anchors
+   * @param anchors the anchor each card goes to
+   * @param count the count of cards
+   * @param callback called when the last card has landed
+   */
+  public void moveBatch(Card[] cards,
+                        CardAnchor[] anchors,
+                        final int count,
+                        final Runnable callback) {
+    long now = SystemClock.uptimeMillis();
+    Runnable done = new Runnable() {
+      @Override
+      public void run() {
+        mView.stopAnimating();
+        if (callback != null) {
+          callback.run();
+        }
+      }
+    };
     for (int i = 0; i < count; i++) {
-      mCard[i] = cards[i];
+      Flight flight = obtain(1);
+      flight.mCard[0] = cards[i];
+      fly(flight, 1, anchors[i],
+          anchors[i].getX() - cards[i].getX(), anchors[i].getNewY() - cards[i].getY(),
+          now + i * BATCH_SPREAD / count, BATCH_DURATION, BATCH_EASING,
+          i == count - 1 ? done : null);
     }
-    mCount = count;
-    move(mCard[0], x, y);
   }
 
   /**
@@ -102,66 +208,129 @@ public class AnimateCard {
    * @param anchor the card anchor to move the card to
    */
   public void moveCard(Card card, CardAnchor anchor) {
-    float x = anchor.getX();
-    float y = anchor.getNewY();
-    mCardAnchor = anchor;
-    mCallback = null;
-    mAnimate = true;
-
-    mCard[0] = card;
-    mCount = 1;
-    move(card, x, y);
+    Flight flight = obtain(1);
+    flight.mCard[0] = card;
+    move(flight, 1, anchor, 1, null);
   }
 
   /**
-   * Move a card
-   * @param card the card to move
-   * @param x the x coordinate to move to
-   * @param y the y coordinate to move to
+   * Move cards at a multiple of the animation speed, taking off now
    */
-  private void move(Card card, float x, float y) {
-    float dx = x - card.getX();
-    float dy = y - card.getY();
+  private void move(Flight flight, int count, CardAnchor anchor, float speed,
+                    Runnable callback) {
+    float dx = anchor.getX() - flight.mCard[0].getX();
+    float dy = anchor.getNewY() - flight.mCard[0].getY();
+    long duration = Math.round(Math.max(MIN_DURATION, Math.sqrt(dx * dx + dy * dy) / SPEED) / speed);
+    fly(flight, count, anchor, dx, dy, SystemClock.uptimeMillis(), duration,
+        MOVE_EASING, callback);
+  }
 
-    mFrames = Math.round((float)Math.sqrt(dx * dx + dy * dy) / PPF);
-    if (mFrames == 0) {
-      mFrames = 1;
+  /**
+   * Start a flight
+   * @param flight the flight, holding the cards to move
+   * @param count the count of cards
+   * @param anchor the anchor the cards land on
+   * @param dx the distance to move the cards in x
+   * @param dy the distance to move the cards in y
+   * @param start the time the cards take off, uptime milliseconds
+   * @param duration the milliseconds the cards are in flight
+   * @param easing the easing of the move
+   * @param callback called when the cards have landed, may be null
+   */
+  private void fly(Flight flight, int count, CardAnchor anchor, float dx, float dy,
+                   long start, long duration, Interpolator easing, Runnable callback) {
+    flight.mCount = count;
+    flight.mAnchor = anchor;
+    for (int i = 0; i < count; i++) {
+      flight.mX[i] = flight.mCard[i].getX();
+      flight.mY[i] = flight.mCard[i].getY();
     }
-    mDx = dx / mFrames;
-    mDy = dy / mFrames;
-
+    flight.mDx = dx;
+    flight.mDy = dy;
+    flight.mStart = start;
+    flight.mDuration = duration;
+    flight.mEasing = easing;
+    flight.mCallback = callback;
+    mFlight.add(flight);
     mView.startAnimating();
-    if (!mAnimate) {
-      finish();
+  }
+
+  private Flight obtain(int count) {
+    Flight flight = mFree.isEmpty() ? new Flight() : mFree.remove(mFree.size() - 1);
+    flight.ensureCapacity(count);
+    return flight;
+  }
+
+  private void recycle(Flight flight) {
+    for (int i = 0; i < flight.mCount; i++) {
+      flight.mCard[i] = null;
     }
+    flight.mAnchor = null;
+    flight.mCallback = null;
+    mFree.add(flight);
   }
 
   /**
-   * Finish animation
+   * Cancel animation, the cards in flight land at once
    */
-  private void finish() {
-    for (int i = 0; i < mCount; i++) {
-      mCardAnchor.addCard(mCard[i]);
-      mCard[i] = null;
+  public void cancel() {
+    for (int i = 0; i < mFlight.size(); i++) {
+      Flight flight = mFlight.get(i);
+      for (int j = 0; j < flight.mCount; j++) {
+        flight.mAnchor.addCard(flight.mCard[j]);
+      }
+      recycle(flight);
     }
-    mCardAnchor = null;
-    mView.drawBoard();
-    if (mCallback != null) {
-      mCallback.run();
+    mFlight.clear();
+    mStopWhenDone = false;
+  }
+}
+
+/**
+ * Cards moving together to an anchor
+ */
+class Flight {
+  Card[] mCard;
+  int mCount;
+  CardAnchor mAnchor;
+  // Positions the cards took off from
+  float[] mX;
+  float[] mY;
+  float mDx;
+  float mDy;
+  long mStart;
+  long mDuration;
+  Interpolator mEasing;
+  Runnable mCallback;
+
+  public Flight() {
+    ensureCapacity(1);
+  }
+
+  public void ensureCapacity(int count) {
+    if (mCard == null || mCard.length < count) {
+      mCard = new Card[count];
+      mX = new float[count];
+      mY = new float[count];
     }
   }
 
+  public long getEnd() { return mStart + mDuration; }
+
   /**
-   * Cancel animation
+   * Put the cards where they are at a time
+   * @param now the time, uptime milliseconds
    */
-  public void cancel() {
-    if (mAnimate) {
-      for (int i = 0; i < mCount; i++) {
-        mCardAnchor.addCard(mCard[i]);
-        mCard[i] = null;
-      }
-      mCardAnchor = null;
-      mAnimate = false;
+  public void place(long now) {
+    float done = mEasing.getInterpolation(Math.min(1f, (float)(now - mStart) / mDuration));
+    for (int i = 0; i < mCount; i++) {
+      mCard[i].setPosition(mX[i] + mDx * done, mY[i] + mDy * done);
+    }
+  }
+
+  public void draw(DrawMaster drawMaster, Canvas canvas) {
+    for (int i = 0; i < mCount; i++) {
+      drawMaster.drawCard(canvas, mCard[i]);
     }
   }
 }
@@ -16,6 +16,8 @@
 */ 
 package com.kmagic.solitaire;
 
+import com.kmagic.solitaire.engine.Cards;
+
 /**
  * Playing Card
  */
@@ -51,6 +53,14 @@ class Card {
     mY = 1;
   }
 
+  /**
+   * Create a new card from an engine card code
+   * @param code the card code
+   */
+  public Card(final int code) {
+    this(Cards.value(code), Cards.suit(code));
+  }
+
   /**
    * Get card x coordinate
    * @return x coordinate
@@ -75,6 +85,12 @@ class Card {
    */
   public int getSuit() { return mSuit; }
 
+  /**
+   * Get engine card code
+   * @return the card code
+   */
+  public int getCode() { return Cards.make(mValue, mSuit); }
+
   /**
    * Set card x,y coordinates
    * @param x x coordinate
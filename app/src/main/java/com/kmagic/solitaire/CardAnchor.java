@@ -17,22 +17,18 @@
 package com.kmagic.solitaire;
 
 import android.graphics.Canvas;
+import android.graphics.Rect;
 
+import com.kmagic.solitaire.engine.Cards;
+import com.kmagic.solitaire.engine.Pile;
 
 class CardAnchor {
 
   public static final int MAX_CARDS = 104;
-  public static final int SEQ_SINK = 1;
-  public static final int SUIT_SEQ_STACK = 2;
-  public static final int DEAL_FROM = 3;
-  public static final int DEAL_TO = 4;
-  public static final int SPIDER_STACK = 5;
-  public static final int FREECELL_STACK = 6;
-  public static final int FREECELL_HOLD = 7;
-  public static final int GENERIC_ANCHOR = 8;
 
   private int mNumber;
   protected Rules mRules;
+  protected Pile mPile;
   protected float mX;
   protected float mY;
   protected Card[] mCard;
@@ -42,51 +38,42 @@ class CardAnchor {
   protected float mRightEdge;
   protected float mBottom;
   protected boolean mDone;
+  // Board area drawn last, see takeDirty()
+  private Rect mDrawn;
+  private boolean mDirty;
 
-  //Variables for GenericAnchor
-  protected int mSTARTSEQ;
-  protected int mBUILDSEQ;
-  protected int mMOVESEQ;
-  protected int mBUILDSUIT;
-  protected int mMOVESUIT;
-  protected boolean mBUILDWRAP;
-  protected boolean mMOVEWRAP;
-  protected int mDROPOFF;
-  protected int mPICKUP;
-  protected int mDISPLAY; 
-  protected int mHACK;
-  
   // ==========================================================================
-  // Create a CardAnchor
-  // -------------------
-  public static CardAnchor CreateAnchor(int type, int number, Rules rules) {
+  // Create a CardAnchor, the engine pile holds the rules for it
+  // -----------------------------------------------------------
+  public static CardAnchor CreateAnchor(Pile pile, int number, Rules rules) {
     CardAnchor ret = null;
-    switch (type) {
-      case SEQ_SINK:
+    switch (pile.getKind()) {
+      case Pile.SEQ_SINK:
         ret = new SeqSink();
         break;
-      case SUIT_SEQ_STACK:
+      case Pile.SUIT_SEQ_STACK:
         ret = new SuitSeqStack();
         break;
-      case DEAL_FROM:
+      case Pile.DEAL_FROM:
         ret = new DealFrom();
         break;
-      case DEAL_TO:
+      case Pile.DEAL_TO:
         ret = new DealTo();
         break;
-      case SPIDER_STACK:
+      case Pile.SPIDER_STACK:
         ret = new SpiderStack();
         break;
-      case FREECELL_STACK:
+      case Pile.FREECELL_STACK:
         ret = new FreecellStack();
         break;
-      case FREECELL_HOLD:
+      case Pile.FREECELL_HOLD:
         ret = new FreecellHold();
         break;
-      case GENERIC_ANCHOR:
+      case Pile.GENERIC:
         ret = new GenericAnchor();
         break;
     }
+    ret.setPile(pile);
     ret.setRules(rules);
     ret.setNumber(number);
     return ret;
@@ -103,6 +90,8 @@ class CardAnchor {
     mBottom = -1;
     mNumber = -1;
     mDone = false;
+    mDrawn = new Rect();
+    mDirty = true;
   }
 
   // ==========================================================================
@@ -118,42 +107,27 @@ class CardAnchor {
   public int getMovableCount() { return mCardCount > 0 ? 1 : 0; }
   public float getX() { return mX; }
   public float getNewY() { return mY; }
+  public Pile getPile() { return mPile; }
+  public int getTopCode() { return mCardCount > 0 ? mCard[mCardCount-1].getCode() : Cards.NONE; }
+  public boolean isDirty() { return mDirty; }
 
   public void setBottom(float edge) { mBottom = edge; }
-  public void setHiddenCount(int count) { mHiddenCount = count; }
+  public void setHiddenCount(int count) { mHiddenCount = count; mDirty = true; }
   public void setLeftEdge(float edge) { mLeftEdge = edge; }
   public void setMaxHeight(int maxHeight) { }
   public void setNumber(int number) { mNumber = number; }
   public void setRightEdge(float edge) { mRightEdge = edge; }
   public void setRules(Rules rules) { mRules = rules; }
+  public void setPile(Pile pile) { mPile = pile; }
   public void setShowing(int showing) {  }
   protected void setCardPosition(int idx) { mCard[idx].setPosition(mX, mY); }
-  public void setDone(boolean done) { mDone = done; }
+  public void setDone(boolean done) { mDone = done; mDirty = true; }
+  protected void setDirty() { mDirty = true; }
 
-  //Methods for GenericAnchor
-  public void setStartSeq(int seq){ mSTARTSEQ = seq; }
-  public void setBuildSeq(int buildseq){ mBUILDSEQ = buildseq;  }
-  public void setMoveSeq(int moveseq){ mMOVESEQ = moveseq;  }
-  
-  public void setWrap(boolean wrap){ mBUILDWRAP = wrap; mMOVEWRAP = wrap; }
-  public void setBuildWrap(boolean buildwrap){ mBUILDWRAP = buildwrap;  }
-  
-  public void setSuit(int suit){ mBUILDSUIT = suit; mMOVESUIT = suit; }
-  public void setBuildSuit(int buildsuit){ mBUILDSUIT = buildsuit;  }
-  public void setMoveSuit(int movesuit){ mMOVESUIT = movesuit;  }
-  
-  public void setBehavior(int beh){ mDROPOFF = beh; mPICKUP = beh; }
-  public void setDropoff(int dropoff){ mDROPOFF = dropoff;  }
-  public void setPickup(int pickup){ mPICKUP = pickup;  }
-  
-  public void setDisplay(int display){ mDISPLAY = display;  }
-  
-  public void setHack(int hack){ mHACK = hack; }
-  //End Methods for Generic Anchor  
-  
   public void setPosition(float x, float y) {
     mX = x;
     mY = y;
+    mDirty = true;
     for (int i = 0; i < mCardCount; i++) {
       setCardPosition(i);
     }
@@ -165,6 +139,7 @@ class CardAnchor {
   public void addCard(Card card) {
     mCard[mCardCount++] = card;
     setCardPosition(mCardCount - 1);
+    mDirty = true;
   }
 
   public void addMoveCard(MoveCard moveCard) {
@@ -176,9 +151,33 @@ class CardAnchor {
     }
   }
 
-  public boolean dropSingleCard(Card card) { return false; }
   public boolean canDropCard(MoveCard moveCard, int close) { return false; }
 
+  /**
+   * Check if the cards being moved are over this anchor and allowed
+   * on it by the engine game, which still holds them on their anchor
+   * @param moveCard the cards being moved
+   * @param close how close the cards need to be, in half cards
+   * @return true if the cards can be dropped, false if not
+   */
+  protected boolean canDropOn(MoveCard moveCard, int close) {
+    Card card = moveCard.getTopCard();
+    float x = card.getX() + Card.WIDTH/2;
+    float y = card.getY() + Card.HEIGHT/2;
+    return isOverCard(x, y, close) &&
+        mRules.GetGame().canMove(moveCard.getAnchor().getNumber(), mNumber,
+                                 moveCard.getCount());
+  }
+
+  /**
+   * Get the count of cards on top that the engine pile lets move
+   * together, from the runs the engine state keeps
+   * @return count of movable cards
+   */
+  protected int getRunCount() {
+    return mRules.GetGame().getMovableCount(mNumber);
+  }
+
   // ==========================================================================
   // Functions to take cards
   // -----------------------
@@ -195,6 +194,7 @@ class CardAnchor {
   public Card popCard() {
     Card ret = mCard[--mCardCount];
     mCard[mCardCount] = null;
+    mDirty = true;
     return ret;
   }
 
@@ -206,6 +206,7 @@ class CardAnchor {
   public boolean unhideTopCard() {
     if (mCardCount  > 0 && mHiddenCount > 0 && mHiddenCount == mCardCount) {
       mHiddenCount--;
+      mDirty = true;
       return true;
     }
     return false;
@@ -249,6 +250,54 @@ class CardAnchor {
   // ==========================================================================
   // Functions to Draw
   // ----------------------------
+
+  /**
+   * Get the board area the anchor draws, the empty anchor and every card
+   * @param bounds set to the area
+   */
+  public void getBounds(Rect bounds) {
+    float left = mX;
+    float top = mY;
+    float right = mX;
+    float bottom = mY;
+    for (int i = 0; i < mCardCount; i++) {
+      float x = mCard[i].getX();
+      float y = mCard[i].getY();
+      left = Math.min(left, x);
+      top = Math.min(top, y);
+      right = Math.max(right, x);
+      bottom = Math.max(bottom, y);
+    }
+    // A pixel more for anti aliased edges
+    bounds.set((int)left - 1, (int)top - 1,
+               (int)right + Card.WIDTH + 2, (int)bottom + Card.HEIGHT + 2);
+  }
+
+  /**
+   * Get the board area to draw again if the anchor changed since it was
+   * last drawn, where it was then and where it is now
+   * @param dirty set to the area
+   * @return true if the anchor changed, false if not
+   */
+  public boolean takeDirty(Rect dirty) {
+    if (!mDirty) {
+      return false;
+    }
+    dirty.set(mDrawn);
+    getBounds(mDrawn);
+    dirty.union(mDrawn);
+    mDirty = false;
+    return true;
+  }
+
+  /**
+   * Note the whole anchor has been drawn
+   */
+  public void setDrawn() {
+    getBounds(mDrawn);
+    mDirty = false;
+  }
+
   public void Draw(DrawMaster drawMaster, Canvas canvas) {
     if (mCardCount == 0) {
       drawMaster.drawEmptyAnchor(canvas, mX, mY, mDone);
@@ -267,7 +316,7 @@ class DealTo extends CardAnchor {
   }
 
   @Override
-  public void setShowing(int showing) { mShowing = showing; }
+  public void setShowing(int showing) { mShowing = showing; setDirty(); }
 
   @Override
   protected void setCardPosition(int idx) {
@@ -385,6 +434,7 @@ class SeqStack extends CardAnchor {
     if (isOverDeck(x, y)) {
       if (mHiddenCount >= mCardCount) {
         mHiddenCount = mCardCount == 0 ? 0 : mCardCount - 1;
+        setDirty();
       } else if (mCardCount - mHiddenCount > 1) {
         return true;
       }
@@ -482,31 +532,7 @@ class SeqSink extends CardAnchor {
 
   @Override
   public boolean canDropCard(MoveCard moveCard, int close) {
-    Card card = moveCard.getTopCard();
-    float x = card.getX() + Card.WIDTH/2;
-    float y = card.getY() + Card.HEIGHT/2;
-    Card topCard = mCardCount > 0 ? mCard[mCardCount - 1] : null;
-//    float my = mCardCount > 0 ? topCard.getY() : mY;
-
-    if (isOverCard(x, y, close)) {
-      if (moveCard.getCount() == 1) {
-        if ((topCard == null && card.getValue() == 1) ||
-            (topCard != null && card.getSuit() == topCard.getSuit() &&
-             card.getValue() == topCard.getValue() + 1)) {
-          return true;
-        }
-      }
-    }
-
-    return false;
-  }
-
-  @Override
-  public boolean dropSingleCard(Card card) {
-    Card topCard = mCardCount > 0 ? mCard[mCardCount - 1] : null;
-    return (topCard == null && card.getValue() == 1) ||
-            (topCard != null && card.getSuit() == topCard.getSuit() &&
-                    card.getValue() == topCard.getValue() + 1);
+    return canDropOn(moveCard, close);
   }
 }
 
@@ -515,25 +541,7 @@ class SuitSeqStack extends SeqStack {
 
   @Override
   public boolean canDropCard(MoveCard moveCard, int close) {
-
-    Card card = moveCard.getTopCard();
-    float x = card.getX() + Card.WIDTH/2;
-    float y = card.getY() + Card.HEIGHT/2;
-    Card topCard = mCardCount > 0 ? mCard[mCardCount - 1] : null;
-    float my = mCardCount > 0 ? topCard.getY() : mY;
-
-    if (isOverCard(x, y, close)) {
-      if (topCard == null) {
-        if (card.getValue() == Card.KING) {
-          return true;
-        }
-      } else if ((card.getSuit()&1) != (topCard.getSuit()&1) &&
-                 card.getValue() == topCard.getValue() - 1) {
-        return true;
-      }
-    }
-
-    return false;
+    return canDropOn(moveCard, close);
   }
 
   @Override
@@ -562,20 +570,7 @@ class SpiderStack extends SeqStack {
 
   @Override
   public boolean canDropCard(MoveCard moveCard, int close) {
-
-    Card card = moveCard.getTopCard();
-    float x = card.getX() + Card.WIDTH/2;
-    float y = card.getY() + Card.HEIGHT/2;
-    Card topCard = mCardCount > 0 ? mCard[mCardCount - 1] : null;
-//    float my = mCardCount > 0 ? topCard.getY() : mY;
-
-    if (isOverCard(x, y, close)) {
-      if (topCard == null || card.getValue() == topCard.getValue() - 1) {
-        return true;
-      }
-    }
-
-    return false;
+    return canDropOn(moveCard, close);
   }
 
   @Override
@@ -583,17 +578,7 @@ class SpiderStack extends SeqStack {
     if (mCardCount < 2)
       return mCardCount;
 
-    int retCount = 1;
-    int suit = mCard[mCardCount-1].getSuit();
-    int val = mCard[mCardCount-1].getValue();
-
-    for (int i = mCardCount-2; i >= mHiddenCount; i--, retCount++, val++) {
-      if (mCard[i].getSuit() != suit || mCard[i].getValue() != val + 1) {
-        break;
-      }
-    }
-
-    return retCount;
+    return getRunCount();
   }
 
   @Override
@@ -614,8 +599,7 @@ class SpiderStack extends SeqStack {
     if (super.expandStack(x, y)) {
       Card bottom = mCard[mCardCount-1];
       Card second = mCard[mCardCount-2];
-      if (bottom.getSuit() == second.getSuit() &&
-          bottom.getValue() == second.getValue() - 1) {
+      if (mPile.isLink(second.getCode(), bottom.getCode())) {
         return true;
       }
     }
@@ -641,25 +625,7 @@ class FreecellStack extends SeqStack {
 
   @Override
   public boolean canDropCard(MoveCard moveCard, int close) {
-
-    Card card = moveCard.getTopCard();
-    float x = card.getX() + Card.WIDTH/2;
-    float y = card.getY() + Card.HEIGHT/2;
-    Card topCard = mCardCount > 0 ? mCard[mCardCount - 1] : null;
-//    float my = mCardCount > 0 ? topCard.getY() : mY;
-
-    if (isOverCard(x, y, close)) {
-      if (topCard == null) {
-        if (mRules.CountFreeSpaces() >= moveCard.getCount()) {
-          return true;
-        }
-      } else if ((card.getSuit()&1) != (topCard.getSuit()&1) &&
-                 card.getValue() == topCard.getValue() - 1) {
-        return true;
-      }
-    }
-
-    return false;
+    return canDropOn(moveCard, close);
   }
 
   @Override
@@ -667,17 +633,7 @@ class FreecellStack extends SeqStack {
     if (mCardCount < 2)
       return mCardCount;
 
-    int retCount = 1;
-    int maxMoveCount = mRules.CountFreeSpaces() + 1;
-
-    for (int i = mCardCount - 2; i >= 0 && retCount < maxMoveCount; i--, retCount++) {
-      if ((mCard[i].getSuit()&1) == (mCard[i+1].getSuit()&1) ||
-          mCard[i].getValue() != mCard[i+1].getValue() + 1) {
-        break;
-      }
-    }
-
-    return retCount;
+    return getRunCount();
   }
 
   @Override
@@ -697,8 +653,7 @@ class FreecellStack extends SeqStack {
       if (mRules.CountFreeSpaces() > 0) {
         Card bottom = mCard[mCardCount-1];
         Card second = mCard[mCardCount-2];
-        if ((bottom.getSuit()&1) != (second.getSuit()&1) &&
-            bottom.getValue() == second.getValue() - 1) {
+        if (mPile.isLink(second.getCode(), bottom.getCode())) {
           return true;
         }
       }
@@ -723,9 +678,7 @@ class FreecellHold extends CardAnchor {
 
   @Override
   public boolean canDropCard(MoveCard moveCard, int close) {
-    Card card = moveCard.getTopCard();
-    return mCardCount == 0 && moveCard.getCount() == 1 &&
-            isOverCard(card.getX() + Card.WIDTH / 2, card.getY() + Card.HEIGHT / 2, close);
+    return canDropOn(moveCard, close);
   }
 
 }
@@ -733,39 +686,6 @@ class FreecellHold extends CardAnchor {
 // New Abstract
 class GenericAnchor extends CardAnchor {
 
-  //Sequence start values
-  public static final int START_ANY=1; // An empty stack can take any card.
-  public static final int START_KING=2; // An empty stack can take only a king.
-
-  //Value Sequences
-  public static final int SEQ_ANY=1; //You can build as you like
-  public static final int SEQ_SEQ=2;  //Building only allows sequential
-  public static final int SEQ_ASC=3;  //Ascending only
-  public static final int SEQ_DSC=4;  //Descending only
-    
-  //Suit Sequences that limits how adding cards to the stack works
-  public static final int SUIT_ANY=1;  //Build doesn't care about suite
-  public static final int SUIT_RB=2;  //Must alternate Red & Black
-  public static final int SUIT_OTHER=3;//As long as different
-  public static final int SUIT_COLOR=4;//As long as same color
-  public static final int SUIT_SAME=5; //As long as same suit
-    
-  //Pickup & Dropoff Behavior
-  public static final int PACK_NONE=1;  // Interaction in this mode not allowed
-  public static final int PACK_ONE=2;  //Can only accept 1 card
-  public static final int PACK_MULTI=3;  //Can accept multiple cards
-  public static final int PACK_FIXED=4;  //Don't think this will ever be used
-  public static final int PACK_LIMIT_BY_FREE=5; //For freecell style movement
-    
-  //Anchor Display (Hidden vs. Shown faces)
-  public static final int DISPLAY_ALL=1;  //All cards are shown
-  public static final int DISPLAY_HIDE=2; //All cards are hidden
-  public static final int DISPLAY_MIX=3;  //Uses a mixture
-  public static final int DISPLAY_ONE=4;  //Displays one only
-
-  //Hack to fix Spider Dealing
-  public static final int DEALHACK=1;
-    
   protected static final int SMALL_SPACING = 7;
   protected static final int HIDDEN_SPACING = 3;
 
@@ -775,13 +695,6 @@ class GenericAnchor extends CardAnchor {
   
   public GenericAnchor(){
     super();
-    setStartSeq(GenericAnchor.SEQ_ANY);
-    setBuildSeq(GenericAnchor.SEQ_ANY);
-    setBuildWrap(false);
-    setBuildSuit(GenericAnchor.SUIT_ANY);
-    setDropoff(GenericAnchor.PACK_NONE);
-    setPickup(GenericAnchor.PACK_NONE);
-    setDisplay(GenericAnchor.DISPLAY_ALL);
     mSpacing = getMaxSpacing();
     mHideHidden = false;
     mMaxHeight = Card.HEIGHT;
@@ -820,7 +733,7 @@ class GenericAnchor extends CardAnchor {
   public void addCard(Card card) {
     super.addCard(card);
     checkSizing();
-    if (mHACK == GenericAnchor.DEALHACK){
+    if (mPile.getHack() == Pile.DEALHACK){
       mRules.EventAlert(Rules.EVENT_STACK_ADD, this);
     }
   }
@@ -834,78 +747,7 @@ class GenericAnchor extends CardAnchor {
   
   @Override
   public boolean canDropCard(MoveCard moveCard, int close) {
-    if (mDROPOFF == GenericAnchor.PACK_NONE){
-      return false;
-    }
-    
-    Card card = moveCard.getTopCard();
-    float x = card.getX() + Card.WIDTH/2;
-    float y = card.getY() + Card.HEIGHT/2;
-    //Card topCard = mCardCount > 0 ? mCard[mCardCount - 1] : null;
-    //float my = mCardCount > 0 ? topCard.getY() : mY;
-    if (isOverCard(x, y, close)) {
-      return canBuildCard(card);
-    }
-    return false;
-  }
-  
-  public boolean canBuildCard(Card card){
-    // SEQ_ANY will allow all
-    if (mBUILDSEQ == GenericAnchor.SEQ_ANY){
-      return true;
-    }
-    Card topCard = mCardCount > 0 ? mCard[mCardCount - 1] : null;
-    // Rules for empty stacks
-    if (topCard == null) {
-      switch (mSTARTSEQ) {
-        case GenericAnchor.START_KING:
-          return card.getValue() == Card.KING;
-        case GenericAnchor.START_ANY:
-        default:
-          return true;
-      }
-    }
-    int value = card.getValue();
-    int suit = card.getSuit();
-    int tvalue = topCard.getValue();
-    int tsuit = topCard.getSuit();
-    // Fail if sequence is wrong
-    switch (mBUILDSEQ){
-    //WRAP_NOWRAP=1; //Building stacks do not wrap
-    //WRAP_WRAP=2;   //Building stacks wraps around
-      case GenericAnchor.SEQ_ASC:
-        if (value - tvalue != 1){
-          return false;
-        }
-        break;
-      case GenericAnchor.SEQ_DSC:
-        if (tvalue - value != 1){
-          return false;
-        }
-        break;
-      case GenericAnchor.SEQ_SEQ:
-        if (Math.abs(tvalue - value) != 1){
-          return false;
-        }
-        break;
-    }
-    // Fail if suit is wrong
-    switch (mBUILDSUIT){
-      case GenericAnchor.SUIT_RB:
-        if (Math.abs(tsuit - suit)%2 == 0){  return false;  }
-        break;
-      case GenericAnchor.SUIT_OTHER:
-        if (tsuit == suit){  return false;  }
-        break;
-      case GenericAnchor.SUIT_COLOR:
-        if (Math.abs(tsuit - suit) != 2){  return false;  }
-        break;
-      case GenericAnchor.SUIT_SAME:
-        if (tsuit != suit){  return false;  }
-        break;
-    }
-    // Passes all rules
-    return true;
+    return canDropOn(moveCard, close);
   }
   
   @Override
@@ -914,18 +756,18 @@ class GenericAnchor extends CardAnchor {
       drawMaster.drawEmptyAnchor(canvas, mX, mY, mDone);
       return;
     }
-    switch (mDISPLAY){
-      case GenericAnchor.DISPLAY_ALL:
+    switch (mPile.getDisplay()){
+      case Pile.DISPLAY_ALL:
         for (int i = 0; i < mCardCount; i++) {
           drawMaster.drawCard(canvas, mCard[i]);
         }
         break;
-      case GenericAnchor.DISPLAY_HIDE:
+      case Pile.DISPLAY_HIDE:
         for (int i = 0; i < mCardCount; i++) {
           drawMaster.drawHiddenCard(canvas, mCard[i]);
         }
         break;
-      case GenericAnchor.DISPLAY_MIX:
+      case Pile.DISPLAY_MIX:
         for (int i = 0; i < mCardCount; i++) {
           if (i < mHiddenCount) {
             drawMaster.drawHiddenCard(canvas, mCard[i]);
@@ -934,7 +776,7 @@ class GenericAnchor extends CardAnchor {
           }
         }
         break;
-      case GenericAnchor.DISPLAY_ONE:
+      case Pile.DISPLAY_ONE:
         for (int i = 0; i < mCardCount; i++) {
           if (i < mCardCount-1) {
             drawMaster.drawHiddenCard(canvas, mCard[i]);
@@ -968,114 +810,7 @@ class GenericAnchor extends CardAnchor {
   }
 
   @Override
-  public int getMovableCount() {
-    int visibleCount = getVisibleCount();
-    if (visibleCount == 0 || mPICKUP == GenericAnchor.PACK_NONE){
-      return 0;
-    }
-    int seq_allowed = 1;
-    if (visibleCount > 1){
-      int i = mCardCount-1;
-      boolean g;
-      boolean h;      
-      do {
-        g = true;
-        h = true;
-        switch (mMOVESEQ){
-          case GenericAnchor.SEQ_ANY:
-            h = true;
-            break;
-          case GenericAnchor.SEQ_ASC:
-            h = this.isSeqAsc(i-1, i, mMOVEWRAP);
-            break;
-          case GenericAnchor.SEQ_DSC:
-            h = this.isSeqAsc(i, i-1, mMOVEWRAP);
-            break;
-          case GenericAnchor.SEQ_SEQ:
-            h = (this.isSeqAsc(i, i-1, mMOVEWRAP) ||
-                this.isSeqAsc(i-1, i, mMOVEWRAP));
-            break;
-        }
-        if (!h){
-          g = false;
-        }
-        switch (mMOVESUIT){
-          case GenericAnchor.SUIT_ANY:
-            h = true;
-            break;
-          case GenericAnchor.SUIT_COLOR:
-            h = !this.isSuitRb(i-1,i);
-            break;
-          case GenericAnchor.SUIT_OTHER:
-            h = this.isSuitOther(i-1, i);
-            break;
-          case GenericAnchor.SUIT_RB:
-            h = this.isSuitRb(i-1, i);
-            break;
-          case GenericAnchor.SUIT_SAME:
-            h = this.isSuitSame(i-1, i);
-            break;
-        }
-        if (!h){
-          g = false;
-        }
-        if (g){  seq_allowed++;  }
-        i--;
-      }while(g && (mCardCount - i) < visibleCount);
-    }
-    
-    switch (mPICKUP){
-      case GenericAnchor.PACK_NONE:
-        return 0;
-      case GenericAnchor.PACK_ONE:
-        seq_allowed = Math.min(1, seq_allowed);
-        break;
-      case GenericAnchor.PACK_MULTI:
-        break;
-      case GenericAnchor.PACK_FIXED:
-        //seq_allowed = Math.min( xmin, seq_allowed);
-        break;
-      case GenericAnchor.PACK_LIMIT_BY_FREE:
-        seq_allowed = Math.min(mRules.CountFreeSpaces()+1, seq_allowed);
-        break;
-    }
-    return seq_allowed;
-  }
-  
-  public boolean isSeqAsc(int p1, int p2, boolean wrap){
-    Card c1 = mCard[p1];
-    Card c2 = mCard[p2];
-    int v1 = c1.getValue();
-    int v2 = c2.getValue();
-    
-    if (v2 + 1 == v1){
-      return true;
-    }
-    if (wrap){
-      if (v2 == Card.KING && v1 == Card.ACE){
-        return true;
-      }
-    }
-    return false;
-  }
-  public boolean isSuitRb(int p1, int p2){
-    Card c1 = mCard[p1];
-    Card c2 = mCard[p2];
-    int s1 = c1.getSuit();
-    int s2 = c2.getSuit();
-    if (  (s1 == Card.CLUBS || s1 == Card.SPADES) &&
-          (s2 == Card.HEARTS || s2 == Card.DIAMONDS)  ){
-      return true;
-    }
-    return (s1 == Card.HEARTS || s1 == Card.DIAMONDS) &&
-            (s2 == Card.CLUBS || s2 == Card.SPADES);
-  }
-  public boolean isSuitSame(int p1, int p2){
-    return (mCard[p1].getSuit() == mCard[p2].getSuit());
-  }
-  public boolean isSuitOther(int p1, int p2){
-    return (mCard[p1].getSuit() != mCard[p2].getSuit());
-  }  
+  public int getMovableCount() { return getRunCount(); }
 
   private void checkSizing() {
     if (mCardCount < 2 || mCardCount - mHiddenCount < 2) {
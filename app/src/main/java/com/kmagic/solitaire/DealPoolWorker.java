@@ -0,0 +1,180 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import com.kmagic.solitaire.engine.DealPool;
+import com.kmagic.solitaire.engine.Game;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps a pool of winnable deals for each game type and options the
+ * player has asked one for, saved to a file per pool. A background
+ * thread of the lowest priority solves deals to top the pools up while
+ * the game is in the foreground and stops when it is paused. A pool
+ * that stalls is not topped up again.
+ */
+public class DealPoolWorker implements Runnable {
+
+  private static final String FILE_PREFIX = "deal_pool_";
+  private static final int POOL_SIZE = 20;
+
+  private final Context mContext;
+  private final Map<String, DealPool> mPools;
+  // Scratch game of each pool's rules, for solving
+  private final Map<String, Game> mGames;
+  // Guarded by this
+  private Thread mThread;
+  private boolean mRunning;
+
+  public DealPoolWorker(final Context context) {
+    mContext = context;
+    mPools = new HashMap<>();
+    mGames = new HashMap<>();
+  }
+
+  /**
+   * Deal a game from its pool, and have the pool topped up
+   * @param game the game to deal
+   * @return true if dealt, false if the pool is empty
+   */
+  public boolean take(final Game game) {
+    if (!DealPool.isSupported(game)) {
+      return false;
+    }
+    DealPool pool = getPool(game);
+    boolean taken = pool.take(game);
+    synchronized (this) {
+      notifyAll();
+    }
+    return taken;
+  }
+
+  /**
+   * Get the pool of a game, loading it on first use
+   */
+  private synchronized DealPool getPool(final Game game) {
+    String key = game.getGameTypeString();
+    DealPool pool = mPools.get(key);
+    if (pool == null) {
+      pool = new DealPool(key, POOL_SIZE);
+      load(pool);
+      mPools.put(key, pool);
+      mGames.put(key, game.copy());
+    }
+    return pool;
+  }
+
+  /**
+   * Start topping up pools, called when the game is resumed
+   */
+  public synchronized void start() {
+    mRunning = true;
+    notifyAll();
+    if (mThread == null) {
+      mThread = new Thread(this, "DealPoolWorker");
+      mThread.start();
+    }
+  }
+
+  /**
+   * Stop topping up pools, called when the game is paused. Returns at
+   * once, the thread cancels its deal, saves the pools and ends.
+   */
+  public synchronized void stop() {
+    mRunning = false;
+    for (DealPool pool : mPools.values()) {
+      pool.cancel();
+    }
+    notifyAll();
+  }
+
+  public void run() {
+    Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+    List<DealPool> dirty = new ArrayList<>();
+    while (true) {
+      DealPool pool = null;
+      Game game = null;
+      synchronized (this) {
+        dirty.clear();
+        for (Map.Entry<String, DealPool> entry : mPools.entrySet()) {
+          DealPool candidate = entry.getValue();
+          if (candidate.isDirty()) {
+            dirty.add(candidate);
+          }
+          if (mRunning && pool == null && !candidate.isFull() && !candidate.isStalled()) {
+            pool = candidate;
+            game = mGames.get(entry.getKey());
+          }
+        }
+        if (pool == null && dirty.isEmpty()) {
+          if (!mRunning) {
+            mThread = null;
+            return;
+          }
+          try {
+            wait();
+          } catch (InterruptedException ignored) {
+          }
+          continue;
+        }
+        // Under the lock, so a stop() from here on cancels the deal
+        if (pool != null) {
+          pool.clearCancel();
+        }
+      }
+      // Files are written off the lock take() waits on
+      for (DealPool save : dirty) {
+        save(save);
+      }
+      if (pool != null) {
+        pool.topUp(game);
+      }
+    }
+  }
+
+  private void load(final DealPool pool) {
+    try {
+      FileInputStream fin = mContext.openFileInput(FILE_PREFIX + pool.getKey());
+      pool.readFrom(fin);
+      fin.close();
+    } catch (FileNotFoundException ignored) {
+    } catch (IOException e) {
+      Log.e("DealPoolWorker.java", "load(): IOException");
+    }
+  }
+
+  private void save(final DealPool pool) {
+    try {
+      FileOutputStream fout = mContext.openFileOutput(FILE_PREFIX + pool.getKey(), 0);
+      pool.writeTo(fout);
+      fout.close();
+    } catch (IOException e) {
+      Log.e("DealPoolWorker.java", "save(): IOException");
+    }
+  }
+}
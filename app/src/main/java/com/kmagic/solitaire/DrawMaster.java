@@ -20,9 +20,11 @@ import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.Point;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
@@ -44,15 +46,24 @@ public class DrawMaster {
   private int mScreenHeight;
   private Paint mBGPaint;
 
-  // Card stuff
+  // Card stuff, every card sprite is in one atlas bitmap, faces by suit
+  // and value followed by the back and the empty anchors
+  private static final int ATLAS_COLUMNS = 13;
+  private static final int ATLAS_ROWS = 5;
+  private static final int SPRITE_HIDDEN = 52;
+  private static final int SPRITE_EMPTY = 53;
+  private static final int SPRITE_DONE_EMPTY = 54;
   private final Paint mSuitPaint = new Paint();
-  private Bitmap[] mCardBitmap;
-  private Bitmap mCardHidden;
+  private Bitmap mAtlas;
+  private Canvas mAtlasCanvas;
+  private final Rect mSpriteRect = new Rect();
+  private final RectF mDrawRect = new RectF();
 
   private Paint mEmptyAnchorPaint;
   private Paint mDoneEmptyAnchorPaint;
   private Paint mShadePaint;
   private Paint mLightShadePaint;
+  private Paint mHighlightPaint;
   
   private Paint mTimePaint;
   private int mLastSeconds;
@@ -60,6 +71,8 @@ public class DrawMaster {
 
   private Bitmap mBoardBitmap;
   private Canvas mBoardCanvas;
+  // The whole board has to be drawn again, not only changed anchors
+  private boolean mBoardDirty;
 
   private static final float SUITS_SCALE_BIG = 0.75f;
   private static final float SUITS_SCALE_REG = 0.5f;
@@ -87,6 +100,12 @@ public class DrawMaster {
     mLightShadePaint = new Paint();
     mLightShadePaint.setARGB(100, 0, 0, 0);
 
+    mHighlightPaint = new Paint();
+    mHighlightPaint.setARGB(255, 255, 215, 0);
+    mHighlightPaint.setAntiAlias(true);
+    mHighlightPaint.setStyle(Paint.Style.STROKE);
+    mHighlightPaint.setStrokeWidth(4);
+
     // Card related stuff
     mEmptyAnchorPaint = new Paint();
     mEmptyAnchorPaint.setARGB(255, 0, 64, 0);
@@ -97,7 +116,6 @@ public class DrawMaster {
     mTimePaint = getTextPaint(mFontSize,Paint.Align.RIGHT);
     mLastSeconds = -1;
 
-    mCardBitmap = new Bitmap[52];
     Display display = ((WindowManager) context.getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay();
     Point size = new Point();
     display.getSize(size);
@@ -123,16 +141,27 @@ public class DrawMaster {
    */
   public Canvas getBoardCanvas() { return mBoardCanvas; }
 
+  /**
+   * Check if the whole board has to be drawn again, after the screen
+   * size or the cards changed
+   * @return true to draw the whole board
+   */
+  public boolean isBoardDirty() { return mBoardDirty; }
+
+  /**
+   * Set if the whole board has to be drawn again
+   * @param dirty true to draw the whole board
+   */
+  public void setBoardDirty(final boolean dirty) { mBoardDirty = dirty; }
+
   /**
    * Draw a card
    * @param canvas canvas to draw on
    * @param card card to draw
    */
   public void drawCard(final Canvas canvas, final Card card) {
-    float x = card.getX();
-    float y = card.getY();
     int idx = card.getSuit()*13+(card.getValue()-1);
-    canvas.drawBitmap(mCardBitmap[idx], x, y, mSuitPaint);
+    drawSprite(canvas, idx, card.getX(), card.getY());
   }
 
   /**
@@ -141,9 +170,7 @@ public class DrawMaster {
    * @param card hidden card to draw
    */
   public void drawHiddenCard(final Canvas canvas, final Card card) {
-    float x = card.getX();
-    float y = card.getY();
-    canvas.drawBitmap(mCardHidden, x, y, mSuitPaint);
+    drawSprite(canvas, SPRITE_HIDDEN, card.getX(), card.getY());
   }
 
   /**
@@ -157,12 +184,84 @@ public class DrawMaster {
                               final float x,
                               final float y,
                               final boolean done) {
-    RectF pos = new RectF(x, y, x + Card.WIDTH, y + Card.HEIGHT);
-    if (!done) {
-      canvas.drawRoundRect(pos, mSuitsSizeHalf, mSuitsSizeHalf, mEmptyAnchorPaint);
-    } else {
-      canvas.drawRoundRect(pos, mSuitsSizeHalf, mSuitsSizeHalf, mDoneEmptyAnchorPaint);
+    drawSprite(canvas, done ? SPRITE_DONE_EMPTY : SPRITE_EMPTY, x, y);
+  }
+
+  /**
+   * Draw a sprite of the card atlas
+   * @param canvas canvas to draw on
+   * @param idx index of the sprite
+   * @param x x coordinate to draw at
+   * @param y y coordinate to draw at
+   */
+  private void drawSprite(final Canvas canvas,
+                          final int idx,
+                          final float x,
+                          final float y) {
+    getSpriteRect(idx, mSpriteRect);
+    mDrawRect.set(x, y, x + Card.WIDTH, y + Card.HEIGHT);
+    canvas.drawBitmap(mAtlas, mSpriteRect, mDrawRect, mSuitPaint);
+  }
+
+  /**
+   * Get where a sprite is in the card atlas, sprites are a pixel apart
+   * so filtering never blends in the next one
+   * @param idx index of the sprite
+   * @param rect set to the area of the sprite
+   */
+  private void getSpriteRect(final int idx, final Rect rect) {
+    int left = (idx % ATLAS_COLUMNS) * (Card.WIDTH + 1);
+    int top = (idx / ATLAS_COLUMNS) * (Card.HEIGHT + 1);
+    rect.set(left, top, left + Card.WIDTH, top + Card.HEIGHT);
+  }
+
+  /**
+   * Create the card atlas for the current card size, or clear it if it
+   * already has that size
+   */
+  private void createAtlas() {
+    int width = ATLAS_COLUMNS * (Card.WIDTH + 1);
+    int height = ATLAS_ROWS * (Card.HEIGHT + 1);
+    if (mAtlas != null && mAtlas.getWidth() == width && mAtlas.getHeight() == height) {
+      mAtlas.eraseColor(Color.TRANSPARENT);
+      return;
+    }
+    if (mAtlas != null) {
+      mAtlas.recycle();
     }
+    mAtlas = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    mAtlasCanvas = new Canvas(mAtlas);
+  }
+
+  /**
+   * Start drawing a sprite of the card atlas, the canvas returned has
+   * the sprite at its origin and is clipped to it
+   * @param idx index of the sprite
+   * @return canvas to draw the sprite on, call endSprite() when done
+   */
+  private Canvas beginSprite(final int idx) {
+    getSpriteRect(idx, mSpriteRect);
+    mAtlasCanvas.save();
+    mAtlasCanvas.clipRect(mSpriteRect);
+    mAtlasCanvas.translate(mSpriteRect.left, mSpriteRect.top);
+    return mAtlasCanvas;
+  }
+
+  private void endSprite() {
+    mAtlasCanvas.restore();
+  }
+
+  /**
+   * Draw the empty anchor sprites
+   */
+  private void drawEmptyAnchors() {
+    RectF pos = new RectF(0, 0, Card.WIDTH, Card.HEIGHT);
+    Canvas canvas = beginSprite(SPRITE_EMPTY);
+    canvas.drawRoundRect(pos, mSuitsSizeHalf, mSuitsSizeHalf, mEmptyAnchorPaint);
+    endSprite();
+    canvas = beginSprite(SPRITE_DONE_EMPTY);
+    canvas.drawRoundRect(pos, mSuitsSizeHalf, mSuitsSizeHalf, mDoneEmptyAnchorPaint);
+    endSprite();
   }
 
   /**
@@ -189,6 +288,23 @@ public class DrawMaster {
     canvas.drawRect(0, 0, mScreenWidth, mScreenHeight, mLightShadePaint);
   }
 
+  /**
+   * Draw an outline around cards, used to show a hint
+   * @param canvas canvas to draw on
+   * @param left left edge of the cards
+   * @param top top edge of the cards
+   * @param right right edge of the cards
+   * @param bottom bottom edge of the cards
+   */
+  public void drawHighlight(final Canvas canvas,
+                            final float left,
+                            final float top,
+                            final float right,
+                            final float bottom) {
+    RectF pos = new RectF(left, top, right, bottom);
+    canvas.drawRoundRect(pos, mSuitsSizeHalf, mSuitsSizeHalf, mHighlightPaint);
+  }
+
   /**
    * Draw the last board
    * @param canvas canvas to draw on
@@ -213,6 +329,7 @@ public class DrawMaster {
                                        mScreenHeight,
                                        Bitmap.Config.RGB_565);
     mBoardCanvas = new Canvas(mBoardBitmap);
+    mBoardDirty = true;
   }
 
   /**
@@ -481,11 +598,10 @@ public class DrawMaster {
 
     Drawable drawable = ResourcesCompat.getDrawable(r, R.drawable.cardback, null);
 
-    mCardHidden = Bitmap.createBitmap(Card.WIDTH, Card.HEIGHT,
-                                      Bitmap.Config.ARGB_8888);
-    canvas = new Canvas(mCardHidden);
+    canvas = beginSprite(SPRITE_HIDDEN);
     drawable.setBounds(0, 0, Card.WIDTH, Card.HEIGHT);
     drawable.draw(canvas);
+    endSprite();
 
     for (int i = 0; i < 4; i++) {
       suit[i] = Bitmap.createBitmap((int) mSuitsSizeHalf, (int) mSuitsSizeHalf, Bitmap.Config.ARGB_8888);
@@ -504,9 +620,7 @@ public class DrawMaster {
     RectF rectf = new RectF();
     for (int suitIdx = 0; suitIdx < 4; suitIdx++) {
       for (int valueIdx = 0; valueIdx < 13; valueIdx++) {
-        mCardBitmap[suitIdx*13+valueIdx] = Bitmap.createBitmap(
-                Card.WIDTH, Card.HEIGHT, Bitmap.Config.ARGB_8888);
-        canvas = new Canvas(mCardBitmap[suitIdx*13+valueIdx]);
+        canvas = beginSprite(suitIdx*13+valueIdx);
 
         drawCardBackground(rectf,canvas,cardBorderPaint,cardFrontPaint);
         drawCardValue(textPaintLeft,
@@ -519,6 +633,7 @@ public class DrawMaster {
                           Card.WIDTH/2-mSuitsSizeHalf,
                           Card.HEIGHT/2-mSuitsSizeHalf,
                           mSuitPaint);
+        endSprite();
       }
     }
   }
@@ -568,11 +683,10 @@ public class DrawMaster {
     final Paint textPaintLeft = getTextPaint(mSuitsSize,Paint.Align.LEFT);
     Drawable drawable = ResourcesCompat.getDrawable(r, R.drawable.cardback, null);
 
-    mCardHidden = Bitmap.createBitmap(Card.WIDTH, Card.HEIGHT,
-                                      Bitmap.Config.ARGB_8888);
-    canvas = new Canvas(mCardHidden);
+    canvas = beginSprite(SPRITE_HIDDEN);
     drawable.setBounds(0, 0, Card.WIDTH, Card.HEIGHT);
     drawable.draw(canvas);
+    endSprite();
 
     for (int i = 0; i < 4; i++) {
       suit[i] = Bitmap.createBitmap((int)mSuitsSize, (int)mSuitsSize, Bitmap.Config.ARGB_8888);
@@ -604,9 +718,7 @@ public class DrawMaster {
     RectF rectf = new RectF();
     for (int suitIdx = 0; suitIdx < 4; suitIdx++) {
       for (int valueIdx = 0; valueIdx < 13; valueIdx++) {
-        mCardBitmap[suitIdx*13+valueIdx] = Bitmap.createBitmap(
-            width, height, Bitmap.Config.ARGB_8888);
-        canvas = new Canvas(mCardBitmap[suitIdx*13+valueIdx]);
+        canvas = beginSprite(suitIdx*13+valueIdx);
         drawCardBackground(rectf,canvas,cardBorderPaint,cardFrontPaint);
         drawCardValue(textPaintLeft,
                       canvas,
@@ -727,6 +839,7 @@ public class DrawMaster {
             }
             break;
         }
+        endSprite();
       }
     }
   }
@@ -736,6 +849,8 @@ public class DrawMaster {
    * @param bigCards display big cards if true, regular otherwise
    */
   public void drawCards(boolean bigCards) {
+    mBoardDirty = true;
+    createAtlas();
     if (bigCards) {
       setSuitSizes(SUITS_SCALE_BIG);
       drawBigCards(mContext.getResources());
@@ -743,6 +858,7 @@ public class DrawMaster {
       setSuitSizes(SUITS_SCALE_REG);
       drawCards(mContext.getResources());
     }
+    drawEmptyAnchors();
   }
 
   /**
@@ -0,0 +1,153 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire;
+
+import android.os.Process;
+
+import com.kmagic.solitaire.engine.Game;
+import com.kmagic.solitaire.engine.Hint;
+import com.kmagic.solitaire.engine.TranspositionTable;
+
+/**
+ * Finds hints on a background thread so the UI thread never waits on a
+ * search. The view asks for the hint of a snapshot of the game and gets
+ * it back through SolitaireView.showHint(), on the UI thread, unless the
+ * hint went stale as the player moved a card in the meantime.
+ */
+public class HintWorker implements Runnable {
+
+  private final SolitaireView mView;
+  private Hint mHint;
+  private String mGameType;
+  private Game mPending;
+  private int mRequest;
+  private volatile Thread mThread;
+
+  public HintWorker(final SolitaireView view) {
+    mView = view;
+  }
+
+  /**
+   * Set the rules hints are found for, called on a new game
+   * @param game the engine game of the new game
+   */
+  public synchronized void setGame(final Game game) {
+    cancel();
+    if (mHint == null || !game.getGameTypeString().equals(mGameType)) {
+      mHint = new Hint(game);
+      mGameType = game.getGameTypeString();
+    } else {
+      mHint.reset();
+    }
+  }
+
+  /**
+   * Ask for the hint of a position, replacing any asked for before. A
+   * cached hint is shown at once, otherwise it is searched for.
+   * @param game a snapshot of the game at the position, not changed after
+   */
+  public void request(final Game game) {
+    int move;
+    synchronized (this) {
+      if (mHint == null) {
+        return;
+      }
+      cancel();
+      move = mHint.getCached(game);
+      if (move == TranspositionTable.NOT_FOUND) {
+        mPending = game;
+        notifyAll();
+        return;
+      }
+    }
+    mView.showHint(move);
+  }
+
+  /**
+   * Drop the hint being searched for, called when the position changes
+   */
+  public synchronized void cancel() {
+    mRequest++;
+    mPending = null;
+    if (mHint != null) {
+      mHint.cancel();
+    }
+  }
+
+  /**
+   * Start finding hints, called when the game is resumed
+   */
+  public synchronized void start() {
+    if (mThread == null) {
+      mThread = new Thread(this, "HintWorker");
+      mThread.start();
+    }
+  }
+
+  /**
+   * Stop finding hints, called when the game is paused
+   */
+  public void stop() {
+    Thread thread;
+    synchronized (this) {
+      thread = mThread;
+      mThread = null;
+      cancel();
+      notifyAll();
+    }
+    if (thread != null) {
+      try {
+        thread.join(1000);
+      } catch (InterruptedException ignored) {
+      }
+    }
+  }
+
+  public void run() {
+    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+    // A thread left over from before a quick pause and resume ends here
+    while (mThread == Thread.currentThread()) {
+      Game game;
+      Hint hint;
+      final int request;
+      synchronized (this) {
+        if (mPending == null) {
+          try {
+            wait();
+          } catch (InterruptedException ignored) {
+          }
+          continue;
+        }
+        game = mPending;
+        hint = mHint;
+        request = mRequest;
+        mPending = null;
+      }
+      final int move = hint.find(game);
+      mView.post(new Runnable() {
+        public void run() {
+          if (isCurrent(request)) {
+            mView.showHint(move);
+          }
+        }
+      });
+    }
+  }
+
+  private synchronized boolean isCurrent(final int request) {
+    return request == mRequest;
+  }
+}
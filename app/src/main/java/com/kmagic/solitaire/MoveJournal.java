@@ -0,0 +1,396 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import com.kmagic.solitaire.engine.MoveHistory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the game in play on disk as it is played. The game is saved as
+ * a snapshot, in the SaveData format, followed by an append-only journal
+ * of the moves pushed on and popped off the history since, a few bytes
+ * each, so a process killed at any time loses at most the moves not yet
+ * written. Loading replays the journal onto the snapshot, and a new
+ * snapshot is taken now and then to keep the journal short.
+ *
+ * The journal header holds the checksum of its snapshot, a journal left
+ * over from an older snapshot is ignored. Each record ends with a check
+ * byte, replay stops at the first record that is torn or corrupt.
+ *
+ * Nothing is written on the UI thread. Snapshots are captured there and
+ * records encoded into a buffer, and a writer thread encodes the
+ * snapshots and writes both out. A snapshot waiting to be written is
+ * replaced by a newer one, along with the records queued after it.
+ */
+public class MoveJournal implements MoveHistory.Listener, Runnable {
+
+  public static final String SNAPSHOT_FILENAME = "solitaire_save.bin";
+  private static final String SNAPSHOT_TEMP_FILENAME = "solitaire_save.tmp";
+  private static final String JOURNAL_FILENAME = "solitaire_journal.bin";
+
+  // "SOLJ"
+  private static final int MAGIC = 0x534F4C4A;
+  private static final int VERSION = 1;
+  // Magic, version, snapshot checksum
+  private static final int HEADER_SIZE = 9;
+
+  // Record types
+  static final int RECORD_PUSH = 1;
+  static final int RECORD_POP = 2;
+
+  // Records after which a new snapshot is due
+  private static final int COMPACT_RECORDS = 256;
+
+  /**
+   * Plays the journal back onto the game restored from the snapshot
+   */
+  public interface Player {
+    void push(long move);
+    void pop();
+    void setElapsed(int elapsed);
+  }
+
+  private final Context mContext;
+  private final SolitaireView mView;
+
+  // UI thread
+  private final SaveWriter mRecord;
+  private final CRC32 mCrc;
+  private boolean mStarted;
+  private int mRecordCount;
+
+  // Handed to the writer thread, guarded by this
+  private SaveData mPendingSave;
+  private SaveWriter mPendingRecords;
+  private boolean mPendingStop;
+  private Thread mThread;
+
+  // Writer thread
+  private SaveWriter mWritingRecords;
+  private FileOutputStream mOut;
+
+  public MoveJournal(final Context context, final SolitaireView view) {
+    mContext = context;
+    mView = view;
+    mRecord = new SaveWriter(32);
+    mCrc = new CRC32();
+    mPendingRecords = new SaveWriter(1024);
+    mWritingRecords = new SaveWriter(1024);
+  }
+
+  // ==========================================================================
+  // Getters and Setters
+  // -------------------
+  public boolean isCompactDue() { return mStarted && mRecordCount >= COMPACT_RECORDS; }
+
+  // ==========================================================================
+  // Journaling, on the UI thread
+  // ----------------------------
+
+  /**
+   * Snapshot the game and start a new journal after it, returns at once
+   * @param save the game to snapshot, not changed after
+   */
+  public synchronized void start(final SaveData save) {
+    mPendingSave = save;
+    mPendingRecords.reset();
+    mStarted = true;
+    mRecordCount = 0;
+    wake();
+  }
+
+  /**
+   * Stop journaling, the files written are left for loading
+   */
+  public synchronized void stop() {
+    mPendingSave = null;
+    mPendingRecords.reset();
+    mPendingStop = true;
+    mStarted = false;
+    wake();
+  }
+
+  /**
+   * Wait for everything asked for to be written, used before the files
+   * are read
+   */
+  public synchronized void flush() {
+    while (mThread != null) {
+      try {
+        wait();
+      } catch (InterruptedException ignored) {
+      }
+    }
+  }
+
+  @Override
+  public void onPush(final long move) {
+    if (!mStarted) {
+      return;
+    }
+    mRecord.reset();
+    writeRecord(mRecord, RECORD_PUSH, move, mView.getElapsed(), mCrc);
+    append();
+  }
+
+  @Override
+  public void onPop() {
+    if (!mStarted) {
+      return;
+    }
+    mRecord.reset();
+    writeRecord(mRecord, RECORD_POP, 0, mView.getElapsed(), mCrc);
+    append();
+  }
+
+  /**
+   * Queue the record for the journal
+   */
+  private void append() {
+    synchronized (this) {
+      mPendingRecords.writeBytes(mRecord.getBuffer(), 0, mRecord.getLength());
+      wake();
+    }
+    mRecordCount++;
+  }
+
+  /**
+   * Encode a record, its move if a push, the time played and a check byte
+   * @param out the writer to append the record to
+   * @param type RECORD_PUSH or RECORD_POP
+   * @param move the move pushed, ignored for a pop
+   * @param elapsed the milliseconds played
+   * @param crc scratch checksum
+   */
+  static void writeRecord(final SaveWriter out, final int type, final long move,
+                          final int elapsed, final CRC32 crc) {
+    int start = out.getLength();
+    out.writeByte(type);
+    if (type == RECORD_PUSH) {
+      out.writeVarint(MoveHistory.getFrom(move));
+      out.writeVarint(MoveHistory.getToBegin(move));
+      out.writeVarint(MoveHistory.getToEnd(move));
+      out.writeVarint(MoveHistory.getCount(move));
+      out.writeVarint(MoveHistory.getFlags(move));
+    }
+    out.writeVarint(elapsed);
+    out.writeByte(getCheck(crc, out.getBuffer(), start, out.getLength() - start));
+  }
+
+  /**
+   * Encode the journal header
+   * @param out the writer to append the header to
+   * @param checksum the checksum of the snapshot the journal follows
+   */
+  static void writeHeader(final SaveWriter out, final int checksum) {
+    out.writeInt(MAGIC);
+    out.writeByte(VERSION);
+    out.writeInt(checksum);
+  }
+
+  private static int getCheck(final CRC32 crc, final byte[] data, final int off, final int length) {
+    crc.reset();
+    crc.update(data, off, length);
+    return (int)crc.getValue() & 0xFF;
+  }
+
+  /**
+   * Start the writer thread if it is not running, must hold the lock
+   */
+  private void wake() {
+    if (mThread == null) {
+      mThread = new Thread(this, "MoveJournal");
+      mThread.start();
+    }
+  }
+
+  // ==========================================================================
+  // Writing, on the writer thread
+  // -----------------------------
+
+  public void run() {
+    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+    while (true) {
+      SaveData save;
+      boolean stop;
+      synchronized (this) {
+        if (mPendingSave == null && mPendingRecords.getLength() == 0 && !mPendingStop) {
+          // Idle, a new thread is started for the next work
+          mThread = null;
+          notifyAll();
+          return;
+        }
+        save = mPendingSave;
+        stop = mPendingStop;
+        mPendingSave = null;
+        mPendingStop = false;
+        SaveWriter records = mPendingRecords;
+        mPendingRecords = mWritingRecords;
+        mWritingRecords = records;
+      }
+
+      if (stop || save != null) {
+        close();
+      }
+      if (save != null) {
+        try {
+          writeSnapshot(save.write());
+          mOut = mContext.openFileOutput(JOURNAL_FILENAME, 0);
+          SaveWriter header = new SaveWriter(HEADER_SIZE);
+          writeHeader(header, save.getChecksum());
+          mOut.write(header.getBuffer(), 0, header.getLength());
+        } catch (IOException e) {
+          Log.e("MoveJournal.java", "run(): IOException writing snapshot");
+          close();
+        }
+      }
+      if (mOut != null && mWritingRecords.getLength() > 0) {
+        try {
+          mOut.write(mWritingRecords.getBuffer(), 0, mWritingRecords.getLength());
+        } catch (IOException e) {
+          Log.e("MoveJournal.java", "run(): IOException writing journal");
+          close();
+        }
+      }
+      mWritingRecords.reset();
+    }
+  }
+
+  private void close() {
+    if (mOut != null) {
+      try {
+        mOut.close();
+      } catch (IOException ignored) {
+      }
+      mOut = null;
+    }
+  }
+
+  /**
+   * Write a snapshot to a temporary file and rename it over the last
+   * one, so there is always a whole snapshot to load
+   */
+  private void writeSnapshot(final byte[] data) throws IOException {
+    FileOutputStream out = mContext.openFileOutput(SNAPSHOT_TEMP_FILENAME, 0);
+    try {
+      out.write(data);
+      out.getFD().sync();
+    } finally {
+      out.close();
+    }
+    File temp = mContext.getFileStreamPath(SNAPSHOT_TEMP_FILENAME);
+    if (!temp.renameTo(mContext.getFileStreamPath(SNAPSHOT_FILENAME))) {
+      throw new IOException("Rename failed");
+    }
+  }
+
+  // ==========================================================================
+  // Reading
+  // -------
+
+  /**
+   * Read the last snapshot
+   * @param context context of the files
+   * @return the snapshot
+   * @throws IOException if there is none or it cannot be read
+   */
+  public static SaveData readSnapshot(final Context context) throws IOException {
+    FileInputStream in = context.openFileInput(SNAPSHOT_FILENAME);
+    try {
+      return SaveData.read(in);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Play the journal of a snapshot back
+   * @param snapshot the snapshot read, the game restored from it
+   * @param player what to play the records on
+   * @return the count of records played
+   */
+  public int replay(final SaveData snapshot, final Player player) {
+    SaveReader in;
+    try {
+      FileInputStream fin = mContext.openFileInput(JOURNAL_FILENAME);
+      try {
+        in = SaveReader.readFully(fin);
+      } finally {
+        fin.close();
+      }
+    } catch (FileNotFoundException e) {
+      return 0;
+    } catch (IOException e) {
+      Log.e("MoveJournal.java", "replay(): IOException");
+      return 0;
+    }
+    return play(in, snapshot.getChecksum(), player);
+  }
+
+  /**
+   * Play the records of a journal back
+   * @param in the journal, header first
+   * @param checksum the checksum of the snapshot the journal must follow
+   * @param player what to play the records on
+   * @return the count of records played
+   */
+  static int play(final SaveReader in, final int checksum, final Player player) {
+    CRC32 crc = new CRC32();
+    int count = 0;
+    try {
+      if (in.getLength() < HEADER_SIZE || in.readInt() != MAGIC ||
+          in.readByte() != VERSION || in.readInt() != checksum) {
+        return 0;
+      }
+      while (in.getRemaining() > 0) {
+        int start = in.getPosition();
+        int type = in.readByte();
+        long move = 0;
+        if (type == RECORD_PUSH) {
+          move = MoveHistory.pack(in.readVarint(), in.readVarint(), in.readVarint(),
+                                  in.readVarint(), in.readVarint());
+        } else if (type != RECORD_POP) {
+          break;
+        }
+        int elapsed = in.readVarint();
+        int end = in.getPosition();
+        if (in.readByte() != getCheck(crc, in.getData(), start, end - start)) {
+          break;
+        }
+        if (type == RECORD_PUSH) {
+          player.push(move);
+        } else {
+          player.pop();
+        }
+        player.setElapsed(elapsed);
+        count++;
+      }
+    } catch (IOException e) {
+      // A torn last record, everything before it was played
+    }
+    return count;
+  }
+}
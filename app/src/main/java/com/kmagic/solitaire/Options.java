@@ -42,6 +42,9 @@ public class Options {
     final boolean displayTime = solitaire.getSettings().getBoolean("DisplayTime", true);
     ((CheckBox)solitaire.findViewById(R.id.display_time)).setChecked(displayTime);
 
+    final boolean winnableDeals = solitaire.getSettings().getBoolean("WinnableDeals", false);
+    ((CheckBox)solitaire.findViewById(R.id.winnable_deals)).setChecked(winnableDeals);
+
     // Solitaire stuff
     final boolean dealThree = solitaire.getSettings().getBoolean("SolitaireDealThree", true);
     final boolean styleNormal = solitaire.getSettings().getBoolean("SolitaireStyleNormal", true);
@@ -80,6 +83,11 @@ public class Options {
           commit = true;
         }
 
+        if (winnableDeals != ((CheckBox)solitaire.findViewById(R.id.winnable_deals)).isChecked()) {
+          editor.putBoolean("WinnableDeals", !winnableDeals);
+          commit = true;
+        }
+
         if (dealThree != ((RadioButton)solitaire.findViewById(R.id.deal_3)).isChecked()) {
           editor.putBoolean("SolitaireDealThree", !dealThree);
           commit = true;
@@ -16,22 +16,39 @@
 */ 
 package com.kmagic.solitaire;
 
-import android.util.Log;
-import java.util.Stack;
+import com.kmagic.solitaire.engine.MoveHistory;
 
 /**
- * Handles reply of game play
+ * Handles reply of game play. The game is rewound to the deal once, and
+ * the board is kept every KEYFRAME_INTERVAL moves on the way, so any
+ * move can be sought by restoring the keyframe before it and playing the
+ * few moves after it at once. Moves are animated at 0.25x to 16x speed.
  */
 public class Replay implements Runnable {
-  private Stack<Move> mMoveStack;
+
+  // Moves between keyframes
+  private static final int KEYFRAME_INTERVAL = 32;
+
+  public static final float MIN_SPEED = 0.25f;
+  public static final float MAX_SPEED = 16f;
+
   private SolitaireView mView;
   private AnimateCard mAnimateCard;
   private CardAnchor[] mCardAnchor;
   private boolean mIsPlaying;
 
+  // The moves of the game, oldest first, and the next to play
+  private long[] mMoves;
+  private int mPosition;
+  private float mSpeed;
+  // The board before move i * KEYFRAME_INTERVAL, and after the last move
+  private Keyframe[] mKeyframe;
+  private Keyframe mEnd;
+
   private Card[] mSinkCard;
   private CardAnchor mSinkFrom;
   private boolean mSinkUnhide;
+  private int mSinkInFlight;
 
   /**
    * Create replace instance
@@ -43,10 +60,26 @@ public class Replay implements Runnable {
     mView = view;
     mAnimateCard = animateCard;
     mIsPlaying = false;
-    mMoveStack = new Stack<>();
+    mMoves = new long[0];
+    mSpeed = 1;
     mSinkCard = new Card[104];
   }
 
+  // ==========================================================================
+  // Getters and Setters
+  // -------------------
+  public int getMoveCount() { return mMoves.length; }
+  public int getPosition() { return mPosition; }
+  public float getSpeed() { return mSpeed; }
+
+  /**
+   * Set the speed moves are animated at, from the next move on
+   * @param speed multiple of the normal speed, from MIN_SPEED to MAX_SPEED
+   */
+  public void setSpeed(final float speed) {
+    mSpeed = Math.max(MIN_SPEED, Math.min(MAX_SPEED, speed));
+  }
+
   /**
    * Is replay playing
    * @return true if replay is playing, false if not
@@ -63,66 +96,103 @@ public class Replay implements Runnable {
    * @param history history of card movements
    * @param anchor card anchors
    */
-  public void startReplay(final Stack<Move> history,
+  public void startReplay(final MoveHistory history,
                           final CardAnchor[] anchor) {
     mCardAnchor = anchor;
-    mMoveStack.clear();
-    while (!history.empty()) {
-      Move move = history.peek();
-      if (move.getToBegin() != move.getToEnd()) {
-        for (int i = move.getToEnd(); i >= move.getToBegin(); i--) {
-          mMoveStack.push(new Move(move.getFrom(), i, 1, false, false));
-        }
-      } else {
-        mMoveStack.push(move);
+    mMoves = history.toArray();
+    mKeyframe = new Keyframe[mMoves.length / KEYFRAME_INTERVAL + 1];
+    mEnd = capture();
+    for (int i = mMoves.length; i > 0; i--) {
+      if (i % KEYFRAME_INTERVAL == 0) {
+        mKeyframe[i / KEYFRAME_INTERVAL] = capture();
       }
       mView.undo();
     }
+    mKeyframe[0] = capture();
+    mPosition = 0;
     mView.drawBoard();
     mIsPlaying = true;
     playNext();
   }
 
+  /**
+   * Show the board before a move at once, playing on from there if the
+   * replay is playing
+   * @param position index of the move, from 0 for the deal to the move
+   *                 count for the end of the game
+   */
+  public void seek(final int position) {
+    if (mCardAnchor == null) {
+      return;
+    }
+    int target = Math.max(0, Math.min(mMoves.length, position));
+    mAnimateCard.cancel();
+    if (target == mMoves.length) {
+      restore(mEnd);
+      mPosition = target;
+    } else {
+      restore(mKeyframe[target / KEYFRAME_INTERVAL]);
+      mPosition = target / KEYFRAME_INTERVAL * KEYFRAME_INTERVAL;
+    }
+    while (mPosition < target) {
+      apply(mMoves[mPosition++]);
+    }
+    mView.drawBoard();
+    mView.refresh();
+    if (mIsPlaying) {
+      playNext();
+    }
+  }
+
+  /**
+   * Stop playing and show the end of the game at once
+   */
+  public void skipToEnd() {
+    mIsPlaying = false;
+    seek(mMoves.length);
+    mView.stopAnimating();
+  }
+
   /**
    * Play next replay
    */
   public void playNext() {
-    int mSinkCount;
-    CardAnchor mSinkAnchor;
-
-    if (!mIsPlaying || mMoveStack.empty()) {
+    if (!mIsPlaying || mPosition >= mMoves.length) {
       mIsPlaying = false;
       mView.stopAnimating();
       return;
     }
-    Move move = mMoveStack.pop();
-
-    if (move.getToBegin() == move.getToEnd()) {
-      mSinkCount = move.getCount();
-      mSinkAnchor = mCardAnchor[move.getToBegin()];
-      mSinkUnhide = move.getUnhide();
-      mSinkFrom = mCardAnchor[move.getFrom()];
+    long move = mMoves[mPosition++];
+    int from = MoveHistory.getFrom(move);
+    int toBegin = MoveHistory.getToBegin(move);
+    int toEnd = MoveHistory.getToEnd(move);
+    int count = MoveHistory.getCount(move);
+    boolean invert = MoveHistory.getInvert(move) || toBegin != toEnd;
 
-      if (move.getInvert()) {
-        for (int i = 0; i < mSinkCount; i++) {
+    mSinkFrom = mCardAnchor[from];
+    mSinkUnhide = MoveHistory.getUnhide(move);
+    mSinkInFlight = toEnd - toBegin + 1;
+    for (int to = toBegin; to <= toEnd; to++) {
+      if (invert) {
+        for (int i = 0; i < count; i++) {
           mSinkCard[i] = mSinkFrom.popCard();
         }
       } else {
-        for (int i = mSinkCount-1; i >= 0; i--) {
+        for (int i = count-1; i >= 0; i--) {
           mSinkCard[i] = mSinkFrom.popCard();
         }
       }
-      mAnimateCard.moveCards(mSinkCard, mSinkAnchor, mSinkCount, this);
-    } else {
-      Log.e("Replay.java", "Invalid move encountered, aborting.");
-      mIsPlaying = false;
+      mAnimateCard.moveCards(mSinkCard, mCardAnchor[to], count, mSpeed, this);
     }
   }
 
   /**
-   * Run the replay
+   * Run the replay, called as the cards of each anchor land
    */
   public void run() {
+    if (--mSinkInFlight > 0) {
+      return;
+    }
     if (mIsPlaying) {
       if (mSinkUnhide) {
         mSinkFrom.unhideTopCard();
@@ -130,4 +200,82 @@ public class Replay implements Runnable {
       playNext();
     }
   }
+
+  /**
+   * Play a move at once, as SolitaireView.redo() does
+   */
+  private void apply(final long move) {
+    CardAnchor from = mCardAnchor[MoveHistory.getFrom(move)];
+    int toBegin = MoveHistory.getToBegin(move);
+    int toEnd = MoveHistory.getToEnd(move);
+    int count = MoveHistory.getCount(move);
+    if (toBegin != toEnd || MoveHistory.getInvert(move)) {
+      for (int to = toBegin; to <= toEnd; to++) {
+        for (int i = 0; i < count; i++) {
+          mCardAnchor[to].addCard(from.popCard());
+        }
+      }
+    } else {
+      for (int i = count-1; i >= 0; i--) {
+        mSinkCard[i] = from.popCard();
+      }
+      for (int i = 0; i < count; i++) {
+        mCardAnchor[toBegin].addCard(mSinkCard[i]);
+      }
+    }
+    if (MoveHistory.getUnhide(move)) {
+      from.unhideTopCard();
+    }
+  }
+
+  /**
+   * Keep the board as it is
+   */
+  private Keyframe capture() {
+    int cardCount = 0;
+    for (CardAnchor anchor : mCardAnchor) {
+      cardCount += anchor.getCount();
+    }
+    Keyframe frame = new Keyframe(mCardAnchor.length, cardCount);
+    cardCount = 0;
+    for (int i = 0; i < mCardAnchor.length; i++) {
+      frame.mCount[i] = mCardAnchor[i].getCount();
+      frame.mHidden[i] = mCardAnchor[i].getHiddenCount();
+      System.arraycopy(mCardAnchor[i].getCards(), 0, frame.mCard, cardCount, frame.mCount[i]);
+      cardCount += frame.mCount[i];
+    }
+    return frame;
+  }
+
+  /**
+   * Put the board back as it was kept
+   */
+  private void restore(final Keyframe frame) {
+    int cardCount = 0;
+    for (int i = 0; i < mCardAnchor.length; i++) {
+      CardAnchor anchor = mCardAnchor[i];
+      while (anchor.getCount() > 0) {
+        anchor.popCard();
+      }
+      for (int j = 0; j < frame.mCount[i]; j++) {
+        anchor.addCard(frame.mCard[cardCount++]);
+      }
+      anchor.setHiddenCount(frame.mHidden[i]);
+    }
+  }
+}
+
+/**
+ * The cards of each anchor at a point of a replay
+ */
+class Keyframe {
+  final Card[] mCard;
+  final int[] mCount;
+  final int[] mHidden;
+
+  public Keyframe(int anchorCount, int cardCount) {
+    mCard = new Card[cardCount];
+    mCount = new int[anchorCount];
+    mHidden = new int[anchorCount];
+  }
 }
@@ -17,10 +17,19 @@
 package com.kmagic.solitaire;
 
 import android.os.Bundle;
-
-import java.util.Stack;
-
-
+import android.util.Log;
+
+import com.kmagic.solitaire.engine.Game;
+import com.kmagic.solitaire.engine.Klondike;
+import com.kmagic.solitaire.engine.MoveHistory;
+import com.kmagic.solitaire.engine.Solver;
+import com.kmagic.solitaire.engine.State;
+
+/**
+ * Shows an engine game on card anchors. The engine game plays every move
+ * and keeps the history; the rules here only move the cards of the
+ * anchors to match it and animate them.
+ */
 public abstract class Rules {
 
   public static final int SOLITAIRE = 1;
@@ -33,7 +42,9 @@ public abstract class Rules {
   public static final int EVENT_STACK_ADD = 2;
   public static final int EVENT_FLING = 3;
   public static final int EVENT_SMART_MOVE = 4;
-  public static final int EVENT_DEAL_NEXT = 5;
+
+  // Most events processed by one HandleEvents()
+  private static final int MAX_EVENTS_HANDLED = 256;
 
   public static final int AUTO_MOVE_ALWAYS = 2;
   public static final int AUTO_MOVE_FLING_ONLY = 1;
@@ -41,7 +52,7 @@ public abstract class Rules {
 
   private int mType;
   protected SolitaireView mView;
-  protected Stack<Move> mMoveHistory;
+  protected MoveHistory mMoveHistory;
   protected AnimateCard mAnimateCard; 
   protected boolean mIgnoreEvents;
   protected EventPoster mEventPoster;
@@ -50,9 +61,14 @@ public abstract class Rules {
   // Anchors
   protected CardAnchor[] mCardAnchor;
   protected int mCardAnchorCount;
+  // Cards taken off the anchors while moving them
+  private Card[] mStorage;
 
-  protected Deck mDeck;
+  // Engine game the anchors show
+  protected Game mGame;
   protected int mCardCount;
+  // Moves of the history shown on the anchors, see SyncAnchors()
+  private int mSyncedMoves;
 
   // Automove
   protected int mAutoMoveLevel;
@@ -61,38 +77,373 @@ public abstract class Rules {
   public int GetType() { return mType; }
   public int GetCardCount() { return mCardCount; }
   public CardAnchor[] GetAnchorArray() { return mCardAnchor; }
+  public Game GetGame() { return mGame; }
   public void SetType(int type) { mType = type; }
   public void SetView(SolitaireView view) { mView = view; }
-  public void SetMoveHistory(Stack<Move> moveHistory) { mMoveHistory = moveHistory; }
+  public void SetMoveHistory(MoveHistory moveHistory) { mMoveHistory = moveHistory; }
   public void SetAnimateCard(AnimateCard animateCard) { mAnimateCard = animateCard; }
   public void SetIgnoreEvents(boolean ignore) { mIgnoreEvents = ignore; }
   public void SetEventPoster(EventPoster ep) { mEventPoster = ep; }
   public boolean GetIgnoreEvents() { return mIgnoreEvents; }
-  public int GetRulesExtra() { return 0; }
-  public String GetGameTypeString() { return ""; }
-  public String GetPrettyGameTypeString() { return ""; }
-  public boolean HasScore() { return false; }
+  public int GetRulesExtra() { return mGame.getRulesExtra(); }
+  public String GetGameTypeString() { return mGame.getGameTypeString(); }
+  public String GetPrettyGameTypeString() { return mGame.getPrettyGameTypeString(); }
+  public boolean HasScore() { return mGame.hasScore(); }
   public boolean HasString() { return false; }
   public String GetString() { return ""; }
   public void SetCarryOverScore(int score) {}
-  public int GetScore() { return 0; }
+  public int GetScore() { return mGame.getScore(); }
+  // Called as a redeal is undone on the anchors, the engine game keeps the count
   public void AddDealCount() {}
 
-  public int CountFreeSpaces() { return 0; }
+  public int CountFreeSpaces() { return mGame.countFreeSpaces(); }
   protected void SignalWin() { mView.displayWin(); }
 
   abstract public void Init(Bundle map);
+
+  /**
+   * Create an anchor for each pile of the engine game
+   */
+  protected void InitAnchors() {
+    mCardCount = mGame.getCardCount();
+    mCardAnchorCount = mGame.getPileCount();
+    mCardAnchor = new CardAnchor[mCardAnchorCount];
+    for (int i = 0; i < mCardAnchorCount; i++) {
+      mCardAnchor[i] = CardAnchor.CreateAnchor(mGame.getPile(i), i, this);
+    }
+    mStorage = new Card[mCardCount];
+  }
+
+  /**
+   * Restore a saved game into the anchors, or deal a new one if there is
+   * no valid saved state. The engine game plays onto the move history
+   * from here on.
+   * @param map saved game state, null for a new game
+   * @return true if the saved game was restored, false if a new game was dealt
+   */
+  protected boolean DealAnchors(Bundle map) {
+    boolean restored = false;
+    if (map != null) {
+      // Do some assertions, default to a new game if we find an invalid state
+      if (map.getInt("cardAnchorCount") == mCardAnchorCount &&
+          map.getInt("cardCount") == mCardCount) {
+        restored = mGame.restore(map.getIntArray("anchorCardCount"),
+                                 map.getIntArray("anchorHiddenCount"),
+                                 map.getIntArray("value"),
+                                 map.getIntArray("suit"));
+        if (restored) {
+          mGame.setRulesExtra(map.getInt("rulesExtra"));
+        }
+      }
+    }
+    if (!restored) {
+      // The moves of a save that did not fit are not the moves of this deal
+      mMoveHistory.clear();
+      mView.dealGame(mGame);
+    }
+
+    State state = mGame.getState();
+    for (int i = 0; i < mCardAnchorCount; i++) {
+      for (int j = 0; j < state.getCount(i); j++) {
+        mCardAnchor[i].addCard(new Card(state.getCard(i, j)));
+      }
+      mCardAnchor[i].setHiddenCount(state.getHiddenCount(i));
+    }
+    mGame.setMoveHistory(mMoveHistory);
+    mSyncedMoves = mMoveHistory.size();
+    return restored;
+  }
+
+  /**
+   * Get the engine state of the current position, the anchors show it
+   * once the cards in flight have landed
+   * @return the engine state
+   */
+  public State GetState() {
+    return mGame.getState();
+  }
+
+  /**
+   * Check if every card is home
+   * @return true if the game is won
+   */
+  public boolean IsWon() {
+    return mGame.isWon();
+  }
+
+  /**
+   * Get a copy of the engine game at the current position, for work done
+   * off the UI thread
+   * @return the copy
+   */
+  public Game GetSnapshot() {
+    return mGame.copy();
+  }
+
+  // ==========================================================================
+  // Moves
+  // -----
+
+  /**
+   * Play a move of the player on the engine game, the caller moves the
+   * cards of the anchors
+   * @param from the pile moved from
+   * @param to the pile moved to
+   * @param count the count of cards moved
+   */
+  public void Move(int from, int to, int count) {
+    mGame.move(from, to, count);
+    mSyncedMoves++;
+  }
+
+  /**
+   * Deal from the stock on the engine game, the caller moves the dealt
+   * cards of the anchors
+   * @return true if cards were dealt, false if not
+   */
+  protected boolean DealStock() {
+    if (!mGame.dealStock()) {
+      return false;
+    }
+    mSyncedMoves++;
+    return true;
+  }
+
+  /**
+   * Show the moves the engine game made on its own at once, such as
+   * removing a run a move completed
+   * @return the count of moves shown
+   */
+  public int SyncAnchors() {
+    int count = mMoveHistory.size() - mSyncedMoves;
+    boolean oldIgnore = mIgnoreEvents;
+    mIgnoreEvents = true;
+    while (mSyncedMoves < mMoveHistory.size()) {
+      MoveAnchors(mMoveHistory.get(mSyncedMoves++));
+    }
+    mIgnoreEvents = oldIgnore;
+    return count;
+  }
+
+  /**
+   * Take back the last move of the history, on the engine game and on
+   * the anchors if they show it
+   */
+  public void Undo() {
+    long move = mMoveHistory.peek();
+    boolean shown = mSyncedMoves == mMoveHistory.size();
+    mGame.undo();
+    if (shown) {
+      mSyncedMoves--;
+      UndoAnchors(move);
+    }
+  }
+
+  /**
+   * Play a move of the history again, the reverse of Undo()
+   * @param move the packed move
+   */
+  public void Redo(long move) {
+    mGame.apply(move);
+    mMoveHistory.push(move);
+    SyncAnchors();
+  }
+
+  /**
+   * Move the cards of the anchors as a move does, at once
+   */
+  private void MoveAnchors(long move) {
+    CardAnchor from = mCardAnchor[MoveHistory.getFrom(move)];
+    int toBegin = MoveHistory.getToBegin(move);
+    int toEnd = MoveHistory.getToEnd(move);
+    int count = MoveHistory.getCount(move);
+    if (toBegin != toEnd) {
+      for (int i = toBegin; i <= toEnd; i++) {
+        for (int j = 0; j < count; j++) {
+          mCardAnchor[i].addCard(from.popCard());
+        }
+      }
+    } else if (MoveHistory.getInvert(move)) {
+      for (int i = 0; i < count; i++) {
+        mCardAnchor[toBegin].addCard(from.popCard());
+      }
+    } else {
+      for (int i = 0; i < count; i++) {
+        mStorage[i] = from.popCard();
+      }
+      for (int i = count - 1; i >= 0; i--) {
+        mCardAnchor[toBegin].addCard(mStorage[i]);
+      }
+    }
+    if (MoveHistory.getUnhide(move)) {
+      from.unhideTopCard();
+    }
+  }
+
+  /**
+   * Move the cards of the anchors back as taking back a move does
+   */
+  private void UndoAnchors(long move) {
+    CardAnchor from = mCardAnchor[MoveHistory.getFrom(move)];
+    int toBegin = MoveHistory.getToBegin(move);
+    int toEnd = MoveHistory.getToEnd(move);
+    int moveCount = MoveHistory.getCount(move);
+    int count = 0;
+    for (int i = toBegin; i <= toEnd; i++) {
+      for (int j = 0; j < moveCount; j++) {
+        mStorage[count++] = mCardAnchor[i].popCard();
+      }
+    }
+    if (MoveHistory.getUnhide(move)) {
+      from.setHiddenCount(from.getHiddenCount() + 1);
+    }
+    if (MoveHistory.getInvert(move)) {
+      for (int i = 0; i < count; i++) {
+        from.addCard(mStorage[i]);
+      }
+    } else {
+      for (int i = count - 1; i >= 0; i--) {
+        from.addCard(mStorage[i]);
+      }
+    }
+    if (MoveHistory.getAddDealCount(move)) {
+      AddDealCount();
+    }
+  }
+
+  /**
+   * Send every card home as one animated batch when all that is left of
+   * the game is sending cards home, with the moves played on the engine
+   * game in one go. Events are ignored until the last card lands.
+   * @return true if the finish was started, false if there is play left
+   */
+  protected boolean AutoComplete() {
+    int[] finish = new int[mCardCount];
+    int count = mGame.findFinish(finish);
+    if (count <= 0) {
+      return false;
+    }
+    Card[] cards = new Card[count];
+    CardAnchor[] anchors = new CardAnchor[count];
+    for (int i = 0; i < count; i++) {
+      int from = Solver.getFrom(finish[i]);
+      int to = Solver.getTo(finish[i]);
+      cards[i] = mCardAnchor[from].popCard();
+      anchors[i] = mCardAnchor[to];
+      Move(from, to, 1);
+    }
+    mIgnoreEvents = true;
+    mWasFling = false;
+    mAnimateCard.moveBatch(cards, anchors, count, new Runnable() {
+      public void run() {
+        mIgnoreEvents = false;
+        SignalWin();
+      }
+    });
+    return true;
+  }
+
+  /**
+   * Handle a card landing on a foundation, signal a win or send more
+   * cards home as the auto move level asks
+   * @param autoComplete true to finish the game at once when all that is
+   *                     left is sending cards home
+   */
+  protected void SinkAdded(boolean autoComplete) {
+    if (mGame.isWon()) {
+      SignalWin();
+    } else if (mAutoMoveLevel == AUTO_MOVE_ALWAYS ||
+               (mAutoMoveLevel == AUTO_MOVE_FLING_ONLY && mWasFling)) {
+      if (!autoComplete || !AutoComplete()) {
+        EventAlert(EVENT_SMART_MOVE);
+      }
+    } else {
+      mView.stopAnimating();
+      mWasFling = false;
+    }
+  }
+
+  private boolean TryToSink(CardAnchor anchor) {
+    Card card = anchor.popCard();
+    boolean ret = TryToSinkCard(anchor, card);
+    if (!ret) {
+      anchor.addCard(card);
+    }
+    return ret;
+  }
+
+  private boolean TryToSinkCard(CardAnchor anchor, Card card) {
+    int to = mGame.findSink(anchor.getNumber());
+    if (to == -1) {
+      return false;
+    }
+    Move(anchor.getNumber(), to, 1);
+    anchor.unhideTopCard();
+    mAnimateCard.moveCard(card, mCardAnchor[to]);
+    return true;
+  }
+
   public void EventAlert(int event) { if (!mIgnoreEvents) { mEventPoster.PostEvent(event); mView.refresh(); } }
   public void EventAlert(int event, CardAnchor anchor) { if (!mIgnoreEvents) { mEventPoster.PostEvent(event, anchor);  mView.refresh();} }
   public void EventAlert(int event, CardAnchor anchor, Card card) { if (!mIgnoreEvents) { mEventPoster.PostEvent(event, anchor, card);  mView.refresh();} }
   public void ClearEvent() { mEventPoster.ClearEvent(); }
+  public boolean HasEvents() { return mEventPoster.HasEvent(); }
   abstract public void EventProcess(int event, CardAnchor anchor);
-  abstract public void EventProcess(int event, CardAnchor anchor, Card card);
-  abstract public void EventProcess(int event);
   abstract public void Resize(int width, int height);
-  public boolean Fling(MoveCard moveCard) { moveCard.release(); return false; }
-  public void HandleEvents() { 
-    while (!mIgnoreEvents && mEventPoster.HasEvent()) {
+
+  public void EventProcess(int event, CardAnchor anchor, Card card) {
+    if (mIgnoreEvents) {
+      anchor.addCard(card);
+      return;
+    }
+    if (event == EVENT_FLING) {
+      mWasFling = true;
+      if (!TryToSinkCard(anchor, card)) {
+        anchor.addCard(card);
+        mWasFling = false;
+      }
+    } else {
+      anchor.addCard(card);
+    }
+  }
+
+  public void EventProcess(int event) {
+    if (mIgnoreEvents) {
+      return;
+    }
+    if (event == EVENT_SMART_MOVE) {
+      int pile = mGame.findAutoMove();
+      if (pile == -1 || !TryToSink(mCardAnchor[pile])) {
+        mWasFling = false;
+        mView.stopAnimating();
+      }
+    }
+  }
+
+  /**
+   * Send a flung card home, if a foundation takes it
+   * @param moveCard the card being moved
+   * @return true if the card is sent home, false if it went back
+   */
+  public boolean Fling(MoveCard moveCard) {
+    CardAnchor anchor = moveCard.getAnchor();
+    if (moveCard.getCount() == 1 && mGame.findSink(anchor.getNumber()) != -1) {
+      mEventPoster.PostEvent(EVENT_FLING, anchor, moveCard.dumpCards(false)[0]);
+      mView.refresh();
+      return true;
+    }
+    moveCard.release();
+    return false;
+  }
+
+  /**
+   * Process pending events until none are left, called after every input
+   * and every frame. Events posted while processing are processed too, up
+   * to a bound so rules that keep posting can not hang the UI thread; any
+   * left over are processed on the next call.
+   */
+  public void HandleEvents() {
+    for (int i = 0; i < MAX_EVENTS_HANDLED && !mIgnoreEvents && mEventPoster.HasEvent(); i++) {
       mEventPoster.HandleEvent();
     }
   }
@@ -103,7 +454,7 @@ public abstract class Rules {
   }
 
   public static Rules CreateRules(int type, Bundle map, SolitaireView view,
-                                  Stack<Move> moveHistory, AnimateCard animate) {
+                                  MoveHistory moveHistory, AnimateCard animate) {
     Rules ret = null;
     switch (type) {
       case SOLITAIRE:
@@ -135,8 +486,6 @@ public abstract class Rules {
 
 class NormalSolitaire extends Rules {
 
-  private boolean mDealThree;
-  private int mDealsLeft;
   private String mScoreString;
   private int mLastScore;
   private int mCarryOverScore;
@@ -144,85 +493,26 @@ class NormalSolitaire extends Rules {
   @Override
   public void Init(Bundle map) {
     mIgnoreEvents = true;
-    mDealThree = mView.getSettings().getBoolean("SolitaireDealThree", true);
+    boolean dealThree = mView.getSettings().getBoolean("SolitaireDealThree", true);
+    mGame = new Klondike(dealThree,
+                         mView.getSettings().getBoolean("SolitaireStyleNormal", true));
 
     // Thirteen total anchors for regular solitaire
-    mCardCount = 52;
-    mCardAnchorCount = 13;
-    mCardAnchor = new CardAnchor[mCardAnchorCount];
-
-    // Top dealt from anchors
-    mCardAnchor[0] = CardAnchor.CreateAnchor(CardAnchor.DEAL_FROM, 0, this);
-    mCardAnchor[1] = CardAnchor.CreateAnchor(CardAnchor.DEAL_TO, 1, this);
-    if (mDealThree) {
+    InitAnchors();
+    if (dealThree) {
       mCardAnchor[1].setShowing(3);
     } else {
       mCardAnchor[1].setShowing(1);
     }
 
-    // Top anchors for placing cards
-    for (int i = 0; i < 4; i++) {
-      mCardAnchor[i+2] = CardAnchor.CreateAnchor(CardAnchor.SEQ_SINK, i+2, this);
-    }
-
-    // Middle anchor stacks
-    for (int i = 0; i < 7; i++) {
-      mCardAnchor[i+6] = CardAnchor.CreateAnchor(CardAnchor.GENERIC_ANCHOR, i+6, this);
-      mCardAnchor[i+6].setStartSeq(GenericAnchor.START_KING);
-      mCardAnchor[i+6].setBuildSeq(GenericAnchor.SEQ_DSC);
-      mCardAnchor[i+6].setMoveSeq(GenericAnchor.SEQ_ASC);
-      mCardAnchor[i+6].setSuit(GenericAnchor.SUIT_RB);
-      mCardAnchor[i+6].setWrap(false);
-      mCardAnchor[i+6].setBehavior(GenericAnchor.PACK_MULTI);
-      mCardAnchor[i+6].setDisplay(GenericAnchor.DISPLAY_MIX);
-    }
-
-    if (map != null) {
-      // Do some assertions, default to a new game if we find an invalid state
-      if (map.getInt("cardAnchorCount") == 13 &&
-          map.getInt("cardCount") == 52) {
-        int[] cardCount = map.getIntArray("anchorCardCount");
-        int[] hiddenCount = map.getIntArray("anchorHiddenCount");
-        int[] value = map.getIntArray("value");
-        int[] suit = map.getIntArray("suit");
-        int cardIdx = 0;
-        mDealsLeft = map.getInt("rulesExtra");
-
-        for (int i = 0; i < 13; i++) {
-          for (int j = 0; j < cardCount[i]; j++, cardIdx++) {
-            Card card = new Card(value[cardIdx], suit[cardIdx]);
-            mCardAnchor[i].addCard(card);
-          }
-          mCardAnchor[i].setHiddenCount(hiddenCount[i]);
-        }
-        if (mDealsLeft != -1) {
-          // Reset to zero as GetScore() uses it in its calculation.
-          mCarryOverScore = 0;
-          mCarryOverScore = map.getInt("score") - GetScore();
-        }
-
-        mIgnoreEvents = false;
-        // Return here so an invalid save state will result in a new game
-        return;
-      }
-    }
-
-    mDeck = new Deck(1);
-    for (int i = 0; i < 7; i++) {
-      for (int j = 0; j <= i; j++) {
-        mCardAnchor[i+6].addCard(mDeck.popCard());
+    boolean restored = DealAnchors(map);
+    if (restored) {
+      if (HasScore()) {
+        // Reset to zero as GetScore() uses it in its calculation.
+        mCarryOverScore = 0;
+        mCarryOverScore = map.getInt("score") - GetScore();
       }
-      mCardAnchor[i+6].setHiddenCount(i);
-    }
-
-    while (!mDeck.isEmpty()) {
-      mCardAnchor[0].addCard(mDeck.popCard());
-    }
-
-    if (mView.getSettings().getBoolean("SolitaireStyleNormal", true)) {
-      mDealsLeft = -1;
-    } else {
-      mDealsLeft = mDealThree ? 2 : 0;
+    } else if (HasScore()) {
       mLastScore = -52;
       mScoreString = "-$52";
       mCarryOverScore = 0;
@@ -269,170 +559,16 @@ class NormalSolitaire extends Rules {
       return;
     }
     if (event == EVENT_DEAL) {
-      if (mCardAnchor[0].getCount() == 0) {
-        boolean addDealCount = false;
-        if (mDealsLeft == 0) {
-          mCardAnchor[0].setDone(true);
-          return;
-        } else if (mDealsLeft > 0) {
-          mDealsLeft--;
-          addDealCount = true;
-        }
-        int count = 0;
-        while (mCardAnchor[1].getCount() > 0) {
-          mCardAnchor[0].addCard(mCardAnchor[1].popCard());
-          count++;
-        }
-        mMoveHistory.push(new Move(1, 0, count, true, false, addDealCount));
+      if (mGame.dealStock()) {
+        SyncAnchors();
         mView.refresh();
-      } else {
-        int count = 0;
-        int maxCount = mDealThree ? 3 : 1;
-        for (int i = 0; i < maxCount && mCardAnchor[0].getCount() > 0; i++) {
-          mCardAnchor[1].addCard(mCardAnchor[0].popCard());
-          count++;
-        }
-        if (mDealsLeft == 0 && mCardAnchor[0].getCount() == 0) {
-          mCardAnchor[0].setDone(true);
-        }
-        mMoveHistory.push(new Move(0, 1, count, true, false));
-      }
-    } else if (event == EVENT_STACK_ADD) {
-      if (mCardAnchor[2].getCount() == 13 && mCardAnchor[3].getCount() == 13 &&
-          mCardAnchor[4].getCount() == 13 && mCardAnchor[5].getCount() == 13) {
-        SignalWin();
-      } else {
-        if (mAutoMoveLevel == AUTO_MOVE_ALWAYS ||
-            (mAutoMoveLevel == AUTO_MOVE_FLING_ONLY && mWasFling)) {
-          EventAlert(EVENT_SMART_MOVE);
-        } else {
-          mView.stopAnimating();
-          mWasFling = false;
-        }
-      }
-    }
-  }
-
-  @Override
-  public void EventProcess(int event, CardAnchor anchor, Card card) {
-    if (mIgnoreEvents) {
-      anchor.addCard(card);
-      return;
-    }
-    if (event == EVENT_FLING) {
-      mWasFling = true;
-      if (!TryToSinkCard(anchor, card)) {
-        anchor.addCard(card);
-        mWasFling = false;
-      }
-    } else {
-      anchor.addCard(card);
-    }
-  }
-
-  @Override
-  public void EventProcess(int event) {
-    if (mIgnoreEvents) {
-      return;
-    }
-    if (event == EVENT_SMART_MOVE) {
-      int i;
-      for (i = 0; i < 7; i++) {
-        if (mCardAnchor[i+6].getCount() > 0 &&
-            TryToSink(mCardAnchor[i+6])) {
-          break;
-        }
-      }
-      if (i == 7) {
-        mWasFling = false;
-        mView.stopAnimating();
       }
-    }
-  }
-
-  @Override
-  public boolean Fling(MoveCard moveCard) {
-    if (moveCard.getCount() == 1) {
-      CardAnchor anchor = moveCard.getAnchor();
-      Card card = moveCard.dumpCards(false)[0];
-      for (int i = 0; i < 4; i++) {
-        if (mCardAnchor[i+2].dropSingleCard(card)) {
-          EventAlert(EVENT_FLING, anchor, card);
-          return true;
-        }
+      if (GetRulesExtra() == 0 && mCardAnchor[0].getCount() == 0) {
+        mCardAnchor[0].setDone(true);
       }
-      anchor.addCard(card);
-    } else {
-      moveCard.release();
-    }
-    return false;
-  }
-
-  private boolean TryToSink(CardAnchor anchor) {
-    Card card = anchor.popCard();
-    boolean ret = TryToSinkCard(anchor, card);
-    if (!ret) {
-      anchor.addCard(card);
-    }
-    return ret;
-  }
-
-  private boolean TryToSinkCard(CardAnchor anchor, Card card) {
-    for (int i = 0; i < 4; i++) {
-      if (mCardAnchor[i+2].dropSingleCard(card)) {
-        mMoveHistory.push(new Move(anchor.getNumber(), i+2, 1, false, anchor.unhideTopCard()));
-        mAnimateCard.moveCard(card, mCardAnchor[i+2]);
-        return true;
-      }
-    }
-
-    return false;
-  }
-
-  @Override
-  public int GetRulesExtra() {
-    return mDealsLeft;
-  }
-
-  @Override
-  public String GetGameTypeString() {
-    if (mDealsLeft == -1) {
-      if (mDealThree) {
-        return "SolitaireNormalDeal3";
-      } else {
-        return "SolitaireNormalDeal1";
-      }
-    } else {
-      if (mDealThree) {
-        return "SolitaireVegasDeal3";
-      } else {
-        return "SolitaireVegasDeal1";
-      }
-    }
-  }
-  @Override
-  public String GetPrettyGameTypeString() {
-    if (mDealsLeft == -1) {
-      if (mDealThree) {
-        return "Solitaire Dealing Three Cards";
-      } else {
-        return "Solitaire Dealing One Card";
-      }
-    } else {
-      if (mDealThree) {
-        return "Vegas Solitaire Dealing Three Cards";
-      } else {
-        return "Vegas Solitaire Dealing One Card";
-      }
-    }
-  }
-
-  @Override
-  public boolean HasScore() {
-    if (mDealsLeft != -1) {
-      return true;
+    } else if (event == EVENT_STACK_ADD) {
+      SinkAdded(true);
     }
-    return false;
   }
 
   @Override
@@ -442,11 +578,8 @@ class NormalSolitaire extends Rules {
 
   @Override
   public String GetString() {
-    if (mDealsLeft != -1) {
-      int score = mCarryOverScore - 52;
-      for (int i = 0; i < 4; i++) {
-        score += 5 * mCardAnchor[i+2].getCount();
-      }
+    if (HasScore()) {
+      int score = GetScore();
       if (score != mLastScore) {
         if (score < 0) {
           mScoreString = "-$" + (score * -1);
@@ -461,89 +594,26 @@ class NormalSolitaire extends Rules {
 
   @Override
   public int GetScore() {
-    if (mDealsLeft != -1) {
-      int score = mCarryOverScore - 52;
-      for (int i = 0; i < 4; i++) {
-        score += 5 * mCardAnchor[i+2].getCount();
-      }
-      return score;
+    if (HasScore()) {
+      return mCarryOverScore + mGame.getScore();
     }
     return 0;
   }
 
   @Override
   public void AddDealCount() {
-    if (mDealsLeft != -1) {
-      mDealsLeft++;
-      mCardAnchor[0].setDone(false);
-    }
+    mCardAnchor[0].setDone(false);
   }
 }
 
 class Spider extends Rules {
-  private boolean mStillDealing;
   public void Init(Bundle map) {
     mIgnoreEvents = true;
-    mStillDealing = false;
-
-    mCardCount = 104;
-    mCardAnchorCount = 12;
-    mCardAnchor = new CardAnchor[mCardAnchorCount];
-
-    // Anchor stacks
-    for (int i = 0; i < 10; i++) {
-      mCardAnchor[i] = CardAnchor.CreateAnchor(CardAnchor.SPIDER_STACK, i, this);
-      mCardAnchor[i] = CardAnchor.CreateAnchor(CardAnchor.GENERIC_ANCHOR, i, this);
-      mCardAnchor[i].setBuildSeq(GenericAnchor.SEQ_DSC);
-      mCardAnchor[i].setBuildSuit(GenericAnchor.SEQ_ANY);
-      mCardAnchor[i].setMoveSeq(GenericAnchor.SEQ_ASC);
-      mCardAnchor[i].setMoveSuit(GenericAnchor.SUIT_SAME);
-      mCardAnchor[i].setBehavior(GenericAnchor.PACK_MULTI);
-      mCardAnchor[i].setDisplay(GenericAnchor.DISPLAY_MIX);
-      mCardAnchor[i].setHack(GenericAnchor.DEALHACK);
-    }
-
-    mCardAnchor[10] = CardAnchor.CreateAnchor(CardAnchor.DEAL_FROM, 10, this);
-    mCardAnchor[11] = CardAnchor.CreateAnchor(CardAnchor.DEAL_TO, 11, this);
-
-    if (map != null) {
-      // Do some assertions, default to a new game if we find an invalid state
-      if (map.getInt("cardAnchorCount") == 12 &&
-          map.getInt("cardCount") == 104) {
-        int[] cardCount = map.getIntArray("anchorCardCount");
-        int[] hiddenCount = map.getIntArray("anchorHiddenCount");
-        int[] value = map.getIntArray("value");
-        int[] suit = map.getIntArray("suit");
-        int cardIdx = 0;
-
-        for (int i = 0; i < mCardAnchorCount; i++) {
-          for (int j = 0; j < cardCount[i]; j++, cardIdx++) {
-            Card card = new Card(value[cardIdx], suit[cardIdx]);
-            mCardAnchor[i].addCard(card);
-          }
-          mCardAnchor[i].setHiddenCount(hiddenCount[i]);
-        }
-
-        mIgnoreEvents = false;
-        // Return here so an invalid save state will result in a new game
-        return;
-      }
-    }
 
     int suits = mView.getSettings().getInt("SpiderSuits", 4);
-    mDeck = new Deck(2, suits);
-    int i = 54;
-    while (i > 0) {
-      for (int j = 0; j < 10 && i > 0; j++) {
-        i--;
-        mCardAnchor[j].addCard(mDeck.popCard());
-        mCardAnchor[j].setHiddenCount(mCardAnchor[j].getCount() - 1);
-      }
-    }
-
-    while (!mDeck.isEmpty()) {
-      mCardAnchor[10].addCard(mDeck.popCard());
-    }
+    mGame = new com.kmagic.solitaire.engine.Spider(suits);
+    InitAnchors();
+    DealAnchors(map);
     mIgnoreEvents = false;
   }
 
@@ -566,84 +636,43 @@ class Spider extends Rules {
     mCardAnchor[11].setPosition(-50, 1);
   }
 
-  @Override
-  public void EventProcess(int event) {
-  }
-
-  @Override
-  public void EventProcess(int event, CardAnchor anchor, Card card) {
-    anchor.addCard(card);
-  }
-
   @Override
   public void EventProcess(int event, CardAnchor anchor) {
     if (mIgnoreEvents) {
       return;
     }
     if (event == EVENT_STACK_ADD) {
-      if (anchor.getCount() - anchor.getHiddenCount() >= 13) {
-        Card[] card = anchor.getCards();
-        if (card[anchor.getCount()-1].getValue() == 1) {
-          int suit = card[anchor.getCount()-1].getSuit();
-          int val = 2;
-          for (int i = anchor.getCount() - 2; i >= 0 && val < 14; i--, val++) {
-            if (card[i].getValue() != val || card[i].getSuit() != suit) {
-              break;
-            }
-          }
-          if (val == 14) {
-            for (int j = 0; j < 13; j++) {
-              mCardAnchor[11].addCard(anchor.popCard());
-            }
-            mMoveHistory.push(new Move(anchor.getNumber(), 11, 13, true, anchor.unhideTopCard()));
-
-            if (mCardAnchor[11].getCount() == mCardCount) {
-              SignalWin();
-            }
-          }
-        }
-      }
-      if (mStillDealing) {
-        // Post another event if we aren't done yet.
-        EventAlert(EVENT_DEAL_NEXT, mCardAnchor[anchor.getNumber()+1]);
+      // Runs a deal completes go once all of its cards have landed
+      if (!mAnimateCard.isAnimated()) {
+        RemoveRuns();
       }
     } else if (event == EVENT_DEAL) {
-      if (mCardAnchor[10].getCount() > 0) {
-        int count = mCardAnchor[10].getCount() > 10 ? 10 : mCardAnchor[10].getCount();
-        mAnimateCard.moveCard(mCardAnchor[10].popCard(), mCardAnchor[0]);
-        mMoveHistory.push(new Move(10, 0, count-1, 1, false, false));
-        mStillDealing = true;
-      }
-    } else if (event == EVENT_DEAL_NEXT) {
-      if (mCardAnchor[10].getCount() > 0 && anchor.getNumber() < 10) {
-        mAnimateCard.moveCard(mCardAnchor[10].popCard(), anchor);
-      } else {
-        mView.stopAnimating();
-        mStillDealing = false;
+      int count = Math.min(GetState().getCount(10), 10);
+      if (DealStock()) {
+        Card[] cards = new Card[count];
+        CardAnchor[] anchors = new CardAnchor[count];
+        for (int i = 0; i < count; i++) {
+          cards[i] = mCardAnchor[10].popCard();
+          anchors[i] = mCardAnchor[i];
+        }
+        mAnimateCard.moveBatch(cards, anchors, count, new Runnable() {
+          public void run() {
+            RemoveRuns();
+          }
+        });
       }
     }
   }
 
-  @Override
-  public String GetGameTypeString() {
-    int suits = mView.getSettings().getInt("SpiderSuits", 4);
-    if (suits == 1) {
-      return "Spider1Suit";
-    } else if (suits == 2) {
-      return "Spider2Suit";
-    } else {
-      return "Spider4Suit";
-    }
-  }
-  @Override
-  public String GetPrettyGameTypeString() {
-    int suits = mView.getSettings().getInt("SpiderSuits", 4);
-    if (suits == 1) {
-      return "Spider One Suit";
-    } else if (suits == 2) {
-      return "Spider Two Suit";
-    } else {
-      return "Spider Four Suit";
+  /**
+   * Show the runs of thirteen the engine game removed
+   */
+  private void RemoveRuns() {
+    if (SyncAnchors() > 0) {
+      mView.refresh();
+      if (mGame.isWon()) {
+        SignalWin();
+      }
     }
   }
 
@@ -654,7 +683,7 @@ class Spider extends Rules {
 
   @Override
   public String GetString() {
-    int dealCount = mCardAnchor[10].getCount() / 10;
+    int dealCount = GetState().getCount(10) / 10;
     if (dealCount == 1) {
       return "1 deal left";
     }
@@ -668,57 +697,10 @@ class Freecell extends Rules {
   public void Init(Bundle map) {
     mIgnoreEvents = true;
 
-    // Thirteen total anchors for regular solitaire
-    mCardCount = 52;
-    mCardAnchorCount = 16;
-    mCardAnchor = new CardAnchor[mCardAnchorCount];
-
-    // Top anchors for holding cards
-    for (int i = 0; i < 4; i++) {
-      mCardAnchor[i] = CardAnchor.CreateAnchor(CardAnchor.FREECELL_HOLD, i, this);
-    }
-
-    // Top anchors for sinking cards
-    for (int i = 0; i < 4; i++) {
-      mCardAnchor[i+4] = CardAnchor.CreateAnchor(CardAnchor.SEQ_SINK, i+4, this);
-    }
-
-    // Middle anchor stacks
-    for (int i = 0; i < 8; i++) {
-      mCardAnchor[i+8] = CardAnchor.CreateAnchor(CardAnchor.FREECELL_STACK, i+8,
-                                                 this);
-    }
-
-    if (map != null) {
-      // Do some assertions, default to a new game if we find an invalid state
-      if (map.getInt("cardAnchorCount") == 16 &&
-          map.getInt("cardCount") == 52) {
-        int[] cardCount = map.getIntArray("anchorCardCount");
-        int[] hiddenCount = map.getIntArray("anchorHiddenCount");
-        int[] value = map.getIntArray("value");
-        int[] suit = map.getIntArray("suit");
-        int cardIdx = 0;
-
-        for (int i = 0; i < 16; i++) {
-          for (int j = 0; j < cardCount[i]; j++, cardIdx++) {
-            Card card = new Card(value[cardIdx], suit[cardIdx]);
-            mCardAnchor[i].addCard(card);
-          }
-          mCardAnchor[i].setHiddenCount(hiddenCount[i]);
-        }
-
-        mIgnoreEvents = false;
-        // Return here so an invalid save state will result in a new game
-        return;
-      }
-    }
-
-    mDeck = new Deck(1);
-    while (!mDeck.isEmpty()) {
-      for (int i = 0; i < 8 && !mDeck.isEmpty(); i++) {
-        mCardAnchor[i+8].addCard(mDeck.popCard());
-      }
-    }
+    // Four cells, four foundations and eight stacks
+    mGame = new com.kmagic.solitaire.engine.Freecell();
+    InitAnchors();
+    DealAnchors(map);
     mIgnoreEvents = false;
   }
 
@@ -746,125 +728,9 @@ class Freecell extends Rules {
     }
     if (event == EVENT_STACK_ADD) {
       if (anchor.getNumber() >= 4 && anchor.getNumber() < 8) {
-        if (mCardAnchor[4].getCount() == 13 && mCardAnchor[5].getCount() == 13 &&
-            mCardAnchor[6].getCount() == 13 && mCardAnchor[7].getCount() == 13) {
-          SignalWin();
-        } else {
-          if (mAutoMoveLevel == AUTO_MOVE_ALWAYS ||
-              (mAutoMoveLevel == AUTO_MOVE_FLING_ONLY && mWasFling)) {
-            EventAlert(EVENT_SMART_MOVE);
-          } else {
-            mView.stopAnimating();
-            mWasFling = false;
-          }
-        }
-      }
-    }
-  }
-
-  @Override
-  public boolean Fling(MoveCard moveCard) {
-    if (moveCard.getCount() == 1) {
-      CardAnchor anchor = moveCard.getAnchor();
-      Card card = moveCard.dumpCards(false)[0];
-      for (int i = 0; i < 4; i++) {
-        if (mCardAnchor[i+4].dropSingleCard(card)) {
-          EventAlert(EVENT_FLING, anchor, card);
-          return true;
-        }
-      }
-      anchor.addCard(card);
-    } else {
-      moveCard.release();
-    }
-
-    return false;
-  }
-
-  @Override
-  public void EventProcess(int event, CardAnchor anchor, Card card) {
-    if (mIgnoreEvents) {
-      anchor.addCard(card);
-      return;
-    }
-    if (event == EVENT_FLING) {
-      mWasFling = true;
-      if (!TryToSinkCard(anchor, card)) {
-        anchor.addCard(card);
-        mWasFling = false;
-      }
-    } else {
-      anchor.addCard(card);
-    }
-  }
-
-  private boolean TryToSink(CardAnchor anchor) {
-    Card card = anchor.popCard();
-    boolean ret = TryToSinkCard(anchor, card);
-    if (!ret) {
-      anchor.addCard(card);
-    }
-    return ret;
-  }
-
-  private boolean TryToSinkCard(CardAnchor anchor, Card card) {
-    for (int i = 0; i < 4; i++) {
-      if (mCardAnchor[i+4].dropSingleCard(card)) {
-        mAnimateCard.moveCard(card, mCardAnchor[i+4]);
-        mMoveHistory.push(new Move(anchor.getNumber(), i+4, 1, false, false));
-        return true;
-      }
-    }
-
-    return false;
-  }
-
-  @Override
-  public void EventProcess(int event) {
-    if (mIgnoreEvents == true) {
-      return;
-    }
-    if (event == EVENT_SMART_MOVE) {
-      for (int i = 0; i < 4; i++) {
-        if (mCardAnchor[i].getCount() > 0 &&
-            TryToSink(mCardAnchor[i])) {
-          return;
-        }
-      }
-      for (int i = 0; i < 8; i++) {
-        if (mCardAnchor[i+8].getCount() > 0 &&
-            TryToSink(mCardAnchor[i+8])) {
-          return;
-        }
-      }
-      mWasFling = false;
-      mView.stopAnimating();
-    }
-  }
-
-  @Override
-  public int CountFreeSpaces() {
-    int free = 0;
-    for (int i = 0; i < 4; i++) {
-      if (mCardAnchor[i].getCount() == 0) {
-        free++;
+        SinkAdded(true);
       }
     }
-    for (int i = 0; i < 8; i++) {
-      if (mCardAnchor[i+8].getCount() == 0) {
-        free++;
-      }
-    }
-    return free;
-  }
-
-  @Override
-  public String GetGameTypeString() {
-    return "Freecell";
-  }
-  @Override
-  public String GetPrettyGameTypeString() {
-    return "Freecell";
   }
 }
 
@@ -873,62 +739,9 @@ class FortyThieves extends Rules {
   public void Init(Bundle map) {
     mIgnoreEvents = true;
 
-    mCardCount = 104;
-    mCardAnchorCount = 20;
-    mCardAnchor = new CardAnchor[mCardAnchorCount];
-
-    // Anchor stacks
-    for (int i = 0; i < 10; i++) {
-      mCardAnchor[i] = CardAnchor.CreateAnchor(CardAnchor.GENERIC_ANCHOR, i, this);
-      mCardAnchor[i].setBuildSeq(GenericAnchor.SEQ_DSC);
-      mCardAnchor[i].setMoveSeq(GenericAnchor.SEQ_ASC);
-      mCardAnchor[i].setSuit(GenericAnchor.SUIT_SAME);
-      mCardAnchor[i].setWrap(false);
-      mCardAnchor[i].setPickup(GenericAnchor.PACK_LIMIT_BY_FREE);
-      mCardAnchor[i].setDropoff(GenericAnchor.PACK_MULTI);
-      mCardAnchor[i].setDisplay(GenericAnchor.DISPLAY_ALL);
-    }
-    // Bottom anchors for holding cards
-    for (int i = 0; i < 8; i++) {
-      mCardAnchor[i+10] = CardAnchor.CreateAnchor(CardAnchor.SEQ_SINK, i+10, this);
-    }
-    
-    mCardAnchor[18] = CardAnchor.CreateAnchor(CardAnchor.DEAL_FROM, 18, this);
-    mCardAnchor[19] = CardAnchor.CreateAnchor(CardAnchor.DEAL_TO, 19, this);
-
-    if (map != null) {
-      // Do some assertions, default to a new game if we find an invalid state
-      if (map.getInt("cardAnchorCount") == 20 &&
-          map.getInt("cardCount") == 104) {
-        int[] cardCount = map.getIntArray("anchorCardCount");
-        int[] hiddenCount = map.getIntArray("anchorHiddenCount");
-        int[] value = map.getIntArray("value");
-        int[] suit = map.getIntArray("suit");
-        int cardIdx = 0;
-
-        for (int i = 0; i < 20; i++) {
-          for (int j = 0; j < cardCount[i]; j++, cardIdx++) {
-            Card card = new Card(value[cardIdx], suit[cardIdx]);
-            mCardAnchor[i].addCard(card);
-          }
-          mCardAnchor[i].setHiddenCount(hiddenCount[i]);
-        }
-
-        mIgnoreEvents = false;
-        // Return here so an invalid save state will result in a new game
-        return;
-      }
-    }
-
-    mDeck = new Deck(2);
-    for (int i = 0; i < 10; i++) {
-      for (int j = 0; j < 4; j++){
-        mCardAnchor[i].addCard(mDeck.popCard());
-      }
-    }
-    while (!mDeck.isEmpty()) {
-      mCardAnchor[18].addCard(mDeck.popCard());
-    }
+    mGame = new com.kmagic.solitaire.engine.FortyThieves();
+    InitAnchors();
+    DealAnchors(map);
     mIgnoreEvents = false;
   }
 
@@ -951,131 +764,25 @@ class FortyThieves extends Rules {
     }
   }
 
-  @Override
-  public boolean Fling(MoveCard moveCard) {
-    if (moveCard.getCount() == 1) {
-      CardAnchor anchor = moveCard.getAnchor();
-      Card card = moveCard.dumpCards(false)[0];
-      for (int i = 0; i < 8; i++) {
-        if (mCardAnchor[i+10].dropSingleCard(card)) {
-          mEventPoster.PostEvent(EVENT_FLING, anchor, card);
-          return true;
-        }
-      }
-      anchor.addCard(card);
-    } else {
-      moveCard.release();
-    }
-    return false;
-  }
-
-  @Override
-  public void EventProcess(int event, CardAnchor anchor, Card card) {
-    if (mIgnoreEvents) {
-      anchor.addCard(card);
-      return;
-    }
-    if (event == EVENT_FLING) {
-      mWasFling = true;
-      if (!TryToSinkCard(anchor, card)) {
-        anchor.addCard(card);
-        mWasFling = false;
-      }
-    } else {
-      anchor.addCard(card);
-    }
-  }
-  
-  private boolean TryToSink(CardAnchor anchor) {
-    Card card = anchor.popCard();
-    boolean ret = TryToSinkCard(anchor, card);
-    if (!ret) {
-      anchor.addCard(card);
-    }
-    return ret;
-  }
-
-  private boolean TryToSinkCard(CardAnchor anchor, Card card) {
-    for (int i = 0; i < 8; i++) {
-      if (mCardAnchor[i+10].dropSingleCard(card)) {
-        mAnimateCard.moveCard(card, mCardAnchor[i+10]);
-        mMoveHistory.push(new Move(anchor.getNumber(), i+10, 1, false, false));
-        return true;
-      }
-    }
-    return false;
-  }
-
   @Override
   public void EventProcess(int event, CardAnchor anchor) {
     if (mIgnoreEvents) {
       return;
     }
     if (event == EVENT_DEAL) {
-      if (mCardAnchor[18].getCount()>0){
-        mCardAnchor[19].addCard(mCardAnchor[18].popCard());
+      if (mGame.dealStock()) {
+        SyncAnchors();
         if (mCardAnchor[18].getCount() == 0) {
           mCardAnchor[18].setDone(true);
         }
-        mMoveHistory.push(new Move(18, 19, 1, true, false));
       }
     } else if (event == EVENT_STACK_ADD) {
       if (anchor.getNumber() >= 10 && anchor.getNumber() < 18) {
-        if (mCardAnchor[10].getCount() == 13 && mCardAnchor[11].getCount() == 13 &&
-            mCardAnchor[12].getCount() == 13 && mCardAnchor[13].getCount() == 13 &&
-            mCardAnchor[14].getCount() == 13 && mCardAnchor[15].getCount() == 13 &&
-            mCardAnchor[16].getCount() == 13 && mCardAnchor[17].getCount() == 13) {
-          SignalWin();
-        } else {
-          if (mAutoMoveLevel == AUTO_MOVE_ALWAYS ||
-              (mAutoMoveLevel == AUTO_MOVE_FLING_ONLY && mWasFling)) {
-            mEventPoster.PostEvent(EVENT_SMART_MOVE);
-          } else {
-            mView.stopAnimating();
-            mWasFling = false;
-          }
-        }
+        SinkAdded(false);
       }
     }
   }
-  
-  @Override
-  public void EventProcess(int event) {
-    if (mIgnoreEvents == true) {
-      return;
-    }
-    if (event == EVENT_SMART_MOVE) {
-      for (int i = 0; i < 10; i++) {
-        if (mCardAnchor[i].getCount() > 0 &&
-            TryToSink(mCardAnchor[i])) {
-          return;
-        }
-      }
-      mWasFling = false;
-      mView.stopAnimating();
-    }
-  }
 
-  @Override
-  public int CountFreeSpaces() {
-    int free = 0;
-    for (int i = 0; i < 10; i++) {
-      if (mCardAnchor[i].getCount() == 0) {
-        free++;
-      }
-    }
-    return free;
-  }
-
-  @Override
-  public String GetGameTypeString() {
-    return "Forty Thieves";
-  }
-  @Override
-  public String GetPrettyGameTypeString() {
-    return "Forty Thieves";
-  }
-  
   @Override
   public boolean HasString() {
     return true;
@@ -1093,19 +800,43 @@ class FortyThieves extends Rules {
 }
 
 
+/**
+ * Queue of events for the rules, a ring buffer of primitive slots so
+ * posting never allocates and no event overwrites another. An event
+ * posted while the same event for the same anchor is pending is
+ * coalesced into it, unless it carries a card. An event posted to a full
+ * queue is dropped and its card handed back to its anchor.
+ */
 class EventPoster {
-  private int mEvent;
-  private CardAnchor mCardAnchor;
-  private Card mCard;
+  // Slots in the queue, a power of two
+  private static final int CAPACITY = 32;
+  private static final int NO_ANCHOR = -1;
+
+  private final int[] mEvent;
+  private final int[] mAnchor;
+  private final Card[] mCard;
+  private int mHead;
+  private int mCount;
   private Rules mRules;
 
+  private int mPostedCount;
+  private int mCoalescedCount;
+  private int mDroppedCount;
+
   public EventPoster(Rules rules) {
     mRules = rules;
-    mEvent = -1;
-    mCardAnchor = null;
-    mCard = null;
+    mEvent = new int[CAPACITY];
+    mAnchor = new int[CAPACITY];
+    mCard = new Card[CAPACITY];
+    mHead = 0;
+    mCount = 0;
   }
 
+  public int GetPostedCount() { return mPostedCount; }
+  public int GetCoalescedCount() { return mCoalescedCount; }
+  public int GetDroppedCount() { return mDroppedCount; }
+  public int GetPendingCount() { return mCount; }
+
   public void PostEvent(int event) {
     PostEvent(event, null, null);
   }
@@ -1115,28 +846,63 @@ class EventPoster {
   }
 
   public void PostEvent(int event, CardAnchor anchor, Card card) {
-    mEvent = event;
-    mCardAnchor = anchor;
-    mCard = card;
+    int number = anchor == null ? NO_ANCHOR : anchor.getNumber();
+    mPostedCount++;
+    if (card == null) {
+      for (int i = 0; i < mCount; i++) {
+        int idx = (mHead + i) & (CAPACITY - 1);
+        if (mEvent[idx] == event && mAnchor[idx] == number && mCard[idx] == null) {
+          mCoalescedCount++;
+          return;
+        }
+      }
+    }
+    if (mCount == CAPACITY) {
+      mDroppedCount++;
+      Log.w("Rules.java", "PostEvent(): queue full, dropped event " + event);
+      if (card != null) {
+        ReturnCard(number, card);
+      }
+      return;
+    }
+    int idx = (mHead + mCount++) & (CAPACITY - 1);
+    mEvent[idx] = event;
+    mAnchor[idx] = number;
+    mCard[idx] = card;
   }
 
-
+  /**
+   * Drop all pending events, the cards they carry go back to their anchors
+   */
   public void ClearEvent() {
-    mEvent = Rules.EVENT_INVALID;
-    mCardAnchor = null;
-    mCard = null;
+    int count = mCount;
+    int head = mHead;
+    mCount = 0;
+    for (int i = 0; i < count; i++) {
+      int idx = (head + i) & (CAPACITY - 1);
+      if (mCard[idx] != null) {
+        ReturnCard(mAnchor[idx], mCard[idx]);
+        mCard[idx] = null;
+      }
+    }
   }
 
   public boolean HasEvent() {
-    return mEvent != Rules.EVENT_INVALID;
+    return mCount > 0;
   }
 
+  /**
+   * Process the oldest pending event
+   */
   public void HandleEvent() {
     if (HasEvent()) {
-      int event = mEvent;
-      CardAnchor cardAnchor = mCardAnchor;
-      Card card = mCard;
-      ClearEvent();
+      int event = mEvent[mHead];
+      int number = mAnchor[mHead];
+      Card card = mCard[mHead];
+      mCard[mHead] = null;
+      mHead = (mHead + 1) & (CAPACITY - 1);
+      mCount--;
+      CardAnchor cardAnchor = number == NO_ANCHOR ? null : mRules.GetAnchorArray()[number];
       if (cardAnchor != null && card != null) {
         mRules.EventProcess(event, cardAnchor, card);
       } else if (cardAnchor != null) {
@@ -1146,6 +912,14 @@ class EventPoster {
       }
     }
   }
-}
-
 
+  /**
+   * Put the card of an event that will not be processed back on its anchor
+   */
+  private void ReturnCard(int number, Card card) {
+    boolean ignore = mRules.GetIgnoreEvents();
+    mRules.SetIgnoreEvents(true);
+    mRules.GetAnchorArray()[number].addCard(card);
+    mRules.SetIgnoreEvents(ignore);
+  }
+}
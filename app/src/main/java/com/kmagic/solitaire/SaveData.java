@@ -0,0 +1,481 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire;
+
+import android.os.Bundle;
+
+import com.kmagic.solitaire.engine.Cards;
+import com.kmagic.solitaire.engine.MoveHistory;
+import com.kmagic.solitaire.engine.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.StreamCorruptedException;
+import java.util.zip.CRC32;
+
+/**
+ * A saved game and the binary format it is saved in.
+ *
+ * The header is the magic, a version byte, the payload length and the
+ * CRC32 of the payload, fixed size big endian. The payload is varints:
+ * the game type, anchor count, card count, the card and hidden count of
+ * each anchor, then a byte per card, the rules extra and score zigzag
+ * encoded, the elapsed time, and the move history oldest first, each
+ * move its from, to begin, to end, count and flags.
+ *
+ * Saves of an older version are read into the current fields by the
+ * reader of that version, so they are migrated forward on the next save.
+ */
+public class SaveData {
+
+  // "SOLS"
+  private static final int MAGIC = 0x534F4C53;
+  public static final int VERSION = 3;
+  // Magic, version, payload length, CRC32
+  private static final int HEADER_SIZE = 13;
+
+  // Version 2 was written with an ObjectOutputStream
+  private static final int LEGACY_MAGIC = 0xACED;
+  private static final String LEGACY_VERSION = "solitaire_save_2";
+
+  private int mType;
+  private int mCardCount;
+  private int[] mAnchorCardCount;
+  private int[] mAnchorHiddenCount;
+  private int[] mValue;
+  private int[] mSuit;
+  private int mRulesExtra;
+  private int mScore;
+  private int mElapsed;
+  // Oldest first
+  private long[] mHistory;
+  // CRC32 of the payload last written or read
+  private int mChecksum;
+
+  private SaveData() { }
+
+  /**
+   * Capture the game in play, from the engine state the anchors show
+   * @param rules the rules of the game
+   * @param history the move history, left as is
+   * @param elapsed the milliseconds played
+   * @return the saved game
+   */
+  public static SaveData capture(Rules rules, MoveHistory history, int elapsed) {
+    State state = rules.GetState();
+    SaveData save = new SaveData();
+    save.mType = rules.GetType();
+    save.mAnchorCardCount = new int[state.getPileCount()];
+    save.mAnchorHiddenCount = new int[state.getPileCount()];
+    int cardCount = 0;
+    for (int i = 0; i < state.getPileCount(); i++) {
+      cardCount += state.getCount(i);
+    }
+    save.mValue = new int[cardCount];
+    save.mSuit = new int[cardCount];
+    cardCount = 0;
+    for (int i = 0; i < state.getPileCount(); i++) {
+      save.mAnchorCardCount[i] = state.getCount(i);
+      save.mAnchorHiddenCount[i] = state.getHiddenCount(i);
+      for (int j = 0; j < save.mAnchorCardCount[i]; j++, cardCount++) {
+        save.mValue[cardCount] = Cards.value(state.getCard(i, j));
+        save.mSuit[cardCount] = Cards.suit(state.getCard(i, j));
+      }
+    }
+    save.mCardCount = cardCount;
+    save.mRulesExtra = rules.GetRulesExtra();
+    save.mScore = rules.GetScore();
+    save.mElapsed = elapsed;
+    save.mHistory = history.toArray();
+    return save;
+  }
+
+  // ==========================================================================
+  // Getters and Setters
+  // -------------------
+  public int getType() { return mType; }
+  public int getElapsed() { return mElapsed; }
+  public int getChecksum() { return mChecksum; }
+
+  /**
+   * Get the map the rules restore the cards from
+   * @return the map for Rules.CreateRules()
+   */
+  public Bundle getBundle() {
+    Bundle map = new Bundle();
+    map.putInt("cardAnchorCount", mAnchorCardCount.length);
+    map.putInt("cardCount", mCardCount);
+    map.putIntArray("anchorCardCount", mAnchorCardCount);
+    map.putIntArray("anchorHiddenCount", mAnchorHiddenCount);
+    map.putIntArray("value", mValue);
+    map.putIntArray("suit", mSuit);
+    map.putInt("rulesExtra", mRulesExtra);
+    map.putInt("score", mScore);
+    return map;
+  }
+
+  /**
+   * Push the saved moves on a history, oldest first
+   * @param history the history to add to
+   */
+  public void restoreHistory(MoveHistory history) {
+    for (long move : mHistory) {
+      history.push(move);
+    }
+  }
+
+  // ==========================================================================
+  // Writing
+  // -------
+
+  /**
+   * Encode the save in the current version
+   * @return the bytes to write to the file
+   */
+  public byte[] write() {
+    SaveWriter out = new SaveWriter(HEADER_SIZE + 32 + mCardCount + mHistory.length * 5);
+    out.skip(HEADER_SIZE);
+    out.writeVarint(mType);
+    out.writeVarint(mAnchorCardCount.length);
+    out.writeVarint(mCardCount);
+    for (int i = 0; i < mAnchorCardCount.length; i++) {
+      out.writeVarint(mAnchorCardCount[i]);
+      out.writeVarint(mAnchorHiddenCount[i]);
+    }
+    for (int i = 0; i < mCardCount; i++) {
+      out.writeByte(Cards.make(mValue[i], mSuit[i]));
+    }
+    out.writeSigned(mRulesExtra);
+    out.writeSigned(mScore);
+    out.writeVarint(mElapsed);
+    out.writeVarint(mHistory.length);
+    for (long move : mHistory) {
+      out.writeVarint(MoveHistory.getFrom(move));
+      out.writeVarint(MoveHistory.getToBegin(move));
+      out.writeVarint(MoveHistory.getToEnd(move));
+      out.writeVarint(MoveHistory.getCount(move));
+      out.writeVarint(MoveHistory.getFlags(move));
+    }
+
+    int length = out.getLength();
+    CRC32 crc = new CRC32();
+    crc.update(out.getBuffer(), HEADER_SIZE, length - HEADER_SIZE);
+    out.seek(0);
+    out.writeInt(MAGIC);
+    out.writeByte(VERSION);
+    out.writeInt(length - HEADER_SIZE);
+    mChecksum = (int)crc.getValue();
+    out.writeInt(mChecksum);
+    out.seek(length);
+    return out.toByteArray();
+  }
+
+  // ==========================================================================
+  // Reading
+  // -------
+
+  /**
+   * Read a save of any version
+   * @param in the stream to read the whole save from
+   * @return the saved game
+   * @throws IOException if the save cannot be read or is corrupt
+   */
+  public static SaveData read(InputStream in) throws IOException {
+    SaveReader reader = SaveReader.readFully(in);
+    return read(reader.getData(), reader.getLength());
+  }
+
+  /**
+   * Read a save of any version
+   * @param data the bytes of the save
+   * @param length the count of bytes
+   * @return the saved game
+   * @throws IOException if the save is corrupt
+   */
+  public static SaveData read(byte[] data, int length) throws IOException {
+    if (length >= 2 && ((data[0] & 0xFF) << 8 | (data[1] & 0xFF)) == LEGACY_MAGIC) {
+      return readLegacy(data, length);
+    }
+    if (length < HEADER_SIZE) {
+      throw new StreamCorruptedException("Save too short");
+    }
+    SaveReader in = new SaveReader(data, length);
+    if (in.readInt() != MAGIC) {
+      throw new StreamCorruptedException("Not a save");
+    }
+    int version = in.readByte();
+    int payload = in.readInt();
+    int checksum = in.readInt();
+    if (payload != length - HEADER_SIZE) {
+      throw new StreamCorruptedException("Save truncated");
+    }
+    CRC32 crc = new CRC32();
+    crc.update(data, HEADER_SIZE, payload);
+    if ((int)crc.getValue() != checksum) {
+      throw new StreamCorruptedException("Save checksum mismatch");
+    }
+
+    SaveData save;
+    switch (version) {
+      case 3:
+        save = readVersion3(in);
+        break;
+      default:
+        throw new StreamCorruptedException("Unknown save version " + version);
+    }
+    save.mChecksum = checksum;
+    return save;
+  }
+
+  private static SaveData readVersion3(SaveReader in) throws IOException {
+    SaveData save = new SaveData();
+    save.mType = in.readVarint();
+    int anchorCount = in.readCount(CardAnchor.MAX_CARDS);
+    save.mCardCount = in.readCount(CardAnchor.MAX_CARDS);
+    save.mAnchorCardCount = new int[anchorCount];
+    save.mAnchorHiddenCount = new int[anchorCount];
+    int cardCount = 0;
+    for (int i = 0; i < anchorCount; i++) {
+      save.mAnchorCardCount[i] = in.readCount(save.mCardCount);
+      save.mAnchorHiddenCount[i] = in.readCount(save.mAnchorCardCount[i]);
+      cardCount += save.mAnchorCardCount[i];
+    }
+    if (cardCount != save.mCardCount) {
+      throw new StreamCorruptedException("Save card count mismatch");
+    }
+    save.mValue = new int[cardCount];
+    save.mSuit = new int[cardCount];
+    for (int i = 0; i < cardCount; i++) {
+      int card = in.readByte();
+      if (card >= Cards.DECK_SIZE) {
+        throw new StreamCorruptedException("Save card out of range");
+      }
+      save.mValue[i] = Cards.value(card);
+      save.mSuit[i] = Cards.suit(card);
+    }
+    save.mRulesExtra = in.readSigned();
+    save.mScore = in.readSigned();
+    save.mElapsed = in.readVarint();
+    save.mHistory = new long[in.readCount(in.getRemaining())];
+    for (int i = 0; i < save.mHistory.length; i++) {
+      save.mHistory[i] = MoveHistory.pack(in.readVarint(), in.readVarint(), in.readVarint(),
+                                          in.readVarint(), in.readVarint());
+    }
+    return save;
+  }
+
+  /**
+   * Read a version 2 save, written with an ObjectOutputStream, moves
+   * newest first
+   */
+  private static SaveData readLegacy(byte[] data, int length) throws IOException {
+    ObjectInputStream oin = new ObjectInputStream(new ByteArrayInputStream(data, 0, length));
+    try {
+      if (!LEGACY_VERSION.equals(oin.readObject())) {
+        throw new StreamCorruptedException("Invalid save version");
+      }
+      SaveData save = new SaveData();
+      oin.readInt();
+      save.mCardCount = oin.readInt();
+      save.mType = oin.readInt();
+      save.mAnchorCardCount = (int[])oin.readObject();
+      save.mAnchorHiddenCount = (int[])oin.readObject();
+      save.mValue = (int[])oin.readObject();
+      save.mSuit = (int[])oin.readObject();
+      save.mRulesExtra = oin.readInt();
+      save.mScore = oin.readInt();
+      save.mElapsed = oin.readInt();
+      int[] historyFrom = (int[])oin.readObject();
+      int[] historyToBegin = (int[])oin.readObject();
+      int[] historyToEnd = (int[])oin.readObject();
+      int[] historyCount = (int[])oin.readObject();
+      int[] historyFlags = (int[])oin.readObject();
+      int size = historyFrom.length;
+      save.mHistory = new long[size];
+      for (int i = 0; i < size; i++) {
+        save.mHistory[size - 1 - i] = MoveHistory.pack(historyFrom[i], historyToBegin[i],
+                                                       historyToEnd[i], historyCount[i],
+                                                       historyFlags[i]);
+      }
+      return save;
+    } catch (ClassNotFoundException | ClassCastException e) {
+      throw new StreamCorruptedException("Invalid save");
+    } finally {
+      oin.close();
+    }
+  }
+}
+
+/**
+ * Writes the fields of a save into a growing buffer
+ */
+class SaveWriter {
+  private byte[] mBuffer;
+  private int mPos;
+  private int mLength;
+
+  public SaveWriter(int capacity) {
+    mBuffer = new byte[capacity];
+  }
+
+  public byte[] getBuffer() { return mBuffer; }
+  public int getLength() { return mLength; }
+
+  public void seek(int pos) { mPos = pos; }
+  public void reset() { mPos = 0; mLength = 0; }
+
+  public void skip(int count) {
+    ensure(count);
+    mPos += count;
+    mLength = Math.max(mLength, mPos);
+  }
+
+  public void writeByte(int value) {
+    ensure(1);
+    mBuffer[mPos++] = (byte)value;
+    mLength = Math.max(mLength, mPos);
+  }
+
+  public void writeBytes(byte[] data, int off, int length) {
+    ensure(length);
+    System.arraycopy(data, off, mBuffer, mPos, length);
+    mPos += length;
+    mLength = Math.max(mLength, mPos);
+  }
+
+  public void writeInt(int value) {
+    writeByte(value >>> 24);
+    writeByte(value >>> 16);
+    writeByte(value >>> 8);
+    writeByte(value);
+  }
+
+  /**
+   * Write an int 7 bits a byte, low bits first, with the top bit set on
+   * all but the last byte
+   */
+  public void writeVarint(int value) {
+    while ((value & ~0x7F) != 0) {
+      writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    writeByte(value);
+  }
+
+  /**
+   * Write an int that may be negative, zigzag encoded so small negative
+   * values stay short
+   */
+  public void writeSigned(int value) {
+    writeVarint((value << 1) ^ (value >> 31));
+  }
+
+  public byte[] toByteArray() {
+    byte[] ret = new byte[mLength];
+    System.arraycopy(mBuffer, 0, ret, 0, mLength);
+    return ret;
+  }
+
+  private void ensure(int count) {
+    if (mPos + count > mBuffer.length) {
+      byte[] grown = new byte[Math.max(mBuffer.length * 2, mPos + count)];
+      System.arraycopy(mBuffer, 0, grown, 0, mLength);
+      mBuffer = grown;
+    }
+  }
+}
+
+/**
+ * Reads the fields of a save, throwing if it runs past the end
+ */
+class SaveReader {
+  private final byte[] mData;
+  private final int mLength;
+  private int mPos;
+
+  public SaveReader(byte[] data, int length) {
+    mData = data;
+    mLength = length;
+  }
+
+  /**
+   * Read everything left in a stream
+   * @param in the stream
+   * @return a reader of the bytes read
+   */
+  public static SaveReader readFully(InputStream in) throws IOException {
+    byte[] data = new byte[1024];
+    int length = 0;
+    int count;
+    while ((count = in.read(data, length, data.length - length)) != -1) {
+      length += count;
+      if (length == data.length) {
+        byte[] grown = new byte[data.length * 2];
+        System.arraycopy(data, 0, grown, 0, length);
+        data = grown;
+      }
+    }
+    return new SaveReader(data, length);
+  }
+
+  public byte[] getData() { return mData; }
+  public int getLength() { return mLength; }
+  public int getPosition() { return mPos; }
+  public int getRemaining() { return mLength - mPos; }
+
+  public int readByte() throws IOException {
+    if (mPos >= mLength) {
+      throw new StreamCorruptedException("Save ended early");
+    }
+    return mData[mPos++] & 0xFF;
+  }
+
+  public int readInt() throws IOException {
+    return readByte() << 24 | readByte() << 16 | readByte() << 8 | readByte();
+  }
+
+  public int readVarint() throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      int b = readByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new StreamCorruptedException("Save varint too long");
+  }
+
+  public int readSigned() throws IOException {
+    int value = readVarint();
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Read a count, checked against a limit
+   * @param max the largest valid count
+   * @return the count
+   */
+  public int readCount(int max) throws IOException {
+    int count = readVarint();
+    if (count < 0 || count > max) {
+      throw new StreamCorruptedException("Save count out of range");
+    }
+    return count;
+  }
+}
@@ -122,6 +122,9 @@ public class Solitaire extends Activity {
       case R.id.menu_deal:
         mSolitaireView.deal();
         break;
+      case R.id.menu_hint:
+        mSolitaireView.hint();
+        break;
       case R.id.menu_stats:
         displayStats();
         break;
@@ -137,6 +140,7 @@ public class Solitaire extends Activity {
         finish();
         break;
       case R.id.menu_quit:
+        mSolitaireView.discardSave();
         mDoSave = false;
         finish();
         break;
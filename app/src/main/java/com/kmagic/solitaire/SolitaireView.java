@@ -22,10 +22,14 @@ import android.content.SharedPreferences;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.PointF;
+import android.graphics.Rect;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.KeyEvent;
 import android.view.View;
 import android.view.MotionEvent;
@@ -33,20 +37,21 @@ import android.view.Gravity;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
+import com.kmagic.solitaire.engine.Game;
+import com.kmagic.solitaire.engine.Hint;
+import com.kmagic.solitaire.engine.MoveHistory;
+import com.kmagic.solitaire.engine.Pile;
+import com.kmagic.solitaire.engine.Solver;
+
 import java.lang.Math;
 import java.lang.Runnable;
-import java.util.Stack;
 
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.StreamCorruptedException;
 
 // The brains of the operation
-public class SolitaireView extends View {
+public class SolitaireView extends View implements RefreshHandler.Client {
 
   private static final int MODE_NORMAL      = 1;
   private static final int MODE_MOVE_CARD   = 2;
@@ -56,9 +61,6 @@ public class SolitaireView extends View {
   private static final int MODE_WIN         = 6;
   private static final int MODE_WIN_STOP    = 7;
 
-  private static final String SAVE_FILENAME = "solitaire_save.bin";
-  // This is incremented only when the save system changes.
-  private static final String SAVE_VERSION = "solitaire_save_2";
 
   private CardAnchor[] mCardAnchor;
   private DrawMaster mDrawMaster;
@@ -74,14 +76,21 @@ public class SolitaireView extends View {
   private PointF mLastPoint;
   private PointF mDownPoint;
   private RefreshHandler mRefreshHandler;
-  private Thread mRefreshThread;
-  private Stack<Move> mMoveHistory;
+  // Anchors last drawn on the board, and areas to draw again
+  private CardAnchor[] mDrawnAnchors;
+  private Rect mDirtyRect;
+  private Rect mAnchorRect;
+  private MoveHistory mMoveHistory;
+  private MoveJournal mJournal;
   private Replay mReplay;
+  private DealPoolWorker mDealPool;
+  private HintWorker mHintWorker;
+  private int mHintMove;
   private Context mContext;
   private boolean mHasMoved;
   private Speed mSpeed;
-
-  private Card[] mUndoStorage;
+  // Replay position when a drag on the win screen started
+  private int mReplayDownPosition;
 
   private int mElapsed = 0;
   private long mStartTime;
@@ -112,17 +121,24 @@ public class SolitaireView extends View {
     mViewMode = MODE_NORMAL;
     mLastPoint = new PointF();
     mDownPoint = new PointF();
-    mRefreshHandler = new RefreshHandler(this);
-    mRefreshThread = new Thread(mRefreshHandler);
-    mMoveHistory = new Stack<>();
-    mUndoStorage = new Card[CardAnchor.MAX_CARDS];
+    mRefreshHandler = new RefreshHandler(this,
+        Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ?
+        new ChoreographerFrameSource() : new HandlerFrameSource());
+    mDirtyRect = new Rect();
+    mAnchorRect = new Rect();
+    mMoveHistory = new MoveHistory();
+    mJournal = new MoveJournal(context, this);
+    mMoveHistory.setListener(mJournal);
     mAnimateCard = new AnimateCard(this);
     mSpeed = new Speed();
     mReplay = new Replay(this, mAnimateCard);
+    mDealPool = new DealPoolWorker(context);
+    mHintWorker = new HintWorker(this);
+    mHintMove = Hint.NONE;
 
     mContext = context;
     mTextViewDown = false;
-    mRefreshThread.start();
+    mRefreshHandler.setRunning(true);
     mWinningScore = 0;
   }
 
@@ -163,6 +179,8 @@ public class SolitaireView extends View {
     resize(gameType);
     mDrawMaster.drawCards(getSettings().getBoolean("DisplayBigCards", false));
     mCardAnchor = mRules.GetAnchorArray();
+    clearHint();
+    mHintWorker.setGame(mRules.GetGame());
     setDisplayTime(getSettings().getBoolean("DisplayTime", true));
     editor.putInt("LastType", gameType);
     editor.apply();
@@ -171,6 +189,18 @@ public class SolitaireView extends View {
     mTimePaused = false;
     mPaused = false;
     mGameStarted = false;
+    startJournal();
+  }
+
+  /**
+   * Deal a new game, from the pool of winnable deals when the player
+   * only wants those and the pool has one
+   * @param game the game to deal
+   */
+  public void dealGame(final Game game) {
+    if (!getSettings().getBoolean("WinnableDeals", false) || !mDealPool.take(game)) {
+      game.deal();
+    }
   }
 
   /**
@@ -231,13 +261,16 @@ public class SolitaireView extends View {
       mStartTime = SystemClock.uptimeMillis() - mElapsed;
       mTimePaused = false;
     } else if (!timePassing) {
+      updateTime();
       mTimePaused = true;
     }
+    mRefreshHandler.singleRefresh();
   }
 
   /**
    * Update time, add to time when play game
    */
+  @Override
   public void updateTime() {
     if (!mTimePaused) {
       int elapsed = (int)(SystemClock.uptimeMillis() - mStartTime);
@@ -248,6 +281,28 @@ public class SolitaireView extends View {
     }
   }
 
+  /**
+   * Get the time played
+   * @return the milliseconds played
+   */
+  public int getElapsed() {
+    updateTime();
+    return mElapsed;
+  }
+
+  /**
+   * Get how long until the time shown changes
+   * @return milliseconds to the next second, -1 if the time is not shown
+   * or not passing
+   */
+  @Override
+  public long getTimeToTick() {
+    if (mTimePaused || !mDisplayTime) {
+      return -1;
+    }
+    return 1000 - (SystemClock.uptimeMillis() - mStartTime) % 1000;
+  }
+
   /**
    * Change the view mode between game other views
    * @param newMode view mode to change to
@@ -305,17 +360,15 @@ public class SolitaireView extends View {
    */
   public void onPause() {
     mPaused = true;
+    mDealPool.stop();
+    mHintWorker.stop();
 
-    if (mRefreshThread != null) {
+    if (mRefreshHandler.isRunning()) {
       mRefreshHandler.setRunning(false);
+      updateTime();
       mRules.ClearEvent();
       mRules.SetIgnoreEvents(true);
       mReplay.stopPlaying();
-      try {
-        mRefreshThread.join(1000);
-      } catch (InterruptedException ignored) {
-      }
-      mRefreshThread = null;
       if (mAnimateCard.isAnimated()) {
         mAnimateCard.cancel();
       }
@@ -336,77 +389,34 @@ public class SolitaireView extends View {
    */
   public void saveGame() {
     // This is supposed to have been called but I've seen instances where it wasn't.
-    if (mRefreshThread != null) {
+    if (mRefreshHandler.isRunning()) {
       onPause();
     }
 
     if (mRules != null && mViewMode == MODE_NORMAL) {
-      try {
-
-        FileOutputStream fout = mContext.openFileOutput(SAVE_FILENAME, 0);
-        ObjectOutputStream oout = new ObjectOutputStream(fout);
-
-        int cardCount = mRules.GetCardCount();
-        int[] value = new int[cardCount];
-        int[] suit = new int[cardCount];
-        int[] anchorCardCount = new int[mCardAnchor.length];
-        int[] anchorHiddenCount = new int[mCardAnchor.length];
-        int historySize = mMoveHistory.size();
-        int[] historyFrom = new int[historySize];
-        int[] historyToBegin = new int[historySize];
-        int[] historyToEnd = new int[historySize];
-        int[] historyCount = new int[historySize];
-        int[] historyFlags = new int[historySize];
-        Card[] card;
-
-        cardCount = 0;
-        for (int i = 0; i < mCardAnchor.length; i++) {
-          anchorCardCount[i] = mCardAnchor[i].getCount();
-          anchorHiddenCount[i] = mCardAnchor[i].getHiddenCount();
-          card = mCardAnchor[i].getCards();
-          for (int j = 0; j < anchorCardCount[i]; j++, cardCount++) {
-            value[cardCount] = card[j].getValue();
-            suit[cardCount] = card[j].getSuit();
-          }
-        }
-
-        for (int i = 0; i < historySize; i++) {
-          Move move = mMoveHistory.pop();
-          historyFrom[i] = move.getFrom();
-          historyToBegin[i] = move.getToBegin();
-          historyToEnd[i] = move.getToEnd();
-          historyCount[i] = move.getCount();
-          historyFlags[i] = move.getFlags();
-        }
-
-        oout.writeObject(SAVE_VERSION);
-        oout.writeInt(mCardAnchor.length);
-        oout.writeInt(cardCount);
-        oout.writeInt(mRules.GetType());
-        oout.writeObject(anchorCardCount);
-        oout.writeObject(anchorHiddenCount);
-        oout.writeObject(value);
-        oout.writeObject(suit);
-        oout.writeInt(mRules.GetRulesExtra());
-        oout.writeInt(mRules.GetScore());
-        oout.writeInt(mElapsed);
-        oout.writeObject(historyFrom);
-        oout.writeObject(historyToBegin);
-        oout.writeObject(historyToEnd);
-        oout.writeObject(historyCount);
-        oout.writeObject(historyFlags);
-        oout.close();
+      startJournal();
+    }
+  }
 
-        SharedPreferences.Editor editor = getSettings().edit();
-        editor.putBoolean("SolitaireSaveValid", true);
-        editor.apply();
+  /**
+   * Snapshot the game in play and journal its moves from here on, the
+   * snapshot and journal are what loadSave() reads
+   */
+  private void startJournal() {
+    mJournal.start(SaveData.capture(mRules, mMoveHistory, getElapsed()));
+    SharedPreferences.Editor editor = getSettings().edit();
+    editor.putBoolean("SolitaireSaveValid", true);
+    editor.apply();
+  }
 
-      } catch (FileNotFoundException e) {
-        Log.e("SolitaireView.java", "onStop(): File not found");
-      } catch (IOException e) {
-        Log.e("SolitaireView.java", "onStop(): IOException");
-      }
-    }
+  /**
+   * Stop saving the game in play, it is not loaded on the next start
+   */
+  public void discardSave() {
+    mJournal.stop();
+    SharedPreferences.Editor editor = getSettings().edit();
+    editor.putBoolean("SolitaireSaveValid", false);
+    editor.apply();
   }
 
   /**
@@ -417,46 +427,35 @@ public class SolitaireView extends View {
     mDrawMaster.drawCards(getSettings().getBoolean("DisplayBigCards", false));
     mTimePaused = true;
 
+    mJournal.stop();
+    mJournal.flush();
+    mMoveHistory.clear();
     try {
-      FileInputStream fin = mContext.openFileInput(SAVE_FILENAME);
-      ObjectInputStream oin = new ObjectInputStream(fin);
-
-      String version = (String)oin.readObject();
-      if (!version.equals(SAVE_VERSION)) {
-        Log.e("SolitaireView.java", "Invalid save version");
-        return false;
-      }
-      Bundle map = new Bundle();
-
-      map.putInt("cardAnchorCount", oin.readInt());
-      map.putInt("cardCount", oin.readInt());
-      int type = oin.readInt();
-      map.putIntArray("anchorCardCount", (int[])oin.readObject());
-      map.putIntArray("anchorHiddenCount", (int[])oin.readObject());
-      map.putIntArray("value", (int[])oin.readObject());
-      map.putIntArray("suit", (int[])oin.readObject());
-      map.putInt("rulesExtra", oin.readInt());
-      map.putInt("score", oin.readInt());
-      mElapsed = oin.readInt();
-      mStartTime = SystemClock.uptimeMillis() - mElapsed;
-      int[] historyFrom = (int[])oin.readObject();
-      int[] historyToBegin = (int[])oin.readObject();
-      int[] historyToEnd = (int[])oin.readObject();
-      int[] historyCount = (int[])oin.readObject();
-      int[] historyFlags = (int[])oin.readObject();
-      for (int i = historyFrom.length - 1; i >= 0; i--) {
-        mMoveHistory.push(new Move(historyFrom[i], historyToBegin[i], historyToEnd[i],
-                                   historyCount[i], historyFlags[i]));
-      }
-
-      oin.close();
+      SaveData save = MoveJournal.readSnapshot(mContext);
+      int type = save.getType();
+      Bundle map = save.getBundle();
+      mElapsed = save.getElapsed();
+      save.restoreHistory(mMoveHistory);
 
-      mGameStarted = !mMoveHistory.isEmpty();
       mRules = Rules.CreateRules(type, map, this, mMoveHistory, mAnimateCard);
       setDisplayTime(getSettings().getBoolean("DisplayTime", true));
       mCardAnchor = mRules.GetAnchorArray();
+      // Moves made after the snapshot was taken
+      mJournal.replay(save, new MoveJournal.Player() {
+        @Override
+        public void push(long move) { redo(move); }
+        @Override
+        public void pop() { undo(); }
+        @Override
+        public void setElapsed(int elapsed) { mElapsed = elapsed; }
+      });
+      mStartTime = SystemClock.uptimeMillis() - mElapsed;
+      mGameStarted = !mMoveHistory.isEmpty();
+      clearHint();
+      mHintWorker.setGame(mRules.GetGame());
       resize(type);
       mTimePaused = false;
+      startJournal();
       return true;
       
     } catch (FileNotFoundException e) {
@@ -465,8 +464,6 @@ public class SolitaireView extends View {
       Log.e("SolitaireView.java", "loadSave(): Stream Corrupted");
     } catch (IOException e) {
       Log.e("SolitaireView.java", "loadSave(): IOException");
-    } catch (ClassNotFoundException e) {
-      Log.e("SolitaireView.java", "loadSave(): Class not found exception");
     }
     mTimePaused = false;
     mPaused = false;
@@ -479,10 +476,16 @@ public class SolitaireView extends View {
   public void onResume() {
     mStartTime = SystemClock.uptimeMillis() - mElapsed;
     mRefreshHandler.setRunning(true);
-    mRefreshThread = new Thread(mRefreshHandler);
-    mRefreshThread.start();
     mRules.SetIgnoreEvents(false);
     mPaused = false;
+    mDealPool.start();
+    mHintWorker.start();
+    // A pause lands the cards in flight before the moves after them are shown
+    mRules.SyncAnchors();
+    // A pause cancels an auto-complete before its last card signals the win
+    if (mViewMode != MODE_WIN && mViewMode != MODE_WIN_STOP && mRules.IsWon()) {
+      displayWin();
+    }
   }
 
   public void refresh() {
@@ -527,6 +530,7 @@ public class SolitaireView extends View {
    */
   public void displayWin() {
     markWin();
+    discardSave();
     mTextView.setTextSize(mContext.getResources().getDimensionPixelSize(R.dimen.font_size));
     mTextView.setGravity(Gravity.CENTER_HORIZONTAL);
     displayText(mContext.getResources().getText(R.string.win_text));
@@ -540,8 +544,9 @@ public class SolitaireView extends View {
    * Restart game
    */
   public void restartGame() {
+    clearHint();
     mRules.SetIgnoreEvents(true);
-    while (!mMoveHistory.empty()) {
+    while (!mMoveHistory.isEmpty()) {
       undo();
     }
     mRules.SetIgnoreEvents(false);
@@ -565,11 +570,34 @@ public class SolitaireView extends View {
    * Draw game board
    */
   public void drawBoard() {
-      Canvas boardCanvas = mDrawMaster.getBoardCanvas();
+    Canvas boardCanvas = mDrawMaster.getBoardCanvas();
+    if (mDrawMaster.isBoardDirty() || mDrawnAnchors != mCardAnchor) {
       mDrawMaster.drawBackground(boardCanvas);
       for (CardAnchor ca : mCardAnchor) {
-          ca.Draw(mDrawMaster, boardCanvas);
+        ca.Draw(mDrawMaster, boardCanvas);
+        ca.setDrawn();
+      }
+      mDrawMaster.setBoardDirty(false);
+      mDrawnAnchors = mCardAnchor;
+      return;
+    }
+
+    // Only draw again where anchors changed, with whatever overlaps there
+    for (CardAnchor ca : mCardAnchor) {
+      if (!ca.takeDirty(mDirtyRect)) {
+        continue;
       }
+      boardCanvas.save();
+      boardCanvas.clipRect(mDirtyRect);
+      mDrawMaster.drawBackground(boardCanvas);
+      for (CardAnchor other : mCardAnchor) {
+        other.getBounds(mAnchorRect);
+        if (Rect.intersects(mAnchorRect, mDirtyRect)) {
+          other.Draw(mDrawMaster, boardCanvas);
+        }
+      }
+      boardCanvas.restore();
+    }
   }
 
   /**
@@ -579,6 +607,7 @@ public class SolitaireView extends View {
     if (mViewMode == MODE_TEXT) {
       changeViewMode(MODE_NORMAL);
     } else if (mViewMode == MODE_NORMAL) {
+      clearHint();
       mRules.EventAlert(Rules.EVENT_DEAL, mCardAnchor[0]);
       refresh();
     }
@@ -597,6 +626,9 @@ public class SolitaireView extends View {
       drawBoard();
     }
     mDrawMaster.drawLastBoard(canvas);
+    if (mViewMode == MODE_NORMAL && mHintMove != Hint.NONE) {
+      drawHint(canvas);
+    }
     if (mDisplayTime) {
       mDrawMaster.drawTime(canvas, mElapsed);
     }
@@ -624,6 +656,10 @@ public class SolitaireView extends View {
     }
 
     mRules.HandleEvents();
+    if (mJournal.isCompactDue() && mViewMode == MODE_NORMAL &&
+        !mAnimateCard.isAnimated() && !mRules.HasEvents()) {
+      startJournal();
+    }
   }
 
   /**
@@ -632,6 +668,9 @@ public class SolitaireView extends View {
   @Override
   public boolean onKeyDown(final int keyCode,
                            final KeyEvent msg) {
+    if ((mViewMode == MODE_WIN || mViewMode == MODE_WIN_STOP) && onReplayKey(keyCode)) {
+      return true;
+    }
     switch (keyCode) {
     case KeyEvent.KEYCODE_DPAD_CENTER:
     case KeyEvent.KEYCODE_SEARCH:
@@ -734,7 +773,7 @@ public class SolitaireView extends View {
     }
     mLastPoint.set(event.getX(), event.getY());
 
-    if (!mGameStarted && !mMoveHistory.empty()) {
+    if (!mGameStarted && !mMoveHistory.isEmpty()) {
       mGameStarted = true;
       markAttempt();
     }
@@ -768,14 +807,12 @@ public class SolitaireView extends View {
       case MODE_MOVE_CARD:
         for (int close = 0; close < 2; close++) {
           CardAnchor prevAnchor = mMoveCard.getAnchor();
-          boolean unhide = (prevAnchor.getVisibleCount() == 0 &&
-                            prevAnchor.getCount() > 0);
           int count = mMoveCard.getCount();
 
           for (int i = 0; i < mCardAnchor.length; i++) {
             if (mCardAnchor[i] != prevAnchor) {
               if (mCardAnchor[i].canDropCard(mMoveCard, close)) {
-                mMoveHistory.push(new Move(prevAnchor.getNumber(), i, count, false, unhide));
+                mRules.Move(prevAnchor.getNumber(), i, count);
                 mCardAnchor[i].addMoveCard(mMoveCard);
                 if (mViewMode == MODE_MOVE_CARD) {
                   changeViewMode(MODE_NORMAL);
@@ -810,6 +847,14 @@ public class SolitaireView extends View {
           return true;
         }
         break;
+      case MODE_WIN:
+      case MODE_WIN_STOP:
+        // Swiping up or down doubles or halves the replay speed
+        if (mHasMoved && Math.abs(y - mDownPoint.y) > Math.abs(x - mDownPoint.x)) {
+          mReplay.setSpeed(y < mDownPoint.y ? mReplay.getSpeed() * 2 : mReplay.getSpeed() / 2);
+          return true;
+        }
+        break;
     }
 
     return false;
@@ -824,6 +869,7 @@ public class SolitaireView extends View {
   public boolean onDown(final float x, final float y) {
     switch (mViewMode) {
       case MODE_NORMAL:
+        clearHint();
         Card card = null;
           for (CardAnchor ca : mCardAnchor) {
               card = ca.grabCard(x, y);
@@ -850,6 +896,10 @@ public class SolitaireView extends View {
       case MODE_CARD_SELECT:
         mSelectCard.tap(x, y);
         break;
+      case MODE_WIN:
+      case MODE_WIN_STOP:
+        mReplayDownPosition = mReplay.getPosition();
+        break;
     }
     return true;
   }
@@ -893,11 +943,33 @@ public class SolitaireView extends View {
           }
         }
         return true;
+      case MODE_WIN:
+      case MODE_WIN_STOP:
+        return seekReplay(x, y);
     }
 
     return false;
   }
 
+  /**
+   * Seek the replay of a won game by dragging sideways, across the whole
+   * view for the whole game
+   * @param x x coordinate
+   * @param y y coordinate
+   * @return true if sought, false if the drag is up or down
+   */
+  private boolean seekReplay(final float x, final float y) {
+    float across = x - mDownPoint.x;
+    if (!mHasMoved || Math.abs(across) < Math.abs(y - mDownPoint.y) || getWidth() == 0) {
+      return false;
+    }
+    int position = mReplayDownPosition + Math.round(across / getWidth() * mReplay.getMoveCount());
+    if (position != mReplay.getPosition()) {
+      mReplay.seek(position);
+    }
+    return true;
+  }
+
   /**
    * Check if there has been movement of cards
    * @param x x coordinate
@@ -927,6 +999,11 @@ public class SolitaireView extends View {
    * Stop animation
    */
   public void stopAnimating() {
+    if (mAnimateCard.isAnimated()) {
+      // Cards of another move are still in flight
+      mAnimateCard.stopWhenDone();
+      return;
+    }
     if (mViewMode == MODE_ANIMATE) {
       changeViewMode(MODE_NORMAL);
     } else if (mViewMode == MODE_WIN) {
@@ -934,6 +1011,34 @@ public class SolitaireView extends View {
     }
   }
 
+  /**
+   * Control the replay of a won game, left and right step a move, up and
+   * down change the speed and end skips to the end. On a touch screen a
+   * sideways drag seeks and a swipe up or down changes the speed.
+   * @param keyCode the key pressed
+   * @return true if the key was handled, false if not
+   */
+  private boolean onReplayKey(final int keyCode) {
+    switch (keyCode) {
+      case KeyEvent.KEYCODE_DPAD_LEFT:
+        mReplay.seek(mReplay.getPosition() - 1);
+        return true;
+      case KeyEvent.KEYCODE_DPAD_RIGHT:
+        mReplay.seek(mReplay.getPosition() + 1);
+        return true;
+      case KeyEvent.KEYCODE_DPAD_UP:
+        mReplay.setSpeed(mReplay.getSpeed() * 2);
+        return true;
+      case KeyEvent.KEYCODE_DPAD_DOWN:
+        mReplay.setSpeed(mReplay.getSpeed() / 2);
+        return true;
+      case KeyEvent.KEYCODE_MOVE_END:
+        mReplay.skipToEnd();
+        return true;
+    }
+    return false;
+  }
+
   /**
    * Undo card movement
    */
@@ -946,47 +1051,100 @@ public class SolitaireView extends View {
 
     mMoveCard.release();
     mSelectCard.release();
+    clearHint();
 
-    if (!mMoveHistory.empty()) {
-      Move move = mMoveHistory.pop();
-      int count = 0;
-      int from = move.getFrom();
-      if (move.getToBegin() != move.getToEnd()) {
-        for (int i = move.getToBegin(); i <= move.getToEnd(); i++) {
-          for (int j = 0; j < move.getCount(); j++) {
-            mUndoStorage[count++] = mCardAnchor[i].popCard();
-          }
-        }
-      } else {
-        for (int i = 0; i < move.getCount(); i++) {
-          mUndoStorage[count++] = mCardAnchor[move.getToBegin()].popCard();
-        }
-      }
-      if (move.getUnhide()) {
-        mCardAnchor[from].setHiddenCount(mCardAnchor[from].getHiddenCount() + 1);
-      }
-      if (move.getInvert()) {
-        for (int i = 0; i < count; i++) {
-          mCardAnchor[from].addCard(mUndoStorage[i]);
-        }
-      } else {
-        for (int i = count-1; i >= 0; i--) {
-          mCardAnchor[from].addCard(mUndoStorage[i]);
-        }
-      }
-      if (move.getAddDealCount()) {
-        mRules.AddDealCount();
-      }
-      if (mUndoStorage[0].getValue() == 1) {
-        for (int i = 0; i < mCardAnchor[from].getCount(); i++) {
-          Card card = mCardAnchor[from].getCards()[i];
-        }
-      }
+    if (!mMoveHistory.isEmpty()) {
+      mRules.Undo();
       refresh();
     }
     mRules.SetIgnoreEvents(oldIgnore);
   }
 
+  /**
+   * Play a move of the history again, the reverse of undo()
+   * @param move the packed move to play
+   */
+  private void redo(final long move) {
+    boolean oldIgnore = mRules.GetIgnoreEvents();
+    mRules.SetIgnoreEvents(true);
+
+    mRules.Redo(move);
+    mRules.SetIgnoreEvents(oldIgnore);
+  }
+
+  /**
+   * Find a hint for the current position, it is shown when found
+   */
+  public void hint() {
+    if (mViewMode == MODE_TEXT) {
+      changeViewMode(MODE_NORMAL);
+    } else if (mViewMode == MODE_NORMAL) {
+      mHintWorker.request(mRules.GetSnapshot());
+    }
+  }
+
+  /**
+   * Show a hint found for the current position, called on the UI thread
+   * @param move the packed move, see Solver, or Hint.NONE
+   */
+  public void showHint(final int move) {
+    mHintMove = move;
+    refresh();
+  }
+
+  /**
+   * Hide the hint shown and drop any being searched for, as the
+   * position is changing
+   */
+  private void clearHint() {
+    mHintWorker.cancel();
+    if (mHintMove != Hint.NONE) {
+      mHintMove = Hint.NONE;
+      refresh();
+    }
+  }
+
+  /**
+   * Outline the cards of the hint and where they go
+   * @param canvas canvas to draw on
+   */
+  private void drawHint(final Canvas canvas) {
+    int from = Solver.getFrom(mHintMove);
+    if (from == Solver.STOCK) {
+      for (CardAnchor ca : mCardAnchor) {
+        if (ca.getPile().getKind() == Pile.DEAL_FROM) {
+          drawHintAnchor(canvas, ca);
+        }
+      }
+      return;
+    }
+    CardAnchor anchor = mCardAnchor[from];
+    int count = Solver.getCount(mHintMove);
+    if (anchor.getCount() < count) {
+      return;
+    }
+    Card[] cards = anchor.getCards();
+    Card first = cards[anchor.getCount() - count];
+    Card last = cards[anchor.getCount() - 1];
+    mDrawMaster.drawHighlight(canvas, first.getX(), first.getY(),
+                              last.getX() + Card.WIDTH, last.getY() + Card.HEIGHT);
+    drawHintAnchor(canvas, mCardAnchor[Solver.getTo(mHintMove)]);
+  }
+
+  /**
+   * Outline the top card of an anchor, or where it would be if empty
+   */
+  private void drawHintAnchor(final Canvas canvas, final CardAnchor anchor) {
+    float x = anchor.getX();
+    float y = anchor.getNewY();
+    if (anchor.getCount() > 0) {
+      Card top = anchor.getCards()[anchor.getCount() - 1];
+      x = top.getX();
+      y = top.getY();
+    }
+    mDrawMaster.drawHighlight(canvas, x, y, x + Card.WIDTH, y + Card.HEIGHT);
+  }
+
   /**
    * Mark an attempt, record a game play attempt
    */
@@ -1089,55 +1247,204 @@ public class SolitaireView extends View {
   }
 }
 
-class RefreshHandler implements Runnable {
+/**
+ * Schedules redraws of the view on display frames. Frames are only
+ * requested while something is pending: a single redraw, a locked
+ * refresh while animating or dragging, or the next tick of the shown
+ * time. Otherwise nothing runs until refresh is asked for again.
+ *
+ * Frames come from a FrameSource, so the scheduling can be driven by
+ * hand without a display.
+ */
+class RefreshHandler {
   public static final int NO_REFRESH = 1;
   public static final int SINGLE_REFRESH = 2;
   public static final int LOCK_REFRESH = 3;
 
-  private static final int FPS = 30;
+  /**
+   * What the handler redraws
+   */
+  public interface Client {
+    void updateTime();
+    long getTimeToTick();
+    void invalidate();
+  }
+
+  /**
+   * Where frames come from
+   */
+  public interface FrameSource {
+    /**
+     * Call doFrame() of the handler on a later frame
+     * @param handler the handler to call
+     * @param delay milliseconds to wait at least, 0 for the next frame
+     */
+    void postFrame(RefreshHandler handler, long delay);
+    void removeFrame(RefreshHandler handler);
+  }
 
+  private final Client mClient;
+  private final FrameSource mSource;
   private boolean mRun;
   private int mRefresh;
-  private SolitaireView mView;
-
-  public RefreshHandler(final SolitaireView solitaireView) {
-    mView = solitaireView;
-    mRun = true;
+  // Delay of the posted frame, -1 for none
+  private long mPosted;
+  private int mFrameCount;
+
+  public RefreshHandler(final Client client, final FrameSource source) {
+    mClient = client;
+    mSource = source;
+    mRun = false;
     mRefresh = NO_REFRESH;
+    mPosted = -1;
   }
 
-  public void setRefresh(final int refresh) {
-    synchronized (this) {
-      mRefresh = refresh;
-    }
+  // ==========================================================================
+  // Getters and Setters
+  // -------------------
+  public synchronized boolean isRunning() { return mRun; }
+  public synchronized int getRefresh() { return mRefresh; }
+  public synchronized boolean isFramePosted() { return mPosted != -1; }
+  public synchronized int getFrameCount() { return mFrameCount; }
+
+  public synchronized void setRefresh(final int refresh) {
+    mRefresh = refresh;
+    schedule();
   }
 
-  public void singleRefresh() {
-    synchronized (this) {
-      if (mRefresh == NO_REFRESH) {
-        mRefresh = SINGLE_REFRESH;
-      }
+  public synchronized void singleRefresh() {
+    if (mRefresh == NO_REFRESH) {
+      mRefresh = SINGLE_REFRESH;
     }
+    schedule();
   }
 
-  public void setRunning(final boolean run) {
+  /**
+   * Start or stop requesting frames, with the activity resumed or paused
+   * @param run true to request frames
+   */
+  public synchronized void setRunning(final boolean run) {
     mRun = run;
+    if (run) {
+      schedule();
+    } else if (mPosted != -1) {
+      mSource.removeFrame(this);
+      mPosted = -1;
+    }
   }
 
-  public void run() {
-    while (mRun) {
-      try {
-        Thread.sleep(1000 / FPS);
-      } catch (InterruptedException ignored) {
+  /**
+   * Called by the frame source on a frame
+   */
+  public void doFrame() {
+    synchronized (this) {
+      mPosted = -1;
+      if (!mRun) {
+        return;
       }
-      mView.updateTime();
-      if (mRefresh != NO_REFRESH) {
-        mView.postInvalidate();
-        if (mRefresh == SINGLE_REFRESH) {
-          setRefresh(NO_REFRESH);
-        }
+      mFrameCount++;
+    }
+    mClient.updateTime();
+    boolean redraw;
+    synchronized (this) {
+      redraw = mRefresh != NO_REFRESH;
+      if (mRefresh == SINGLE_REFRESH) {
+        mRefresh = NO_REFRESH;
+      }
+      schedule();
+    }
+    if (redraw) {
+      mClient.invalidate();
+    }
+  }
+
+  /**
+   * Post the next frame needed, if any, must hold the lock
+   */
+  private void schedule() {
+    if (!mRun) {
+      return;
+    }
+    long delay = mRefresh != NO_REFRESH ? 0 : mClient.getTimeToTick();
+    if (delay == -1 || delay == mPosted) {
+      return;
+    }
+    if (mPosted != -1) {
+      if (mPosted < delay) {
+        return;
       }
+      mSource.removeFrame(this);
     }
+    mPosted = delay;
+    mSource.postFrame(this, delay);
+  }
+}
+
+/**
+ * Frame source of the display, frames are on vsync. Needs API 16.
+ */
+class ChoreographerFrameSource implements RefreshHandler.FrameSource {
+  private final Choreographer mChoreographer;
+  private RefreshHandler mHandler;
+  private final Choreographer.FrameCallback mCallback = new Choreographer.FrameCallback() {
+    @Override
+    public void doFrame(long frameTimeNanos) {
+      mHandler.doFrame();
+    }
+  };
+
+  /**
+   * Create a frame source, must be called on the UI thread
+   */
+  public ChoreographerFrameSource() {
+    mChoreographer = Choreographer.getInstance();
+  }
+
+  @Override
+  public void postFrame(final RefreshHandler handler, final long delay) {
+    mHandler = handler;
+    mChoreographer.postFrameCallbackDelayed(mCallback, delay);
+  }
+
+  @Override
+  public void removeFrame(final RefreshHandler handler) {
+    mChoreographer.removeFrameCallback(mCallback);
+  }
+}
+
+/**
+ * Frame source before API 16, frames are posted to the UI thread a frame
+ * time apart
+ */
+class HandlerFrameSource implements RefreshHandler.FrameSource {
+  // Milliseconds of a frame at 60 frames per second
+  private static final long FRAME_TIME = 16;
+
+  private final Handler mUiHandler;
+  private RefreshHandler mHandler;
+  private final Runnable mCallback = new Runnable() {
+    @Override
+    public void run() {
+      mHandler.doFrame();
+    }
+  };
+
+  /**
+   * Create a frame source, must be called on the UI thread
+   */
+  public HandlerFrameSource() {
+    mUiHandler = new Handler();
+  }
+
+  @Override
+  public void postFrame(final RefreshHandler handler, final long delay) {
+    mHandler = handler;
+    mUiHandler.postDelayed(mCallback, Math.max(delay, FRAME_TIME));
+  }
+
+  @Override
+  public void removeFrame(final RefreshHandler handler) {
+    mUiHandler.removeCallbacks(mCallback);
   }
 }
 
@@ -0,0 +1,107 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire;
+
+import com.kmagic.solitaire.engine.MoveHistory;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that journal records play back, up to the first bad one
+ */
+public class MoveJournalTest {
+
+  private static final int CHECKSUM = 0x1234ABCD;
+  private static final long MOVE_1 = MoveHistory.pack(3, 5, 5, 1, 0);
+  private static final long MOVE_2 = MoveHistory.pack(12, 2, 11, 1, MoveHistory.FLAG_UNHIDE);
+
+  private SaveWriter mJournal;
+  private CRC32 mCrc;
+  private Recorder mPlayer;
+  // Where the second record, a pop, starts
+  private int mPopStart;
+
+  @Before
+  public void setUp() {
+    mJournal = new SaveWriter(64);
+    mCrc = new CRC32();
+    mPlayer = new Recorder();
+    MoveJournal.writeHeader(mJournal, CHECKSUM);
+    MoveJournal.writeRecord(mJournal, MoveJournal.RECORD_PUSH, MOVE_1, 1000, mCrc);
+    mPopStart = mJournal.getLength();
+    MoveJournal.writeRecord(mJournal, MoveJournal.RECORD_POP, 0, 2000, mCrc);
+    MoveJournal.writeRecord(mJournal, MoveJournal.RECORD_PUSH, MOVE_2, 300000, mCrc);
+  }
+
+  @Test
+  public void recordsPlayBack() {
+    assertEquals(3, play(mJournal.getLength(), CHECKSUM));
+    assertEquals("push " + MOVE_1 + ", elapsed 1000, pop, elapsed 2000, push " + MOVE_2 +
+                 ", elapsed 300000", mPlayer.toString());
+  }
+
+  @Test
+  public void journalOfAnotherSnapshotIsIgnored() {
+    assertEquals(0, play(mJournal.getLength(), CHECKSUM + 1));
+    assertEquals("", mPlayer.toString());
+  }
+
+  @Test
+  public void tornRecordEndsPlayback() {
+    assertEquals(2, play(mJournal.getLength() - 1, CHECKSUM));
+    assertEquals("push " + MOVE_1 + ", elapsed 1000, pop, elapsed 2000", mPlayer.toString());
+  }
+
+  @Test
+  public void corruptRecordEndsPlayback() {
+    // The elapsed time of the pop
+    mJournal.getBuffer()[mPopStart + 1] ^= 0x01;
+    assertEquals(1, play(mJournal.getLength(), CHECKSUM));
+  }
+
+  private int play(final int length, final int checksum) {
+    return MoveJournal.play(new SaveReader(mJournal.getBuffer(), length), checksum, mPlayer);
+  }
+
+  private static class Recorder implements MoveJournal.Player {
+    private final List<String> mCalls = new ArrayList<>();
+
+    @Override
+    public void push(final long move) { mCalls.add("push " + move); }
+
+    @Override
+    public void pop() { mCalls.add("pop"); }
+
+    @Override
+    public void setElapsed(final int elapsed) { mCalls.add("elapsed " + elapsed); }
+
+    @Override
+    public String toString() {
+      StringBuilder ret = new StringBuilder();
+      for (String call : mCalls) {
+        ret.append(ret.length() > 0 ? ", " : "").append(call);
+      }
+      return ret.toString();
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives RefreshHandler by hand through a fake frame source and client
+ */
+public class RefreshHandlerTest {
+
+  private FakeClient mClient;
+  private FakeSource mSource;
+  private RefreshHandler mHandler;
+
+  @Before
+  public void setUp() {
+    mClient = new FakeClient();
+    mSource = new FakeSource();
+    mHandler = new RefreshHandler(mClient, mSource);
+  }
+
+  @Test
+  public void noFramesUntilRunning() {
+    mHandler.singleRefresh();
+    assertFalse(mHandler.isFramePosted());
+    assertEquals(0, mSource.mPosts);
+
+    mHandler.setRunning(true);
+    assertTrue(mHandler.isFramePosted());
+    assertEquals(0, mSource.mDelay);
+  }
+
+  @Test
+  public void singleRefreshDrawsOnce() {
+    mHandler.setRunning(true);
+    mHandler.singleRefresh();
+    assertEquals(1, mSource.mPosts);
+
+    mSource.frame();
+    assertEquals(1, mClient.mInvalidates);
+    assertEquals(RefreshHandler.NO_REFRESH, mHandler.getRefresh());
+    assertFalse(mHandler.isFramePosted());
+  }
+
+  @Test
+  public void repeatedRefreshesShareAFrame() {
+    mHandler.setRunning(true);
+    mHandler.singleRefresh();
+    mHandler.singleRefresh();
+    mHandler.singleRefresh();
+    assertEquals(1, mSource.mPosts);
+  }
+
+  @Test
+  public void lockRefreshDrawsEveryFrame() {
+    mHandler.setRunning(true);
+    mHandler.setRefresh(RefreshHandler.LOCK_REFRESH);
+    for (int i = 0; i < 5; i++) {
+      assertTrue(mHandler.isFramePosted());
+      assertEquals(0, mSource.mDelay);
+      mSource.frame();
+    }
+    assertEquals(5, mClient.mInvalidates);
+    assertEquals(5, mHandler.getFrameCount());
+
+    mHandler.setRefresh(RefreshHandler.NO_REFRESH);
+    mSource.frame();
+    assertFalse(mHandler.isFramePosted());
+  }
+
+  @Test
+  public void timeTicksWithoutRedraws() {
+    mClient.mTimeToTick = 400;
+    mHandler.setRunning(true);
+    assertEquals(400, mSource.mDelay);
+
+    mSource.frame();
+    assertEquals(1, mClient.mUpdates);
+    assertEquals(0, mClient.mInvalidates);
+    assertEquals(400, mSource.mDelay);
+  }
+
+  @Test
+  public void refreshReplacesLaterTick() {
+    mClient.mTimeToTick = 400;
+    mHandler.setRunning(true);
+    mHandler.singleRefresh();
+    assertEquals(1, mSource.mRemoves);
+    assertEquals(0, mSource.mDelay);
+  }
+
+  @Test
+  public void stoppingRemovesTheFrame() {
+    mHandler.setRunning(true);
+    mHandler.setRefresh(RefreshHandler.LOCK_REFRESH);
+    mHandler.setRunning(false);
+    assertFalse(mHandler.isFramePosted());
+    assertEquals(1, mSource.mRemoves);
+
+    // A frame already on its way does nothing
+    mHandler.doFrame();
+    assertEquals(0, mClient.mInvalidates);
+    assertEquals(0, mClient.mUpdates);
+  }
+
+  private static class FakeClient implements RefreshHandler.Client {
+    long mTimeToTick = -1;
+    int mUpdates;
+    int mInvalidates;
+
+    @Override
+    public void updateTime() { mUpdates++; }
+
+    @Override
+    public long getTimeToTick() { return mTimeToTick; }
+
+    @Override
+    public void invalidate() { mInvalidates++; }
+  }
+
+  private static class FakeSource implements RefreshHandler.FrameSource {
+    RefreshHandler mHandler;
+    long mDelay = -1;
+    int mPosts;
+    int mRemoves;
+
+    @Override
+    public void postFrame(final RefreshHandler handler, final long delay) {
+      mHandler = handler;
+      mDelay = delay;
+      mPosts++;
+    }
+
+    @Override
+    public void removeFrame(final RefreshHandler handler) {
+      mDelay = -1;
+      mRemoves++;
+    }
+
+    /**
+     * Run the posted frame
+     */
+    void frame() {
+      assertTrue(mDelay != -1);
+      mDelay = -1;
+      mHandler.doFrame();
+    }
+  }
+}
@@ -0,0 +1,199 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire;
+
+import com.kmagic.solitaire.engine.Cards;
+import com.kmagic.solitaire.engine.MoveHistory;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the save format, read and written without a game in play
+ */
+public class SaveDataTest {
+
+  private static final int MAGIC = 0x534F4C53;
+  private static final long[] HISTORY = {
+    MoveHistory.pack(3, 5, 5, 1, 0),
+    MoveHistory.pack(0, 1, 1, 3, MoveHistory.FLAG_INVERT | MoveHistory.FLAG_ADD_DEAL_COUNT),
+    MoveHistory.pack(12, 2, 11, 1, MoveHistory.FLAG_UNHIDE),
+  };
+
+  @Test
+  public void varintsRoundTrip() throws IOException {
+    int[] values = { 0, 1, 127, 128, 300, 16383, 16384, Integer.MAX_VALUE, -1, Integer.MIN_VALUE };
+    SaveWriter out = new SaveWriter(1);
+    for (int value : values) {
+      out.writeVarint(value);
+      out.writeSigned(value);
+      out.writeInt(value);
+    }
+    SaveReader in = new SaveReader(out.getBuffer(), out.getLength());
+    for (int value : values) {
+      assertEquals(value, in.readVarint());
+      assertEquals(value, in.readSigned());
+      assertEquals(value, in.readInt());
+    }
+    assertEquals(0, in.getRemaining());
+  }
+
+  @Test
+  public void smallValuesTakeOneByte() {
+    SaveWriter out = new SaveWriter(8);
+    out.writeVarint(127);
+    out.writeSigned(-52);
+    assertEquals(2, out.getLength());
+  }
+
+  @Test(expected = StreamCorruptedException.class)
+  public void readingPastTheEndThrows() throws IOException {
+    SaveWriter out = new SaveWriter(8);
+    out.writeByte(0x80);
+    new SaveReader(out.getBuffer(), out.getLength()).readVarint();
+  }
+
+  @Test
+  public void saveRoundTrips() throws IOException {
+    byte[] data = encode(3, payload());
+    SaveData save = SaveData.read(data, data.length);
+    assertEquals(1, save.getType());
+    assertEquals(123456, save.getElapsed());
+    assertArrayEquals(HISTORY, restoreHistory(save));
+    assertArrayEquals(data, save.write());
+    assertEquals(save.getChecksum(), SaveData.read(data, data.length).getChecksum());
+  }
+
+  @Test
+  public void corruptSavesAreRejected() throws IOException {
+    byte[] data = encode(3, payload());
+    for (int i = 0; i < data.length; i++) {
+      byte[] corrupt = data.clone();
+      corrupt[i] ^= 0x10;
+      assertRejected(corrupt, corrupt.length);
+    }
+    for (int length = 0; length < data.length; length++) {
+      assertRejected(data, length);
+    }
+    byte[] future = encode(4, payload());
+    assertRejected(future, future.length);
+  }
+
+  @Test
+  public void legacySavesMigrate() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject("solitaire_save_2");
+    out.writeInt(2);
+    out.writeInt(3);
+    out.writeInt(1);
+    out.writeObject(new int[] { 2, 1 });
+    out.writeObject(new int[] { 1, 0 });
+    out.writeObject(new int[] { 13, 1, 12 });
+    out.writeObject(new int[] { Cards.SPADES, Cards.HEARTS, Cards.CLUBS });
+    out.writeInt(-1);
+    out.writeInt(-52);
+    out.writeInt(123456);
+    // Newest move first
+    int size = HISTORY.length;
+    int[][] fields = new int[5][size];
+    for (int i = 0; i < size; i++) {
+      long move = HISTORY[size - 1 - i];
+      fields[0][i] = MoveHistory.getFrom(move);
+      fields[1][i] = MoveHistory.getToBegin(move);
+      fields[2][i] = MoveHistory.getToEnd(move);
+      fields[3][i] = MoveHistory.getCount(move);
+      fields[4][i] = MoveHistory.getFlags(move);
+    }
+    for (int[] field : fields) {
+      out.writeObject(field);
+    }
+    out.close();
+
+    byte[] legacy = bytes.toByteArray();
+    SaveData save = SaveData.read(legacy, legacy.length);
+    assertArrayEquals(HISTORY, restoreHistory(save));
+    // Written again in the current version, as the same game
+    assertArrayEquals(encode(3, payload()), save.write());
+  }
+
+  /**
+   * The payload of a Klondike-like save with two anchors
+   */
+  private static SaveWriter payload() {
+    SaveWriter out = new SaveWriter(64);
+    out.writeVarint(1);
+    out.writeVarint(2);
+    out.writeVarint(3);
+    out.writeVarint(2);
+    out.writeVarint(1);
+    out.writeVarint(1);
+    out.writeVarint(0);
+    out.writeByte(Cards.make(13, Cards.SPADES));
+    out.writeByte(Cards.make(1, Cards.HEARTS));
+    out.writeByte(Cards.make(12, Cards.CLUBS));
+    out.writeSigned(-1);
+    out.writeSigned(-52);
+    out.writeVarint(123456);
+    out.writeVarint(HISTORY.length);
+    for (long move : HISTORY) {
+      out.writeVarint(MoveHistory.getFrom(move));
+      out.writeVarint(MoveHistory.getToBegin(move));
+      out.writeVarint(MoveHistory.getToEnd(move));
+      out.writeVarint(MoveHistory.getCount(move));
+      out.writeVarint(MoveHistory.getFlags(move));
+    }
+    return out;
+  }
+
+  /**
+   * Put a header in front of a payload
+   */
+  private static byte[] encode(final int version, final SaveWriter payload) {
+    CRC32 crc = new CRC32();
+    crc.update(payload.getBuffer(), 0, payload.getLength());
+    SaveWriter out = new SaveWriter(64);
+    out.writeInt(MAGIC);
+    out.writeByte(version);
+    out.writeInt(payload.getLength());
+    out.writeInt((int)crc.getValue());
+    out.writeBytes(payload.getBuffer(), 0, payload.getLength());
+    return out.toByteArray();
+  }
+
+  private static long[] restoreHistory(final SaveData save) {
+    MoveHistory history = new MoveHistory();
+    save.restoreHistory(history);
+    return history.toArray();
+  }
+
+  private static void assertRejected(final byte[] data, final int length) {
+    try {
+      SaveData.read(data, length);
+      fail("read " + length + " bytes of a corrupt save");
+    } catch (IOException expected) {
+    }
+  }
+}
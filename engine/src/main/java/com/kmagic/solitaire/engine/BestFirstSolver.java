@@ -0,0 +1,151 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+/**
+ * Best-first search. Positions are kept in a preallocated arena of
+ * state bytes with their parent, move and depth, and the open positions
+ * in a NodeQueue ordered by evaluate(). Running out of arena ends the
+ * search with UNKNOWN, emptying the queue proves the game unsolvable.
+ */
+public abstract class BestFirstSolver extends Solver {
+
+  private final int mStride;
+  private final int mCapacity;
+  private final byte[] mArena;
+  private final int[] mParent;
+  private final int[] mMove;
+  private final int[] mDepth;
+  private final NodeQueue mOpen;
+  private final State mParentState;
+  private final int[] mMoves;
+
+  private int mNodeCount;
+  private int mGoal;
+  private int[] mPath;
+  private int mPathLength;
+
+  /**
+   * Create a new solver
+   * @param game the game at the position to solve
+   * @param capacity the most positions kept in the arena
+   * @param tableSize the number of positions the transposition table holds
+   */
+  protected BestFirstSolver(final Game game, final int capacity, final int tableSize) {
+    super(game, tableSize);
+    mStride = mState.getSize();
+    mCapacity = capacity;
+    mArena = new byte[capacity * mStride];
+    mParent = new int[capacity];
+    mMove = new int[capacity];
+    mDepth = new int[capacity];
+    mOpen = new NodeQueue(capacity);
+    mParentState = new State(mState);
+    mMoves = new int[MAX_MOVES];
+    mPath = new int[64];
+  }
+
+  public int getCapacity() { return mCapacity; }
+
+  /**
+   * Rate the current position, lower is searched first
+   * @param depth moves played from the root
+   * @return the priority
+   */
+  abstract protected int evaluate(int depth);
+
+  @Override
+  protected int search() {
+    mOpen.clear();
+    mNodeCount = 0;
+    mGoal = -1;
+
+    autoPlay(mGame);
+    addNode(-1, 0, 0);
+    if (mGame.isWon()) {
+      mGoal = 0;
+      return Solution.SOLVED;
+    }
+    mTable.put(getKey(), mRootDepth, mRootDepth);
+
+    while (!mOpen.isEmpty()) {
+      if (isOutOfBudget()) {
+        return getBudgetStatus();
+      }
+      int node = mOpen.pop();
+      mParentState.readFrom(mArena, node * mStride);
+      mState.copyFrom(mParentState);
+      int depth = mDepth[node] + 1;
+      int count = generateMoves(mMoves, 0);
+      for (int i = 0; i < count; i++) {
+        if (i > 0) {
+          mState.copyFrom(mParentState);
+        }
+        if (!play(mGame, mMoves[i])) {
+          continue;
+        }
+        autoPlay(mGame);
+        mNodes++;
+
+        long key = getKey();
+        int seen = mTable.probe(key);
+        if (seen != TranspositionTable.NOT_FOUND && seen <= mRootDepth + depth) {
+          continue;
+        }
+        mTable.put(key, mRootDepth + depth, mRootDepth + depth);
+        if (mNodeCount == mCapacity) {
+          return Solution.UNKNOWN;
+        }
+        int child = addNode(node, mMoves[i], depth);
+        if (mGame.isWon()) {
+          mGoal = child;
+          return Solution.SOLVED;
+        }
+      }
+    }
+    return Solution.UNSOLVABLE;
+  }
+
+  /**
+   * Store the current position in the arena and queue it
+   */
+  private int addNode(final int parent, final int move, final int depth) {
+    int node = mNodeCount++;
+    mState.writeTo(mArena, node * mStride);
+    mParent[node] = parent;
+    mMove[node] = move;
+    mDepth[node] = depth;
+    mOpen.push(evaluate(depth), node);
+    return node;
+  }
+
+  @Override
+  protected int[] getPath() {
+    mPathLength = mDepth[mGoal];
+    if (mPath.length < mPathLength) {
+      mPath = new int[mPathLength];
+    }
+    for (int node = mGoal, i = mPathLength - 1; i >= 0; node = mParent[node], i--) {
+      mPath[i] = mMove[node];
+    }
+    return mPath;
+  }
+
+  @Override
+  protected int getPathLength() {
+    return mPathLength;
+  }
+}
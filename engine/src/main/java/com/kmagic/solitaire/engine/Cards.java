@@ -0,0 +1,73 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+/**
+ * Playing card codes used by the engine. A card is a plain int of
+ * suit * 13 + value - 1, so a single deck maps onto 0-51 and card
+ * codes can be used directly as table indexes.
+ */
+public final class Cards {
+
+  public static final int CLUBS = 0;
+  public static final int DIAMONDS = 1;
+  public static final int SPADES = 2;
+  public static final int HEARTS = 3;
+
+  public static final int ACE = 1;
+  public static final int JACK = 11;
+  public static final int QUEEN = 12;
+  public static final int KING = 13;
+
+  // Card count of a single deck, also the number of distinct codes
+  public static final int DECK_SIZE = 52;
+
+  // No card, returned for the top of an empty pile
+  public static final int NONE = -1;
+
+  private Cards() {}
+
+  /**
+   * Create a card code
+   * @param value the card value, ACE to KING
+   * @param suit the card suit
+   * @return the card code
+   */
+  public static int make(final int value, final int suit) {
+    return suit * 13 + value - 1;
+  }
+
+  /**
+   * Get card value
+   * @param card the card code
+   * @return the card value, ACE to KING
+   */
+  public static int value(final int card) { return card % 13 + 1; }
+
+  /**
+   * Get card suit
+   * @param card the card code
+   * @return the card suit
+   */
+  public static int suit(final int card) { return card / 13; }
+
+  /**
+   * Get card color, diamonds and hearts are odd suits
+   * @param card the card code
+   * @return 1 for red cards, 0 for black
+   */
+  public static int color(final int card) { return suit(card) & 1; }
+}
@@ -0,0 +1,90 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transposition table shared by solvers searching on several threads.
+ * Buckets are guarded by a fixed set of locks, each covering every
+ * STRIPES-th bucket, so threads only wait on each other when they hit
+ * buckets under the same lock.
+ */
+public class ConcurrentTranspositionTable extends TranspositionTable {
+
+  // Count of locks, a power of two
+  private static final int STRIPES = 1024;
+
+  private final Object[] mLocks;
+  private final AtomicInteger mCount;
+  private final AtomicLong mReplaced;
+
+  /**
+   * Create a new table
+   * @param capacity the minimum number of entries, rounded up to a power of two
+   */
+  public ConcurrentTranspositionTable(final int capacity) {
+    super(capacity);
+    mLocks = new Object[STRIPES];
+    for (int i = 0; i < STRIPES; i++) {
+      mLocks[i] = new Object();
+    }
+    mCount = new AtomicInteger();
+    mReplaced = new AtomicLong();
+  }
+
+  @Override
+  public int getCount() { return mCount.get(); }
+
+  @Override
+  public long getReplaced() { return mReplaced.get(); }
+
+  /**
+   * Remove all entries, no search may be using the table
+   */
+  @Override
+  public void clear() {
+    super.clear();
+    mCount.set(0);
+    mReplaced.set(0);
+  }
+
+  @Override
+  public int probe(final long hash) {
+    synchronized (getLock(hash)) {
+      return super.probe(hash);
+    }
+  }
+
+  @Override
+  public boolean put(final long hash, final int value, final int depth) {
+    int result;
+    synchronized (getLock(hash)) {
+      result = store(hash, value, depth);
+    }
+    if (result == ADDED) {
+      mCount.incrementAndGet();
+    } else if (result == REPLACED) {
+      mReplaced.incrementAndGet();
+    }
+    return result != UPDATED;
+  }
+
+  private Object getLock(final long hash) {
+    return mLocks[(getBucket(hash) / PROBES) & (STRIPES - 1)];
+  }
+}
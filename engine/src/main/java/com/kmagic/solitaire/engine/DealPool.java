@@ -0,0 +1,241 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Numbers of deals a solver has proven winnable, for one game type and
+ * set of options. A new game pops a number, so dealing never waits on a
+ * solver, and a background worker calls topUp() to solve more. Safe to
+ * use from the UI and worker threads at once, topUp() from one thread
+ * at a time.
+ *
+ * Each pool keeps one solver, and each deal tried gets TIME_LIMIT to be
+ * solved. A pool that fails MAX_FAILURES deals in a row stalls, as its
+ * deals take too long to prove, and is best left alone.
+ */
+public class DealPool {
+
+  // Milliseconds spent trying to solve a deal
+  public static final long TIME_LIMIT = 1000;
+  // Failed deals in a row that stall a pool
+  public static final int MAX_FAILURES = 10;
+
+  private static final int FILE_VERSION = 1;
+  // Positions the solver holds, enough for TIME_LIMIT
+  private static final int SOLVER_SIZE = 1 << 18;
+
+  private final String mKey;
+  private final long[] mDeals;
+  private int mCount;
+  private boolean mDirty;
+  private int mFailures;
+  private volatile Solver mSolver;
+  private volatile boolean mSearching;
+  private volatile boolean mCancelled;
+
+  /**
+   * Create an empty pool
+   * @param key name of the game type and options, see Game.getGameTypeString()
+   * @param capacity most deals held
+   */
+  public DealPool(final String key, final int capacity) {
+    mKey = key;
+    mDeals = new long[capacity];
+  }
+
+  // ==========================================================================
+  // Getters and Setters
+  // -------------------
+  public String getKey() { return mKey; }
+  public int getCapacity() { return mDeals.length; }
+  public synchronized int size() { return mCount; }
+  public synchronized boolean isFull() { return mCount == mDeals.length; }
+  public synchronized int getFailures() { return mFailures; }
+  public synchronized boolean isStalled() { return mFailures >= MAX_FAILURES; }
+
+  /**
+   * Check if the pool changed since it was last read or written
+   * @return true if it has to be written
+   */
+  public synchronized boolean isDirty() { return mDirty; }
+
+  /**
+   * Check if deals of a game can be proven winnable. The Spider solver
+   * proves few two suit and almost no four suit deals in TIME_LIMIT, so
+   * only one suit Spider has a pool.
+   * @param game the game
+   * @return true if there is a solver for the game type
+   */
+  public static boolean isSupported(final Game game) {
+    switch (game.getType()) {
+      case Game.SOLITAIRE:
+      case Game.FREECELL:
+        return true;
+      case Game.SPIDER:
+        return ((Spider)game).getSuits() == 1;
+    }
+    return false;
+  }
+
+  /**
+   * Deal a game from the pool
+   * @param game the game to deal
+   * @return true if dealt, false if the pool is empty
+   */
+  public boolean take(final Game game) {
+    long deal;
+    synchronized (this) {
+      if (mCount == 0) {
+        return false;
+      }
+      deal = mDeals[--mCount];
+      mDirty = true;
+    }
+    game.deal(deal);
+    return true;
+  }
+
+  /**
+   * Add a deal proven winnable
+   * @param deal the deal number
+   * @return true if added, false if the pool is full
+   */
+  public synchronized boolean add(final long deal) {
+    if (mCount == mDeals.length) {
+      return false;
+    }
+    mDeals[mCount++] = deal;
+    mDirty = true;
+    return true;
+  }
+
+  /**
+   * Solve one random deal and add it if it can be won. Runs for up to
+   * TIME_LIMIT.
+   * @param game scratch game of the pool's type and options, it is dealt
+   * @return true if a deal was added
+   */
+  public boolean topUp(final Game game) {
+    if (isFull() || !isSupported(game)) {
+      return false;
+    }
+    game.deal();
+    Solver solver = mSolver;
+    if (solver == null) {
+      solver = createSolver(game);
+      mSolver = solver;
+    }
+    solver.setPosition(game);
+    solver.setTimeLimit(TIME_LIMIT);
+    // A cancel() from here on is seen either below or by the solver
+    solver.clearCancel();
+    mSearching = true;
+    Solution solution = mCancelled ? null : solver.solveUnlessCancelled();
+    mSearching = false;
+    if (solution == null || solution.getStatus() == Solution.CANCELLED) {
+      return false;
+    }
+    synchronized (this) {
+      mFailures = solution.isSolved() ? 0 : mFailures + 1;
+    }
+    return solution.isSolved() && add(game.getDealNumber());
+  }
+
+  /**
+   * Stop a running topUp(), it returns false, as does every later one
+   * until clearCancel()
+   */
+  public void cancel() {
+    mCancelled = true;
+    if (mSearching) {
+      mSolver.cancel();
+    }
+  }
+
+  /**
+   * Let topUp() run again after cancel(), called by the thread that
+   * calls topUp() where cancel() cannot be called at the same time
+   */
+  public void clearCancel() { mCancelled = false; }
+
+  /**
+   * Create the solver deals are proven with, sized for TIME_LIMIT
+   * @param game a game of the pool's rules
+   * @return the solver
+   */
+  private static Solver createSolver(final Game game) {
+    switch (game.getType()) {
+      case Game.SOLITAIRE:
+        return new KlondikeSolver(game, KlondikeSolver.THOUGHTFUL, SOLVER_SIZE);
+      case Game.SPIDER:
+        return new SpiderSolver(game, 256, 1000, SOLVER_SIZE);
+      default:
+        return new FreecellSolver(game, SOLVER_SIZE / 2, SOLVER_SIZE);
+    }
+  }
+
+  /**
+   * Write the deals
+   * @param out the stream to write to, it is left open
+   * @throws IOException if writing fails
+   */
+  public void writeTo(final OutputStream out) throws IOException {
+    long[] deals;
+    synchronized (this) {
+      deals = new long[mCount];
+      System.arraycopy(mDeals, 0, deals, 0, mCount);
+      mDirty = false;
+    }
+    DataOutputStream data = new DataOutputStream(out);
+    data.writeInt(FILE_VERSION);
+    data.writeInt(deals.length);
+    for (long deal : deals) {
+      data.writeLong(deal);
+    }
+    data.flush();
+  }
+
+  /**
+   * Replace the deals with ones written by writeTo()
+   * @param in the stream to read from, it is left open
+   * @throws IOException if reading fails or the data is not a pool
+   */
+  public void readFrom(final InputStream in) throws IOException {
+    DataInputStream data = new DataInputStream(in);
+    if (data.readInt() != FILE_VERSION) {
+      throw new IOException("Unknown deal pool version");
+    }
+    int count = data.readInt();
+    if (count < 0) {
+      throw new IOException("Invalid deal count");
+    }
+    long[] deals = new long[Math.min(count, mDeals.length)];
+    for (int i = 0; i < deals.length; i++) {
+      deals[i] = data.readLong();
+    }
+    synchronized (this) {
+      System.arraycopy(deals, 0, mDeals, 0, deals.length);
+      mCount = deals.length;
+      mDirty = false;
+    }
+  }
+}
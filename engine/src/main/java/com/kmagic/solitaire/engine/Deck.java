@@ -14,19 +14,28 @@
   See the License for the specific language governing permissions and
   limitations under the License.
 */ 
-package com.kmagic.solitaire;
-
-import java.util.Random;
+package com.kmagic.solitaire.engine;
 
 /**
- * Deck of Playing Cards
+ * Deck of Playing Cards, built in order and shuffled by a seeded
+ * generator so a deal can be made again from its number
  */
 public class Deck {
 
-  private Card[] mCard;
+  private int[] mCard;
   private int mCardCount;
   private int mTotalCards;
 
+  /**
+   * Create a deck holding cards in a given order
+   * @param cards the card codes, the last one is popped first
+   */
+  public Deck(final int[] cards) {
+    mCard = cards.clone();
+    mCardCount = cards.length;
+    mTotalCards = mCardCount;
+  }
+
   /**
    * Create a new deck of 4 suit cards
    * @param decks the amount of decks
@@ -58,29 +67,25 @@ public class Deck {
   private void init(int decks, int suits) {
     mCardCount = decks * 13 * suits;
     mTotalCards = mCardCount;
-    mCard = new Card[mCardCount];
+    mCard = new int[mCardCount];
     for (int deck = 0; deck < decks; deck++) {
-      for (int suit = Card.CLUBS; suit < suits; suit++) {
+      for (int suit = Cards.CLUBS; suit < suits; suit++) {
         for (int value = 0; value < 13; value++) {
-          mCard[deck*suits*13 + suit*Card.KING + value] = new Card(value+1, suit);
+          mCard[deck*suits*13 + suit*Cards.KING + value] = Cards.make(value+1, suit);
         }
       }
     }
-
-    shuffle();
-    shuffle();
-    shuffle();
   }
 
   /**
    * Get last card from the deck
-   * @return the last card
+   * @return the last card code, Cards.NONE when empty
    */
-  public Card popCard() {
+  public int popCard() {
     if (mCardCount > 0) {
       return mCard[--mCardCount];
     }
-    return null;
+    return Cards.NONE;
   }
 
   /**
@@ -92,20 +97,15 @@ public class Deck {
   }
 
   /**
-   * Shuffle cards in deck
+   * Shuffle the cards left in the deck, every order equally likely
+   * @param random the generator, the same seed gives the same order
    */
-  public void shuffle() {
-    int lastIdx = mCardCount - 1;
-    int swapIdx;
-    Card swapCard;
-    Random rand = new Random();
-
-    while (lastIdx > 1) {
-      swapIdx = rand.nextInt(lastIdx);
-      swapCard = mCard[swapIdx];
+  public void shuffle(final SplitMix random) {
+    for (int lastIdx = mCardCount - 1; lastIdx > 0; lastIdx--) {
+      int swapIdx = random.nextInt(lastIdx + 1);
+      int swapCard = mCard[swapIdx];
       mCard[swapIdx] = mCard[lastIdx];
       mCard[lastIdx] = swapCard;
-      lastIdx--;
     }
   }
 }
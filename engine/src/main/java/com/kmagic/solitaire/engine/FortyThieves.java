@@ -0,0 +1,104 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+/**
+ * Forty Thieves, two decks, ten columns built down in suit
+ */
+public class FortyThieves extends Game {
+
+  public FortyThieves() {
+    super(FORTYTHIEVES, 104, 20);
+
+    for (int i = 0; i < 10; i++) {
+      mPile[i] = new Pile(Pile.GENERIC);
+      mPile[i].setBuildSeq(Pile.SEQ_DSC);
+      mPile[i].setMoveSeq(Pile.SEQ_ASC);
+      mPile[i].setSuit(Pile.SUIT_SAME);
+      mPile[i].setWrap(false);
+      mPile[i].setPickup(Pile.PACK_LIMIT_BY_FREE);
+      mPile[i].setDropoff(Pile.PACK_MULTI);
+      mPile[i].setDisplay(Pile.DISPLAY_ALL);
+    }
+
+    // Foundations
+    for (int i = 0; i < 8; i++) {
+      mPile[i+10] = new Pile(Pile.SEQ_SINK);
+    }
+
+    mPile[18] = new Pile(Pile.DEAL_FROM);
+    mPile[19] = new Pile(Pile.DEAL_TO);
+  }
+
+  @Override
+  protected Game newInstance() {
+    return new FortyThieves();
+  }
+
+  @Override
+  protected Deck createDeck() {
+    return new Deck(2);
+  }
+
+  @Override
+  protected void deal(final Deck deck) {
+    for (int i = 0; i < 10; i++) {
+      for (int j = 0; j < 4; j++) {
+        mState.push(i, deck.popCard());
+      }
+    }
+    while (!deck.isEmpty()) {
+      mState.push(18, deck.popCard());
+    }
+  }
+
+  @Override
+  public boolean dealStock() {
+    if (mState.getCount(18) == 0) {
+      return false;
+    }
+    mState.push(19, mState.pop(18));
+    if (mRecordHistory) {
+      mMoveHistory.push(18, 19, 1, true, false);
+    }
+    return true;
+  }
+
+  @Override
+  protected boolean isFreeSpace(final int pile) {
+    return pile < 10;
+  }
+
+  @Override
+  protected boolean isAutoMoveSource(final int pile) {
+    return pile < 10;
+  }
+
+  @Override
+  public boolean isWon() {
+    return isFull(10, 8);
+  }
+
+  @Override
+  public String getGameTypeString() {
+    return "Forty Thieves";
+  }
+
+  @Override
+  public String getPrettyGameTypeString() {
+    return "Forty Thieves";
+  }
+}
@@ -0,0 +1,124 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+/**
+ * Freecell, four cells, four foundations and eight columns. Deals 1 to
+ * MS_DEALS are the deals of the same number in Microsoft Freecell.
+ */
+public class Freecell extends Game {
+
+  // Count of deals Microsoft numbering covers
+  public static final long MS_DEALS = 0x7FFFFFFFL;
+
+  // Microsoft suit order, clubs, diamonds, hearts and spades
+  private static final int[] MS_SUIT = { Cards.CLUBS, Cards.DIAMONDS, Cards.HEARTS, Cards.SPADES };
+
+  public Freecell() {
+    super(FREECELL, 52, 16);
+
+    // Top piles for holding cards
+    for (int i = 0; i < 4; i++) {
+      mPile[i] = new Pile(Pile.FREECELL_HOLD);
+    }
+
+    // Top piles for sinking cards
+    for (int i = 0; i < 4; i++) {
+      mPile[i+4] = new Pile(Pile.SEQ_SINK);
+    }
+
+    // Middle columns
+    for (int i = 0; i < 8; i++) {
+      mPile[i+8] = new Pile(Pile.FREECELL_STACK);
+    }
+  }
+
+  @Override
+  protected Game newInstance() {
+    return new Freecell();
+  }
+
+  @Override
+  protected Deck createDeck() {
+    return new Deck(1);
+  }
+
+  @Override
+  protected long newDealNumber(final long random) {
+    return (random >>> 1) % MS_DEALS + 1;
+  }
+
+  /**
+   * Deal Microsoft numbers with its shuffle, others like any game
+   */
+  @Override
+  protected Deck createDeck(final long number) {
+    if (number < 1 || number > MS_DEALS) {
+      return super.createDeck(number);
+    }
+
+    // Microsoft C runtime rand(), starting from the ordered deck of
+    // cards value * 4 + suit from the top and dealing the card drawn
+    int[] deck = new int[52];
+    for (int i = 0; i < 52; i++) {
+      deck[i] = i;
+    }
+    int[] dealt = new int[52];
+    long seed = number;
+    for (int left = 52; left > 0; left--) {
+      seed = (seed * 214013 + 2531011) & MS_DEALS;
+      int idx = (int)(seed >>> 16) % left;
+      int card = deck[idx];
+      deck[idx] = deck[left - 1];
+      dealt[left - 1] = Cards.make(card / 4 + 1, MS_SUIT[card % 4]);
+    }
+    return new Deck(dealt);
+  }
+
+  @Override
+  protected void deal(final Deck deck) {
+    while (!deck.isEmpty()) {
+      for (int i = 0; i < 8 && !deck.isEmpty(); i++) {
+        mState.push(i+8, deck.popCard());
+      }
+    }
+  }
+
+  @Override
+  protected boolean isFreeSpace(final int pile) {
+    return pile < 4 || pile >= 8;
+  }
+
+  @Override
+  protected boolean isAutoMoveSource(final int pile) {
+    return pile < 4 || pile >= 8;
+  }
+
+  @Override
+  public boolean isWon() {
+    return isFull(4, 4);
+  }
+
+  @Override
+  public String getGameTypeString() {
+    return "Freecell";
+  }
+
+  @Override
+  public String getPrettyGameTypeString() {
+    return "Freecell";
+  }
+}
@@ -0,0 +1,239 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+/**
+ * Freecell solver. Moves of runs between columns are single moves,
+ * limited by the free spaces as Game.countFreeSpaces() counts them, the
+ * same as the player gets. Cells are interchangeable, so are columns and
+ * foundations, so positions that only differ by their order share a key
+ * and only the first empty cell or column is tried as a target.
+ */
+public class FreecellSolver extends BestFirstSolver {
+
+  private static final int CELLS = 0;
+  private static final int FOUNDATIONS = 4;
+  private static final int COLUMNS = 8;
+  private static final int PILES = 16;
+
+  // Keys mixed into pile hashes so each group of piles hashes apart
+  private static final long FOUNDATION_KEY = 0x2545F4914F6CDD1DL;
+  private static final long COLUMN_KEY = 0x9E3779B97F4A7C15L;
+
+  private final int[] mHome;
+
+  /**
+   * Create a solver with the default budget
+   * @param game a Freecell game at the position to solve
+   */
+  public FreecellSolver(final Game game) {
+    this(game, 200000);
+  }
+
+  /**
+   * Create a solver
+   * @param game a Freecell game at the position to solve
+   * @param capacity the most positions kept while searching
+   */
+  public FreecellSolver(final Game game, final int capacity) {
+    this(game, capacity, capacity * 2);
+  }
+
+  /**
+   * Create a solver
+   * @param game a Freecell game at the position to solve
+   * @param capacity the most positions kept while searching
+   * @param tableSize the number of positions the transposition table holds
+   */
+  public FreecellSolver(final Game game, final int capacity, final int tableSize) {
+    super(game, capacity, tableSize);
+    if (game.getType() != Game.FREECELL) {
+      throw new IllegalArgumentException("Not a Freecell game");
+    }
+    mNodeLimit = capacity * 8;
+    mHome = new int[4];
+  }
+
+  @Override
+  protected long getKey() {
+    long key = 0;
+    for (int i = CELLS; i < FOUNDATIONS; i++) {
+      key += Zobrist.mix(mState.getPileHash(i));
+    }
+    for (int i = FOUNDATIONS; i < COLUMNS; i++) {
+      key += Zobrist.mix(mState.getPileHash(i) ^ FOUNDATION_KEY);
+    }
+    for (int i = COLUMNS; i < PILES; i++) {
+      key += Zobrist.mix(mState.getPileHash(i) ^ COLUMN_KEY);
+    }
+    return key;
+  }
+
+  @Override
+  protected int generateMoves(final int[] buffer, final int off) {
+    int n = off;
+    int emptyCell = -1;
+    int emptyColumn = -1;
+    for (int i = CELLS; i < FOUNDATIONS && emptyCell == -1; i++) {
+      if (mState.getCount(i) == 0) {
+        emptyCell = i;
+      }
+    }
+    for (int i = COLUMNS; i < PILES && emptyColumn == -1; i++) {
+      if (mState.getCount(i) == 0) {
+        emptyColumn = i;
+      }
+    }
+
+    // Foundation moves first, then builds on columns, then into spaces
+    for (int from = CELLS; from < PILES; from++) {
+      if (from >= FOUNDATIONS && from < COLUMNS) {
+        continue;
+      }
+      int sink = mGame.findSink(from);
+      if (sink != -1) {
+        buffer[n++] = encode(from, sink, 1);
+      }
+    }
+    for (int from = CELLS; from < PILES; from++) {
+      if (from >= FOUNDATIONS && from < COLUMNS) {
+        continue;
+      }
+      int movable = mGame.getMovableCount(from);
+      for (int to = COLUMNS; to < PILES && movable > 0; to++) {
+        int top = mState.getTop(to);
+        if (to == from || top == Cards.NONE) {
+          continue;
+        }
+        // Only one run length can fit on a card
+        int count = Cards.value(top) - Cards.value(mState.getTop(from));
+        if (count >= 1 && count <= movable && mGame.canMove(from, to, count)) {
+          buffer[n++] = encode(from, to, count);
+        }
+      }
+    }
+    if (emptyColumn != -1) {
+      for (int from = CELLS; from < PILES; from++) {
+        if ((from >= FOUNDATIONS && from < COLUMNS) || from == emptyColumn) {
+          continue;
+        }
+        int movable = mGame.getMovableCount(from);
+        // Moving a whole column to an empty one gains nothing
+        if (from >= COLUMNS && movable == mState.getCount(from)) {
+          movable--;
+        }
+        for (int count = movable; count >= 1; count--) {
+          if (mGame.canMove(from, emptyColumn, count)) {
+            buffer[n++] = encode(from, emptyColumn, count);
+          }
+        }
+      }
+    }
+    if (emptyCell != -1) {
+      for (int from = COLUMNS; from < PILES; from++) {
+        if (mState.getCount(from) > 0) {
+          buffer[n++] = encode(from, emptyCell, 1);
+        }
+      }
+    }
+    return n - off;
+  }
+
+  /**
+   * Move cards to the foundations while no other card could need them
+   * to build on, a card is safe once both foundations of the other
+   * color are at least one below it
+   */
+  @Override
+  protected void autoPlay(final Game game) {
+    State state = game.getState();
+    boolean moved = true;
+    while (moved) {
+      moved = false;
+      updateHome(state);
+      for (int from = CELLS; from < PILES; from++) {
+        if (from >= FOUNDATIONS && from < COLUMNS) {
+          continue;
+        }
+        int card = state.getTop(from);
+        if (card == Cards.NONE || !isSafe(card)) {
+          continue;
+        }
+        int sink = game.findSink(from);
+        if (sink != -1) {
+          game.move(from, sink, 1);
+          mHome[Cards.suit(card)]++;
+          moved = true;
+        }
+      }
+    }
+  }
+
+  private void updateHome(final State state) {
+    for (int i = 0; i < 4; i++) {
+      mHome[i] = 0;
+    }
+    for (int i = FOUNDATIONS; i < COLUMNS; i++) {
+      int top = state.getTop(i);
+      if (top != Cards.NONE) {
+        mHome[Cards.suit(top)] = Cards.value(top);
+      }
+    }
+  }
+
+  private boolean isSafe(final int card) {
+    int value = Cards.value(card);
+    if (value <= 2) {
+      return true;
+    }
+    int color = Cards.color(card);
+    for (int suit = 0; suit < 4; suit++) {
+      if ((suit & 1) != color && mHome[suit] < value - 1) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Cards left to go home, plus cards sitting on a lower card they must
+   * move off first, plus used cells, weighted over moves played so far
+   */
+  @Override
+  protected int evaluate(final int depth) {
+    int left = 52;
+    for (int i = FOUNDATIONS; i < COLUMNS; i++) {
+      left -= mState.getCount(i);
+    }
+    int used = 0;
+    for (int i = CELLS; i < FOUNDATIONS; i++) {
+      used += mState.getCount(i);
+    }
+    int blocked = 0;
+    for (int i = COLUMNS; i < PILES; i++) {
+      int lowest = Cards.KING + 1;
+      for (int j = 0; j < mState.getCount(i); j++) {
+        int value = Cards.value(mState.getCard(i, j));
+        if (value > lowest) {
+          blocked++;
+        } else {
+          lowest = value;
+        }
+      }
+    }
+    return 2 * (left + blocked + used) + depth;
+  }
+}
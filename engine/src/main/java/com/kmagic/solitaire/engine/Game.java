@@ -0,0 +1,532 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+import java.util.Random;
+
+/**
+ * Rules of a game type, deals a State and moves cards on it. Nothing in
+ * here depends on Android, so games can be dealt, played, undone and
+ * checked on any JVM.
+ */
+public abstract class Game {
+
+  public static final int SOLITAIRE = 1;
+  public static final int SPIDER = 2;
+  public static final int FREECELL = 3;
+  public static final int FORTYTHIEVES = 4;
+
+  // Picks the numbers of new deals
+  private static final Random DEAL_NUMBERS = new Random();
+
+  private final int mType;
+  protected final int mCardCount;
+  protected final Pile[] mPile;
+  protected final State mState;
+  protected MoveHistory mMoveHistory;
+  protected boolean mRecordHistory;
+  private long mDealNumber;
+
+  // Bit per pile that is a free space when empty, see getFreeSpaces()
+  private long mFreeSpaces;
+  private boolean mFreeSpacesFound;
+
+  // Scratch space used while moving cards
+  private final int[] mStorage;
+
+  /**
+   * Create a new game
+   * @param type the game type
+   * @param cardCount total cards in play
+   * @param pileCount number of piles
+   */
+  protected Game(final int type, final int cardCount, final int pileCount) {
+    mType = type;
+    mCardCount = cardCount;
+    mPile = new Pile[pileCount];
+    mState = new State(mPile, cardCount);
+    mMoveHistory = new MoveHistory();
+    mRecordHistory = true;
+    mStorage = new int[State.MAX_CARDS];
+  }
+
+  /**
+   * Create the rules for a game type
+   * @param type the game type
+   * @param options the game options
+   * @return the game, null on an unknown type
+   */
+  public static Game create(final int type, final GameOptions options) {
+    switch (type) {
+      case SOLITAIRE:
+        return new Klondike(options.getDealThree(), options.getStyleNormal());
+      case SPIDER:
+        return new Spider(options.getSpiderSuits());
+      case FREECELL:
+        return new Freecell();
+      case FORTYTHIEVES:
+        return new FortyThieves();
+    }
+    return null;
+  }
+
+  // ==========================================================================
+  // Getters and Setters
+  // -------------------
+  public int getType() { return mType; }
+  public int getCardCount() { return mCardCount; }
+  public int getPileCount() { return mPile.length; }
+  public long getDealNumber() { return mDealNumber; }
+  public void setDealNumber(long dealNumber) { mDealNumber = dealNumber; }
+  public Pile getPile(int pile) { return mPile[pile]; }
+  public State getState() { return mState; }
+  public MoveHistory getMoveHistory() { return mMoveHistory; }
+  public void setMoveHistory(MoveHistory moveHistory) { mMoveHistory = moveHistory; }
+  public boolean getRecordHistory() { return mRecordHistory; }
+  public void setRecordHistory(boolean record) { mRecordHistory = record; }
+  public int getRulesExtra() { return 0; }
+  public void setRulesExtra(int extra) { }
+  public boolean hasScore() { return false; }
+  public int getScore() { return 0; }
+  abstract public String getGameTypeString();
+  abstract public String getPrettyGameTypeString();
+  abstract public boolean isWon();
+
+  /**
+   * Create a game with the same rules and options, but no cards
+   * @return the new game
+   */
+  abstract protected Game newInstance();
+
+  /**
+   * Create a copy of this game at the current position, without the
+   * move history
+   * @return the copy
+   */
+  public Game copy() {
+    Game game = newInstance();
+    game.mState.copyFrom(mState);
+    game.setRulesExtra(getRulesExtra());
+    game.mDealNumber = mDealNumber;
+    return game;
+  }
+
+  /**
+   * Get a key of the current position, the cards and the state of the
+   * rules such as the deals left
+   * @return the position key
+   */
+  public long getPositionKey() {
+    return mState.getHash() + Zobrist.mix(getRulesExtra() + 2);
+  }
+
+  // ==========================================================================
+  // Dealing
+  // -------
+  abstract protected Deck createDeck();
+  abstract protected void deal(Deck deck);
+
+  /**
+   * Create the deck of a numbered deal
+   * @param number the deal number
+   * @return the deck in the order its cards are dealt
+   */
+  protected Deck createDeck(final long number) {
+    Deck deck = createDeck();
+    deck.shuffle(new SplitMix(number));
+    return deck;
+  }
+
+  /**
+   * Pick the number of a new deal
+   * @param random 64 random bits
+   * @return the deal number
+   */
+  protected long newDealNumber(final long random) {
+    return random;
+  }
+
+  /**
+   * Start a new game from a random deal
+   */
+  public void deal() {
+    deal(newDealNumber(DEAL_NUMBERS.nextLong()));
+  }
+
+  /**
+   * Start a new game from a numbered deal, the same number always deals
+   * the same cards for the same rules
+   * @param number the deal number
+   */
+  public void deal(final long number) {
+    mState.clear();
+    mMoveHistory.clear();
+    mDealNumber = number;
+    deal(createDeck(number));
+  }
+
+  /**
+   * Restore a game from saved pile contents, cards are listed pile by
+   * pile from the bottom up
+   * @param cardCount count of cards in each pile
+   * @param hiddenCount count of face down cards in each pile
+   * @param value card values
+   * @param suit card suits
+   * @return true if restored, false if the data does not fit this game
+   */
+  public boolean restore(final int[] cardCount,
+                         final int[] hiddenCount,
+                         final int[] value,
+                         final int[] suit) {
+    if (cardCount == null || hiddenCount == null || value == null || suit == null ||
+        cardCount.length != mPile.length || hiddenCount.length != mPile.length ||
+        value.length != mCardCount || suit.length != mCardCount) {
+      return false;
+    }
+    int total = 0;
+    for (int i = 0; i < mPile.length; i++) {
+      if (cardCount[i] < 0 || cardCount[i] > State.MAX_CARDS) {
+        return false;
+      }
+      total += cardCount[i];
+    }
+    if (total != mCardCount) {
+      return false;
+    }
+
+    mState.clear();
+    mMoveHistory.clear();
+    int cardIdx = 0;
+    for (int i = 0; i < mPile.length; i++) {
+      for (int j = 0; j < cardCount[i]; j++, cardIdx++) {
+        mState.push(i, Cards.make(value[cardIdx], suit[cardIdx]));
+      }
+      mState.setHiddenCount(i, Math.min(hiddenCount[i], cardCount[i]));
+    }
+    return true;
+  }
+
+  // ==========================================================================
+  // Rules
+  // -----
+
+  /**
+   * Does an empty pile count as a free space for moving runs
+   * @param pile the pile index
+   * @return true if the pile is a free space when empty
+   */
+  protected boolean isFreeSpace(final int pile) { return false; }
+
+  /**
+   * Count the empty piles that can temporarily hold cards
+   * @return count of free spaces
+   */
+  public int countFreeSpaces() {
+    return Long.bitCount(mState.getEmptyPiles() & getFreeSpaces());
+  }
+
+  /**
+   * Get the piles that are free spaces when empty, found once as they
+   * only depend on the rules
+   * @return a bit per pile, 1 << pile
+   */
+  private long getFreeSpaces() {
+    if (!mFreeSpacesFound) {
+      for (int i = 0; i < mPile.length && i < 64; i++) {
+        if (isFreeSpace(i)) {
+          mFreeSpaces |= 1L << i;
+        }
+      }
+      mFreeSpacesFound = true;
+    }
+    return mFreeSpaces;
+  }
+
+  /**
+   * Get the count of cards that can be moved off a pile
+   * @param pile the pile index
+   * @return count of movable cards
+   */
+  public int getMovableCount(final int pile) {
+    return getMovableCount(pile, countFreeSpaces());
+  }
+
+  /**
+   * Get the count of cards that can be moved off a pile
+   * @param pile the pile index
+   * @param free the free spaces, see countFreeSpaces()
+   * @return count of movable cards
+   */
+  public int getMovableCount(final int pile, final int free) {
+    return mPile[pile].getMovableCount(mState, pile, free);
+  }
+
+  /**
+   * Check if cards can be moved between two piles
+   * @param from the pile to move from
+   * @param to the pile to move to
+   * @param count the count of cards to move off the top of from
+   * @return true if the move is legal, false if not
+   */
+  public boolean canMove(final int from, final int to, final int count) {
+    if (from == to || count < 1 || count > getMovableCount(from)) {
+      return false;
+    }
+    int card = mState.getCard(from, mState.getCount(from) - count);
+    int free = countFreeSpaces();
+    // Cards are picked up before they are dropped, so emptying a pile frees it
+    if (count == mState.getCount(from) && isFreeSpace(from)) {
+      free++;
+    }
+    return mPile[to].canDrop(mState.getTop(to), card, count, free);
+  }
+
+  /**
+   * Find a foundation that takes the top card of a pile
+   * @param pile the pile index
+   * @return the foundation index, -1 if none
+   */
+  public int findSink(final int pile) {
+    if (getMovableCount(pile) == 0) {
+      return -1;
+    }
+    int card = mState.getTop(pile);
+    for (int i = 0; i < mPile.length; i++) {
+      if (i != pile && mPile[i].getKind() == Pile.SEQ_SINK &&
+          mPile[i].canDrop(mState.getTop(i), card, 1, 0)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // ==========================================================================
+  // Functions to move cards
+  // -----------------------
+
+  /**
+   * Move cards between piles, the move must be legal
+   * @param from the pile to move from
+   * @param to the pile to move to
+   * @param count the count of cards to move
+   */
+  public void move(final int from, final int to, final int count) {
+    for (int i = 0; i < count; i++) {
+      mStorage[i] = mState.pop(from);
+    }
+    boolean unhide = mState.unhideTopCard(from);
+    for (int i = count - 1; i >= 0; i--) {
+      mState.push(to, mStorage[i]);
+    }
+    if (mRecordHistory) {
+      mMoveHistory.push(from, to, count, false, unhide);
+    }
+    afterMove(to);
+  }
+
+  /**
+   * Move the top card of a pile to a foundation if possible
+   * @param pile the pile index
+   * @return true if a card was moved, false if not
+   */
+  public boolean sink(final int pile) {
+    int to = findSink(pile);
+    if (to == -1) {
+      return false;
+    }
+    move(pile, to, 1);
+    return true;
+  }
+
+  /**
+   * Can the app's auto move send the top card of a pile home
+   * @param pile the pile index
+   * @return true if auto move takes cards off the pile
+   */
+  protected boolean isAutoMoveSource(final int pile) { return false; }
+
+  /**
+   * Find the pile the app's auto move sends the top card of home next
+   * @return the pile index, -1 if none
+   */
+  public int findAutoMove() {
+    for (int pile = 0; pile < mPile.length; pile++) {
+      if (isAutoMoveSource(pile) && findSink(pile) != -1) {
+        return pile;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Send cards home the way the app's auto move does, trying the piles
+   * in order and starting over after every card sent
+   * @return count of cards sent home
+   */
+  public int autoMove() {
+    int moved = 0;
+    int pile;
+    while ((pile = findAutoMove()) != -1) {
+      sink(pile);
+      moved++;
+    }
+    return moved;
+  }
+
+  /**
+   * Find the moves that finish the game by only sending cards home, for
+   * auto completing a game that is as good as won. The piles are taken
+   * in turn, so cards of different piles go home interleaved.
+   * @param buffer array for the packed moves, see Solver, with room for
+   * getCardCount() moves
+   * @return the count of moves, -1 if cards are left that can not go home
+   */
+  public int findFinish(final int[] buffer) {
+    for (int i = 0; i < mPile.length; i++) {
+      if (mState.getHiddenCount(i) > 0) {
+        return -1;
+      }
+    }
+    Game game = copy();
+    game.setRecordHistory(false);
+    int n = 0;
+    boolean moved = true;
+    while (moved) {
+      moved = false;
+      for (int pile = 0; pile < mPile.length; pile++) {
+        int sink = mPile[pile].getKind() == Pile.SEQ_SINK ? -1 : game.findSink(pile);
+        if (sink != -1) {
+          game.move(pile, sink, 1);
+          buffer[n++] = Solver.encode(pile, sink, 1);
+          moved = true;
+        }
+      }
+    }
+    return game.isWon() ? n : -1;
+  }
+
+  /**
+   * Deal from the stock, the same as tapping the deal pile
+   * @return true if cards were dealt, false if not
+   */
+  public boolean dealStock() { return false; }
+
+  /**
+   * Called after cards land on a pile
+   * @param pile the pile index
+   */
+  protected void afterMove(final int pile) { }
+
+  /**
+   * Change the count of redeals left
+   * @param delta amount to change by
+   */
+  protected void changeDealCount(final int delta) { }
+
+  /**
+   * Play a move from the history again, used to replay a game
+   * @param move the packed move to apply, see MoveHistory
+   */
+  public void apply(final long move) {
+    int from = MoveHistory.getFrom(move);
+    int toBegin = MoveHistory.getToBegin(move);
+    int toEnd = MoveHistory.getToEnd(move);
+    int count = MoveHistory.getCount(move);
+    if (toBegin != toEnd) {
+      for (int i = toBegin; i <= toEnd; i++) {
+        for (int j = 0; j < count; j++) {
+          mState.push(i, mState.pop(from));
+        }
+      }
+    } else if (MoveHistory.getInvert(move)) {
+      for (int i = 0; i < count; i++) {
+        mState.push(toBegin, mState.pop(from));
+      }
+    } else {
+      for (int i = 0; i < count; i++) {
+        mStorage[i] = mState.pop(from);
+      }
+      for (int i = count - 1; i >= 0; i--) {
+        mState.push(toBegin, mStorage[i]);
+      }
+    }
+    if (MoveHistory.getUnhide(move)) {
+      mState.unhideTopCard(from);
+    }
+    if (MoveHistory.getAddDealCount(move)) {
+      changeDealCount(-1);
+    }
+  }
+
+  /**
+   * Undo the last move in the history
+   * @return true if a move was undone, false if the history is empty
+   */
+  public boolean undo() {
+    if (mMoveHistory.isEmpty()) {
+      return false;
+    }
+    undo(mMoveHistory.pop());
+    return true;
+  }
+
+  /**
+   * Take back a move
+   * @param move the packed move to take back, see MoveHistory
+   */
+  public void undo(final long move) {
+    int count = 0;
+    int from = MoveHistory.getFrom(move);
+    int toBegin = MoveHistory.getToBegin(move);
+    int toEnd = MoveHistory.getToEnd(move);
+    int moveCount = MoveHistory.getCount(move);
+    for (int i = toBegin; i <= toEnd; i++) {
+      for (int j = 0; j < moveCount; j++) {
+        mStorage[count++] = mState.pop(i);
+      }
+    }
+    if (MoveHistory.getUnhide(move)) {
+      mState.setHiddenCount(from, mState.getHiddenCount(from) + 1);
+    }
+    if (MoveHistory.getInvert(move)) {
+      for (int i = 0; i < count; i++) {
+        mState.push(from, mStorage[i]);
+      }
+    } else {
+      for (int i = count - 1; i >= 0; i--) {
+        mState.push(from, mStorage[i]);
+      }
+    }
+    if (MoveHistory.getAddDealCount(move)) {
+      changeDealCount(1);
+    }
+  }
+
+  /**
+   * Check if every pile of a range holds a full suit
+   * @param first the first pile
+   * @param count the count of piles
+   * @return true if all piles hold 13 cards
+   */
+  protected boolean isFull(final int first, final int count) {
+    for (int i = first; i < first + count; i++) {
+      if (mState.getCount(i) != 13) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,91 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+/**
+ * Options that change the rules of a game, mirrors the user settings
+ * of the app
+ */
+public class GameOptions {
+
+  // When cards are sent home after a card lands on a foundation
+  public static final int AUTO_MOVE_NEVER = 0;
+  public static final int AUTO_MOVE_FLING_ONLY = 1;
+  public static final int AUTO_MOVE_ALWAYS = 2;
+
+  private boolean mDealThree;
+  private boolean mStyleNormal;
+  private int mSpiderSuits;
+  private int mAutoMoveLevel;
+
+  /**
+   * Create options with the app defaults
+   */
+  public GameOptions() {
+    mDealThree = true;
+    mStyleNormal = true;
+    mSpiderSuits = 4;
+    mAutoMoveLevel = AUTO_MOVE_ALWAYS;
+  }
+
+  /**
+   * Get if solitaire deals three cards at a time
+   * @return true to deal three cards, false to deal one
+   */
+  public boolean getDealThree() { return mDealThree; }
+
+  /**
+   * Get if solitaire is played in normal style
+   * @return true for normal style, false for vegas style
+   */
+  public boolean getStyleNormal() { return mStyleNormal; }
+
+  /**
+   * Get the number of suits spider is dealt with
+   * @return 1, 2 or 4 suits
+   */
+  public int getSpiderSuits() { return mSpiderSuits; }
+
+  /**
+   * Get when cards are sent home automatically
+   * @return AUTO_MOVE_NEVER, AUTO_MOVE_FLING_ONLY or AUTO_MOVE_ALWAYS
+   */
+  public int getAutoMoveLevel() { return mAutoMoveLevel; }
+
+  /**
+   * Set if solitaire deals three cards at a time
+   * @param dealThree true to deal three cards, false to deal one
+   */
+  public void setDealThree(final boolean dealThree) { mDealThree = dealThree; }
+
+  /**
+   * Set if solitaire is played in normal style
+   * @param styleNormal true for normal style, false for vegas style
+   */
+  public void setStyleNormal(final boolean styleNormal) { mStyleNormal = styleNormal; }
+
+  /**
+   * Set the number of suits spider is dealt with
+   * @param suits 1, 2 or 4 suits
+   */
+  public void setSpiderSuits(final int suits) { mSpiderSuits = suits; }
+
+  /**
+   * Set when cards are sent home automatically
+   * @param level AUTO_MOVE_NEVER, AUTO_MOVE_FLING_ONLY or AUTO_MOVE_ALWAYS
+   */
+  public void setAutoMoveLevel(final int level) { mAutoMoveLevel = level; }
+}
@@ -0,0 +1,81 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+/**
+ * Plays the move that looks best right now, without looking ahead: cards
+ * home first, then moves turning a card over, playing off the waste,
+ * moving whole runs, dealing and last moves into empty piles. Cards are
+ * never taken back off a foundation and runs are not split.
+ */
+public class GreedyStrategy extends Strategy {
+
+  @Override
+  protected int pick(final Game game, final int[] moves, final int count, final SplitMix random) {
+    State state = game.getState();
+    int best = Strategy.NONE;
+    int bestScore = 0;
+    int ties = 0;
+    for (int i = 0; i < count; i++) {
+      int score = score(game, state, moves[i]);
+      if (score <= 0 || score < bestScore) {
+        continue;
+      }
+      if (score > bestScore) {
+        bestScore = score;
+        ties = 0;
+      }
+      // Pick evenly among the best moves as they are found
+      if (random.nextInt(++ties) == 0) {
+        best = moves[i];
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Rate a move, 0 or less for moves not worth playing
+   */
+  private static int score(final Game game, final State state, final int move) {
+    int from = Solver.getFrom(move);
+    if (from == Solver.STOCK) {
+      return 30;
+    }
+    int to = Solver.getTo(move);
+    int count = Solver.getCount(move);
+    int fromKind = game.getPile(from).getKind();
+    if (fromKind == Pile.SEQ_SINK) {
+      return 0;
+    }
+    if (game.getPile(to).getKind() == Pile.SEQ_SINK) {
+      return 100;
+    }
+    if (count == state.getVisibleCount(from) && state.getHiddenCount(from) > 0) {
+      return 90;
+    }
+    if (fromKind == Pile.DEAL_TO) {
+      return 70;
+    }
+    if (count < game.getMovableCount(from)) {
+      return 0;
+    }
+    if (state.getCount(to) > 0) {
+      return 50;
+    }
+    // Moving a whole pile to an empty one gains nothing
+    return count == state.getCount(from) ? 0 : 10;
+  }
+}
@@ -0,0 +1,182 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+/**
+ * Finds a move to suggest to the player. A time boxed search by the
+ * solver of the game type comes first and its first move is the hint
+ * when it finds a win in time. Otherwise the best move of a greedy
+ * player is, one that does not lead back to a position an earlier hint
+ * led to. Hints found by the solver are cached by position, so asking
+ * again is instant. Greedy hints are not, as they depend on the hints
+ * given before.
+ */
+public class Hint {
+
+  // No move to suggest
+  public static final int NONE = Strategy.NONE;
+  // Default search budget in milliseconds
+  public static final long TIME_LIMIT = 50;
+
+  private static final int CACHE_SIZE = 1 << 10;
+  // Positions the solver holds, well above what TIME_LIMIT searches
+  private static final int SOLVER_SIZE = 1 << 15;
+  // Spider beam, narrow so the search gets deeper in TIME_LIMIT
+  private static final int SPIDER_WIDTH = 64;
+  private static final int SPIDER_DEPTH = 500;
+
+  private final Game mGame;
+  private final Strategy mGreedy;
+  private final TranspositionTable mCache;
+  private long mTimeLimit;
+  private volatile Solver mSolver;
+  private volatile boolean mSearching;
+  private volatile boolean mCancelled;
+  private volatile boolean mReset;
+
+  /**
+   * Create a hint finder for the rules of a game
+   * @param game a game of the rules, it is copied
+   */
+  public Hint(final Game game) {
+    mGame = game.copy();
+    mGame.setRecordHistory(false);
+    mGreedy = new GreedyStrategy();
+    mGreedy.reset(mGame);
+    mCache = new TranspositionTable(CACHE_SIZE);
+    mTimeLimit = TIME_LIMIT;
+  }
+
+  // ==========================================================================
+  // Getters and Setters
+  // -------------------
+  public long getTimeLimit() { return mTimeLimit; }
+
+  public void setTimeLimit(long timeLimit) { mTimeLimit = timeLimit; }
+
+  /**
+   * Start a new game, hints may then lead back to positions earlier
+   * hints led to. Cached hints are kept, a win found from a position
+   * stays a win.
+   */
+  public void reset() { mReset = true; }
+
+  /**
+   * Get the hint of a position if it was found before
+   * @param game the game at the position
+   * @return the packed move, NONE, or TranspositionTable.NOT_FOUND if not cached
+   */
+  public synchronized int getCached(final Game game) {
+    return mCache.probe(game.getPositionKey());
+  }
+
+  /**
+   * Find the hint of a position, blocks for up to the time limit
+   * @param game the game at the position, a game of the same rules
+   * @return the packed move, see Solver, or NONE if there is none or
+   * the search was cancelled
+   */
+  public int find(final Game game) {
+    int move = getCached(game);
+    if (move != TranspositionTable.NOT_FOUND) {
+      return move;
+    }
+    mCancelled = false;
+    if (mReset) {
+      mReset = false;
+      mGreedy.reset(mGame);
+    }
+    long key = game.getPositionKey();
+    mGame.getState().copyFrom(game.getState());
+    mGame.setRulesExtra(game.getRulesExtra());
+
+    move = search();
+    if (mCancelled) {
+      return NONE;
+    }
+    if (move == NONE) {
+      return mGreedy.nextMove(mGame, new SplitMix(key));
+    }
+    synchronized (this) {
+      mCache.put(key, move, 0);
+    }
+    return move;
+  }
+
+  /**
+   * Stop a running find(), it returns NONE and caches nothing. Cheap when
+   * no search is running.
+   */
+  public void cancel() {
+    mCancelled = true;
+    if (mSearching) {
+      mSolver.cancel();
+    }
+  }
+
+  /**
+   * Search for a win from mGame
+   * @return the first move of the win, NONE if none was found in time
+   */
+  private int search() {
+    Solver solver = mSolver;
+    if (solver == null) {
+      solver = createSolver(mGame);
+      if (solver == null) {
+        return NONE;
+      }
+      mSolver = solver;
+    }
+    solver.setPosition(mGame);
+    solver.setTimeLimit(mTimeLimit);
+    // A cancel() from here on is seen either below or by the solver
+    solver.clearCancel();
+    mSearching = true;
+    Solution solution = mCancelled ? null : solver.solveUnlessCancelled();
+    mSearching = false;
+    if (solution == null || !solution.isSolved() || solution.getMoveCount() == 0) {
+      return NONE;
+    }
+    long move = solution.getMove(0);
+    int from = MoveHistory.getFrom(move);
+    int to = MoveHistory.getToBegin(move);
+    // Deals and turning the waste over are both a tap on the stock
+    if (mGame.getPile(from).getKind() == Pile.DEAL_FROM ||
+        mGame.getPile(to).getKind() == Pile.DEAL_FROM ||
+        to != MoveHistory.getToEnd(move)) {
+      return Solver.encode(Solver.STOCK, 0, 1);
+    }
+    return Solver.encode(from, to, MoveHistory.getCount(move));
+  }
+
+  /**
+   * Create the solver hints are searched with, sized for TIME_LIMIT.
+   * Klondike plays honest, a hint must not depend on face down cards.
+   * @param game the game at a position to solve
+   * @return the solver, null if there is none for the game type
+   */
+  private static Solver createSolver(final Game game) {
+    switch (game.getType()) {
+      case Game.SOLITAIRE:
+        return new KlondikeSolver(game, KlondikeSolver.HONEST, SOLVER_SIZE);
+      case Game.SPIDER:
+        return new SpiderSolver(game, SPIDER_WIDTH, SPIDER_DEPTH, SOLVER_SIZE);
+      case Game.FREECELL:
+        return new FreecellSolver(game, SOLVER_SIZE, SOLVER_SIZE);
+    }
+    return null;
+  }
+}
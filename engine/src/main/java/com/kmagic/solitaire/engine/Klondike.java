@@ -0,0 +1,187 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+/**
+ * Klondike, dealing one or three cards, in normal or Vegas style
+ */
+public class Klondike extends Game {
+
+  private final boolean mDealThree;
+  private final boolean mStyleNormal;
+  private int mDealsLeft;
+
+  /**
+   * Create Klondike rules
+   * @param dealThree true to deal three cards at a time
+   * @param styleNormal true for unlimited redeals, false for Vegas scoring
+   */
+  public Klondike(final boolean dealThree, final boolean styleNormal) {
+    super(SOLITAIRE, 52, 13);
+    mDealThree = dealThree;
+    mStyleNormal = styleNormal;
+
+    // Top dealt from piles
+    mPile[0] = new Pile(Pile.DEAL_FROM);
+    mPile[1] = new Pile(Pile.DEAL_TO);
+
+    // Top piles for placing cards
+    for (int i = 0; i < 4; i++) {
+      mPile[i+2] = new Pile(Pile.SEQ_SINK);
+    }
+
+    // Middle piles
+    for (int i = 0; i < 7; i++) {
+      mPile[i+6] = new Pile(Pile.GENERIC);
+      mPile[i+6].setStartSeq(Pile.START_KING);
+      mPile[i+6].setBuildSeq(Pile.SEQ_DSC);
+      mPile[i+6].setMoveSeq(Pile.SEQ_ASC);
+      mPile[i+6].setSuit(Pile.SUIT_RB);
+      mPile[i+6].setWrap(false);
+      mPile[i+6].setBehavior(Pile.PACK_MULTI);
+      mPile[i+6].setDisplay(Pile.DISPLAY_MIX);
+    }
+    resetDealsLeft();
+  }
+
+  public boolean getDealThree() { return mDealThree; }
+  public int getDealsLeft() { return mDealsLeft; }
+
+  private void resetDealsLeft() {
+    if (mStyleNormal) {
+      mDealsLeft = -1;
+    } else {
+      mDealsLeft = mDealThree ? 2 : 0;
+    }
+  }
+
+  @Override
+  protected Game newInstance() {
+    return new Klondike(mDealThree, mStyleNormal);
+  }
+
+  @Override
+  protected Deck createDeck() {
+    return new Deck(1);
+  }
+
+  @Override
+  protected void deal(final Deck deck) {
+    for (int i = 0; i < 7; i++) {
+      for (int j = 0; j <= i; j++) {
+        mState.push(i+6, deck.popCard());
+      }
+      mState.setHiddenCount(i+6, i);
+    }
+
+    while (!deck.isEmpty()) {
+      mState.push(0, deck.popCard());
+    }
+    resetDealsLeft();
+  }
+
+  @Override
+  public boolean dealStock() {
+    if (mState.getCount(0) == 0) {
+      boolean addDealCount = false;
+      if (mDealsLeft == 0) {
+        return false;
+      } else if (mDealsLeft > 0) {
+        mDealsLeft--;
+        addDealCount = true;
+      }
+      int count = 0;
+      while (mState.getCount(1) > 0) {
+        mState.push(0, mState.pop(1));
+        count++;
+      }
+      if (mRecordHistory) {
+        mMoveHistory.push(1, 0, count, true, false, addDealCount);
+      }
+    } else {
+      int count = 0;
+      int maxCount = mDealThree ? 3 : 1;
+      for (int i = 0; i < maxCount && mState.getCount(0) > 0; i++) {
+        mState.push(1, mState.pop(0));
+        count++;
+      }
+      if (mRecordHistory) {
+        mMoveHistory.push(0, 1, count, true, false);
+      }
+    }
+    return true;
+  }
+
+  @Override
+  protected void changeDealCount(final int delta) {
+    if (mDealsLeft != -1) {
+      mDealsLeft += delta;
+    }
+  }
+
+  @Override
+  public int getRulesExtra() {
+    return mDealsLeft;
+  }
+
+  @Override
+  public void setRulesExtra(final int extra) {
+    mDealsLeft = extra;
+  }
+
+  @Override
+  protected boolean isAutoMoveSource(final int pile) {
+    return pile >= 6;
+  }
+
+  @Override
+  public boolean isWon() {
+    return isFull(2, 4);
+  }
+
+  @Override
+  public boolean hasScore() {
+    return mDealsLeft != -1;
+  }
+
+  @Override
+  public int getScore() {
+    if (mDealsLeft == -1) {
+      return 0;
+    }
+    int score = -52;
+    for (int i = 0; i < 4; i++) {
+      score += 5 * mState.getCount(i+2);
+    }
+    return score;
+  }
+
+  @Override
+  public String getGameTypeString() {
+    if (mDealsLeft == -1) {
+      return mDealThree ? "SolitaireNormalDeal3" : "SolitaireNormalDeal1";
+    }
+    return mDealThree ? "SolitaireVegasDeal3" : "SolitaireVegasDeal1";
+  }
+
+  @Override
+  public String getPrettyGameTypeString() {
+    if (mDealsLeft == -1) {
+      return mDealThree ? "Solitaire Dealing Three Cards" : "Solitaire Dealing One Card";
+    }
+    return mDealThree ? "Vegas Solitaire Dealing Three Cards" : "Vegas Solitaire Dealing One Card";
+  }
+}
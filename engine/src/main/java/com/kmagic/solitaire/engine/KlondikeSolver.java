@@ -0,0 +1,509 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+/**
+ * Klondike solver, a depth first search over the deal, foundation and
+ * tableau moves, where dealing is searched as dealing up to each waste
+ * card that can be played, honouring dealing one or three cards and the redeals
+ * left in Vegas style. Positions seen are skipped through the
+ * transposition table, which bounds the memory used.
+ *
+ * THOUGHTFUL mode knows every face down card. HONEST mode plays like a
+ * player who cannot see face down tableau cards, it only searches up to
+ * the next card turned over, commits to that line and searches again
+ * from there. Stock cards count as known in both modes, as a player
+ * sees all of them on the first pass.
+ *
+ * To stay fast the search first skips moves that rarely help: splitting
+ * a run other than to free a card for home, taking a card off a
+ * foundation no face up card can be built on, and dealing to a waste
+ * card that cannot be played at once. When that search skipped any such
+ * move and found no win, the search is run again with every move, under
+ * keys of their own in the transposition table, as a skipped move might
+ * be the only way to win. Only a search that skipped nothing proves the
+ * deal, or in HONEST mode that way of playing, UNSOLVABLE.
+ */
+public class KlondikeSolver extends Solver {
+
+  public static final int THOUGHTFUL = 1;
+  public static final int HONEST = 2;
+
+  private static final int STOCK_PILE = 0;
+  private static final int WASTE = 1;
+  private static final int FOUNDATIONS = 2;
+  private static final int COLUMNS = 6;
+  private static final int PILES = 13;
+
+  // Most moves of one position, and most moves on the search stack
+  private static final int LEVEL_MOVES = 100;
+  private static final int MAX_DEPTH = 1024;
+
+  private static final long FOUNDATION_KEY = 0x2545F4914F6CDD1DL;
+  private static final long COLUMN_KEY = 0x9E3779B97F4A7C15L;
+  // Keeps the positions of a search of every move apart from a pruned one
+  private static final long FULL_KEY = 0xD1B54A32D192ED03L;
+
+  private final int mMode;
+  private final boolean mDealThree;
+  private final int mStride;
+  private final byte[] mArena;
+  private final int[] mDealsLeft;
+  private final int[] mMoves;
+  private final int[] mMoveCount;
+  private final int[] mMoveIdx;
+  private final int[] mScore;
+  private final int[] mHome;
+  private final byte[] mScratch;
+
+  // Set when the search stopped short, by depth or budget
+  private boolean mCutoff;
+  // Skip moves that rarely help, see prune()
+  private boolean mPrune;
+  // Set when a move that might matter was not generated
+  private boolean mPruned;
+  private int[] mPath;
+  private int mPathLength;
+
+  /**
+   * Create a solver with the default budget
+   * @param game a Klondike game at the position to solve
+   * @param mode THOUGHTFUL or HONEST
+   */
+  public KlondikeSolver(final Game game, final int mode) {
+    this(game, mode, 1 << 20);
+  }
+
+  /**
+   * Create a solver
+   * @param game a Klondike game at the position to solve
+   * @param mode THOUGHTFUL or HONEST
+   * @param tableSize the number of positions the transposition table holds
+   */
+  public KlondikeSolver(final Game game, final int mode, final int tableSize) {
+    super(game, tableSize);
+    if (game.getType() != Game.SOLITAIRE) {
+      throw new IllegalArgumentException("Not a Klondike game");
+    }
+    mMode = mode;
+    mPrune = true;
+    mDealThree = ((Klondike)game).getDealThree();
+    mStride = mState.getSize();
+    mArena = new byte[MAX_DEPTH * mStride];
+    mDealsLeft = new int[MAX_DEPTH];
+    mMoves = new int[MAX_DEPTH * LEVEL_MOVES];
+    mMoveCount = new int[MAX_DEPTH];
+    mMoveIdx = new int[MAX_DEPTH];
+    mScore = new int[LEVEL_MOVES];
+    mHome = new int[4];
+    mScratch = new byte[mStride];
+    mPath = new int[256];
+  }
+
+  public int getMode() { return mMode; }
+
+  @Override
+  protected long getKey() {
+    long key = mState.getPileHash(STOCK_PILE) * 31 + mState.getPileHash(WASTE) +
+               Zobrist.mix(mGame.getRulesExtra() + 2);
+    for (int i = FOUNDATIONS; i < COLUMNS; i++) {
+      key += Zobrist.mix(mState.getPileHash(i) ^ FOUNDATION_KEY);
+    }
+    for (int i = COLUMNS; i < PILES; i++) {
+      key += Zobrist.mix(mState.getPileHash(i) ^ COLUMN_KEY);
+    }
+    return mPrune ? key : key ^ FULL_KEY;
+  }
+
+  @Override
+  protected int search() {
+    mPathLength = 0;
+    autoPlay(mGame);
+    if (mGame.isWon()) {
+      return Solution.SOLVED;
+    }
+    if (mMode == THOUGHTFUL) {
+      return searchFrom(false);
+    }
+
+    // Honest play, search to the next card turned over and commit to it
+    while (true) {
+      int status = searchFrom(true);
+      if (status != Solution.SOLVED || mGame.isWon()) {
+        return status;
+      }
+    }
+  }
+
+  /**
+   * Search from the current position, first skipping moves that rarely
+   * help, then with every move if that found nothing only for the moves
+   * skipped. The moves found are added to the path and the position left
+   * at the end of them.
+   * @param stopAtReveal stop once a face down tableau card is turned over
+   * @return SOLVED if won or a card was turned over, else why not
+   */
+  private int searchFrom(final boolean stopAtReveal) {
+    mPrune = true;
+    int status = searchPass(stopAtReveal);
+    if (status == Solution.UNKNOWN && mPruned && !mCutoff) {
+      mState.readFrom(mArena, 0);
+      mGame.setRulesExtra(mDealsLeft[0]);
+      mPrune = false;
+      status = searchPass(stopAtReveal);
+      mPrune = true;
+    }
+    return status;
+  }
+
+  /**
+   * Depth first search from the current position
+   * @param stopAtReveal stop once a face down tableau card is turned over
+   * @return SOLVED if won or a card was turned over, else why not
+   */
+  private int searchPass(final boolean stopAtReveal) {
+    mCutoff = false;
+    mPruned = false;
+    mTable.put(getKey(), 0, 0);
+    int hidden = getHiddenCount();
+    int level = 0;
+    pushLevel(level);
+
+    while (level >= 0) {
+      if (isOutOfBudget()) {
+        mCutoff = true;
+        return getBudgetStatus();
+      }
+      if (mMoveIdx[level] == mMoveCount[level]) {
+        level--;
+        continue;
+      }
+      mState.readFrom(mArena, level * mStride);
+      mGame.setRulesExtra(mDealsLeft[level]);
+      int move = mMoves[level * LEVEL_MOVES + mMoveIdx[level]++];
+      if (!play(mGame, move)) {
+        continue;
+      }
+      autoPlay(mGame);
+      mNodes++;
+
+      if (mGame.isWon() || (stopAtReveal && getHiddenCount() < hidden)) {
+        for (int i = 0; i <= level; i++) {
+          addToPath(mMoves[i * LEVEL_MOVES + mMoveIdx[i] - 1]);
+        }
+        return Solution.SOLVED;
+      }
+      long key = getKey();
+      if (mTable.probe(key) != TranspositionTable.NOT_FOUND) {
+        continue;
+      }
+      mTable.put(key, level + 1, level + 1);
+      if (level + 1 == MAX_DEPTH) {
+        mCutoff = true;
+        continue;
+      }
+      pushLevel(++level);
+    }
+    return mCutoff || mPruned ? Solution.UNKNOWN : Solution.UNSOLVABLE;
+  }
+
+  private void pushLevel(final int level) {
+    mState.writeTo(mArena, level * mStride);
+    mDealsLeft[level] = mGame.getRulesExtra();
+    mMoveCount[level] = generateMoves(mMoves, level * LEVEL_MOVES);
+    mMoveIdx[level] = 0;
+  }
+
+  private void addToPath(final int move) {
+    if (mPathLength == mPath.length) {
+      int[] path = new int[mPath.length * 2];
+      System.arraycopy(mPath, 0, path, 0, mPathLength);
+      mPath = path;
+    }
+    mPath[mPathLength++] = move;
+  }
+
+  private int getHiddenCount() {
+    int hidden = 0;
+    for (int i = COLUMNS; i < PILES; i++) {
+      hidden += mState.getHiddenCount(i);
+    }
+    return hidden;
+  }
+
+  @Override
+  protected int[] getPath() {
+    return mPath;
+  }
+
+  @Override
+  protected int getPathLength() {
+    return mPathLength;
+  }
+
+  /**
+   * Generate the moves of the current position, most promising first:
+   * foundation moves, moves turning over a card, waste to tableau,
+   * dealing to a card that goes home, other tableau moves, dealing to a
+   * card that can be built and last taking cards off a foundation
+   */
+  @Override
+  protected int generateMoves(final int[] buffer, final int off) {
+    int n = 0;
+    int emptyColumn = -1;
+    for (int i = COLUMNS; i < PILES && emptyColumn == -1; i++) {
+      if (mState.getCount(i) == 0) {
+        emptyColumn = i;
+      }
+    }
+    updateHome(mState);
+
+    for (int from = WASTE; from < PILES; from++) {
+      int movable = mGame.getMovableCount(from);
+      if (movable == 0) {
+        continue;
+      }
+      boolean foundation = from >= FOUNDATIONS && from < COLUMNS;
+      if (!foundation) {
+        int sink = mGame.findSink(from);
+        if (sink != -1) {
+          n = add(buffer, off, n, encode(from, sink, 1), 100);
+        }
+      }
+      int top = Cards.value(mState.getTop(from));
+      int hidden = mState.getHiddenCount(from);
+      for (int to = COLUMNS; to < PILES; to++) {
+        int target = mState.getTop(to);
+        if (to == from || (target == Cards.NONE && to != emptyColumn)) {
+          continue;
+        }
+        // Only one run length fits on a card, or a king on an empty column
+        int value = target == Cards.NONE ? Cards.KING + 1 : Cards.value(target);
+        int count = value - top;
+        if (count < 1 || count > movable || !mGame.canMove(from, to, count)) {
+          continue;
+        }
+        int score;
+        if (from == WASTE) {
+          score = 70;
+        } else if (foundation) {
+          // Only worth it if something can then be built on the card
+          if (canBuildOn(mState.getTop(from))) {
+            score = 10;
+          } else if (!prune()) {
+            score = 5;
+          } else {
+            continue;
+          }
+        } else if (count == mState.getVisibleCount(from) && hidden > 0) {
+          score = 80 + hidden;
+        } else if (count == mState.getCount(from)) {
+          // A king run moving between empty columns gains nothing
+          if (target == Cards.NONE) {
+            continue;
+          }
+          score = 40;
+        } else {
+          // Splitting a run is only worth it to free the card below for home
+          int below = mState.getCard(from, mState.getCount(from) - count - 1);
+          if (Cards.value(below) == mHome[Cards.suit(below)] + 1) {
+            score = 20;
+          } else if (!prune()) {
+            score = 15;
+          } else {
+            continue;
+          }
+        }
+        n = add(buffer, off, n, encode(from, to, count), score);
+      }
+    }
+    return addDeals(buffer, off, n);
+  }
+
+  /**
+   * Add dealing from the stock until a waste card that can be played
+   * turns up, as one move per such card. This skips all the positions
+   * of cycling through the stock that only differ by where the stock is.
+   */
+  private int addDeals(final int[] buffer, final int off, int n) {
+    if (mState.getCount(STOCK_PILE) == 0 &&
+        (mState.getCount(WASTE) == 0 || mGame.getRulesExtra() == 0)) {
+      return n;
+    }
+
+    // Cards that can go home or onto the tableau as it stands
+    long home = 0;
+    long build = 0;
+    for (int suit = 0; suit < 4; suit++) {
+      if (mHome[suit] < Cards.KING) {
+        home |= 1L << Cards.make(mHome[suit] + 1, suit);
+      }
+    }
+    for (int i = COLUMNS; i < PILES; i++) {
+      int top = mState.getTop(i);
+      if (top == Cards.NONE) {
+        for (int suit = 0; suit < 4; suit++) {
+          build |= 1L << Cards.make(Cards.KING, suit);
+        }
+      } else if (Cards.value(top) > Cards.ACE) {
+        for (int suit = 0; suit < 4; suit++) {
+          if ((suit & 1) != Cards.color(top)) {
+            build |= 1L << Cards.make(Cards.value(top) - 1, suit);
+          }
+        }
+      }
+    }
+
+    int dealsLeft = mGame.getRulesExtra();
+    long start = mState.getHash();
+    mState.writeTo(mScratch, 0);
+    int limit = 2 * (mState.getCount(STOCK_PILE) + mState.getCount(WASTE) + 1);
+    for (int deals = 1; deals <= limit; deals++) {
+      if (!mGame.dealStock() || mState.getHash() == start) {
+        break;
+      }
+      int card = mState.getTop(WASTE);
+      if (card == Cards.NONE) {
+        continue;
+      }
+      if (n == LEVEL_MOVES) {
+        mPruned = true;
+        break;
+      }
+      if ((home & (1L << card)) != 0) {
+        n = add(buffer, off, n, encode(STOCK, 0, deals), 60 - deals);
+      } else if ((build & (1L << card)) != 0) {
+        n = add(buffer, off, n, encode(STOCK, 0, deals), 30 - deals);
+      } else if (!prune()) {
+        n = add(buffer, off, n, encode(STOCK, 0, deals), -deals);
+      }
+    }
+    mState.readFrom(mScratch, 0);
+    mGame.setRulesExtra(dealsLeft);
+    return n;
+  }
+
+  /**
+   * Note a move that rarely helps, skipped unless searching every move
+   * @return true if the move is skipped
+   */
+  private boolean prune() {
+    if (mPrune) {
+      mPruned = true;
+    }
+    return mPrune;
+  }
+
+  /**
+   * Insert a move keeping the moves sorted by score, best first
+   */
+  private int add(final int[] buffer, final int off, final int n, final int move, final int score) {
+    int i = n;
+    while (i > 0 && mScore[i - 1] < score) {
+      buffer[off + i] = buffer[off + i - 1];
+      mScore[i] = mScore[i - 1];
+      i--;
+    }
+    buffer[off + i] = move;
+    mScore[i] = score;
+    return n + 1;
+  }
+
+  /**
+   * Move cards home that no other card can need any more. A card is
+   * safe once both foundations of the other color are at least one
+   * below it and the other foundation of its color at least two below.
+   * Dealing three, only tableau cards go, as taking a waste card changes
+   * which stock cards turn up on the next pass.
+   */
+  @Override
+  protected void autoPlay(final Game game) {
+    State state = game.getState();
+    boolean moved = true;
+    while (moved) {
+      moved = false;
+      updateHome(state);
+      for (int from = mDealThree ? COLUMNS : WASTE; from < PILES; from++) {
+        if (from >= FOUNDATIONS && from < COLUMNS) {
+          continue;
+        }
+        int card = state.getTop(from);
+        if (card == Cards.NONE || !isSafe(card)) {
+          continue;
+        }
+        int sink = game.findSink(from);
+        if (sink != -1) {
+          game.move(from, sink, 1);
+          mHome[Cards.suit(card)]++;
+          moved = true;
+        }
+      }
+    }
+  }
+
+  /**
+   * Check if a waste or tableau card could be built on a card
+   * @param card the card to build on
+   * @return true if a face up card is one lower and of the other color
+   */
+  private boolean canBuildOn(final int card) {
+    int value = Cards.value(card) - 1;
+    int color = Cards.color(card);
+    int top = mState.getTop(WASTE);
+    if (top != Cards.NONE && Cards.value(top) == value && Cards.color(top) != color) {
+      return true;
+    }
+    for (int i = COLUMNS; i < PILES; i++) {
+      for (int j = mState.getHiddenCount(i); j < mState.getCount(i); j++) {
+        int other = mState.getCard(i, j);
+        if (Cards.value(other) == value && Cards.color(other) != color) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private void updateHome(final State state) {
+    for (int i = 0; i < 4; i++) {
+      mHome[i] = 0;
+    }
+    for (int i = FOUNDATIONS; i < COLUMNS; i++) {
+      int top = state.getTop(i);
+      if (top != Cards.NONE) {
+        mHome[Cards.suit(top)] = Cards.value(top);
+      }
+    }
+  }
+
+  private boolean isSafe(final int card) {
+    int value = Cards.value(card);
+    if (value <= 2) {
+      return true;
+    }
+    int suit = Cards.suit(card);
+    for (int i = 0; i < 4; i++) {
+      if (i == suit) {
+        continue;
+      }
+      int need = (i & 1) != (suit & 1) ? value - 1 : value - 2;
+      if (mHome[i] < need) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,168 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+/**
+ * Generates every legal move of a game from the pile rules alone, with
+ * no screen geometry, as packed moves (see Solver.encode) written into a
+ * buffer supplied by the caller. Nothing is allocated per call, so the
+ * same generator can serve hints, auto play, solvers and the simulator.
+ *
+ * The moves can be ordered, see setOrder(). Subclasses can change the
+ * order by overriding rank().
+ */
+public class MoveGenerator {
+
+  // Move orders, may be combined
+  public static final int ORDER_NONE = 0;
+  public static final int ORDER_SINK_FIRST = 1;
+  public static final int ORDER_REVEAL_FIRST = 2;
+
+  // Ranks of the moves, lower comes first
+  protected static final int RANK_SINK = 0;
+  protected static final int RANK_REVEAL = 1;
+  protected static final int RANK_OTHER = 2;
+
+  private final Game mGame;
+  private final int[] mScratch;
+  private int mOrder;
+
+  /**
+   * Create a generator for a game, the moves are always those of the
+   * current position of the game
+   * @param game the game
+   */
+  public MoveGenerator(final Game game) {
+    mGame = game;
+    mScratch = new int[2 * Solver.MAX_MOVES];
+    mOrder = ORDER_NONE;
+  }
+
+  // ==========================================================================
+  // Getters and Setters
+  // -------------------
+  public Game getGame() { return mGame; }
+  public int getOrder() { return mOrder; }
+
+  public void setOrder(int order) { mOrder = order; }
+
+  /**
+   * Write every legal move of the current position into a buffer. The
+   * buffer needs room for Solver.MAX_MOVES moves after off.
+   * @param buffer array to add the packed moves to
+   * @param off index to add the first move at
+   * @return the count of moves added
+   */
+  public int generate(final int[] buffer, final int off) {
+    Game game = mGame;
+    State state = game.getState();
+    int piles = game.getPileCount();
+    int free = game.countFreeSpaces();
+    int n = off;
+    for (int from = 0; from < piles; from++) {
+      if (game.getPile(from).getKind() == Pile.DEAL_FROM) {
+        // An empty stock is a redeal, only worth a move if there is a waste to turn over
+        if (state.getCount(from) > 0 || (game.getRulesExtra() != 0 && hasWaste())) {
+          buffer[n++] = Solver.encode(Solver.STOCK, 0, 1);
+        }
+        continue;
+      }
+      int movable = game.getMovableCount(from, free);
+      if (movable == 0) {
+        continue;
+      }
+      int count = state.getCount(from);
+      // Cards are picked up before they are dropped, so emptying a pile frees it
+      int spaces = movable == count && game.isFreeSpace(from) ? free + 1 : free;
+      for (int to = 0; to < piles; to++) {
+        if (to == from) {
+          continue;
+        }
+        Pile target = game.getPile(to);
+        int top = state.getTop(to);
+        for (int run = 1; run <= movable; run++) {
+          if (target.canDrop(top, state.getCard(from, count - run), run,
+                             run == count ? spaces : free)) {
+            buffer[n++] = Solver.encode(from, to, run);
+          }
+        }
+      }
+    }
+    if (mOrder != ORDER_NONE) {
+      sort(buffer, off, n);
+    }
+    return n - off;
+  }
+
+  /**
+   * Check if a pile dealt to from the stock has cards
+   * @return true if there are cards a redeal turns back over
+   */
+  private boolean hasWaste() {
+    State state = mGame.getState();
+    for (int i = 0; i < mGame.getPileCount(); i++) {
+      if (mGame.getPile(i).getKind() == Pile.DEAL_TO && state.getCount(i) > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Rank a move for ordering, the move is legal in the current position
+   * @param move the packed move
+   * @return the rank, RANK_SINK to RANK_OTHER, lower comes first
+   */
+  protected int rank(final int move) {
+    int from = Solver.getFrom(move);
+    if (from == Solver.STOCK) {
+      return RANK_OTHER;
+    }
+    if ((mOrder & ORDER_SINK_FIRST) != 0 &&
+        mGame.getPile(Solver.getTo(move)).getKind() == Pile.SEQ_SINK) {
+      return RANK_SINK;
+    }
+    if ((mOrder & ORDER_REVEAL_FIRST) != 0) {
+      State state = mGame.getState();
+      // Moving all the face up cards turns over a card or empties the pile
+      if (Solver.getCount(move) == state.getVisibleCount(from)) {
+        return RANK_REVEAL;
+      }
+    }
+    return RANK_OTHER;
+  }
+
+  /**
+   * Stable sort of the moves by rank, ranks are few so the moves are
+   * bucketed through the scratch buffer a rank at a time
+   */
+  private void sort(final int[] buffer, final int start, final int end) {
+    int count = end - start;
+    int[] scratch = mScratch;
+    for (int i = 0; i < count; i++) {
+      scratch[i] = buffer[start + i];
+      scratch[count + i] = rank(scratch[i]);
+    }
+    int n = start;
+    for (int rank = RANK_SINK; rank <= RANK_OTHER; rank++) {
+      for (int i = 0; i < count; i++) {
+        if (scratch[count + i] == rank) {
+          buffer[n++] = scratch[i];
+        }
+      }
+    }
+  }
+}
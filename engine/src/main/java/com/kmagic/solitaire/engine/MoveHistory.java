@@ -0,0 +1,210 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+import java.util.Arrays;
+
+/**
+ * The moves of the game in play, newest on top. Each move is packed in a
+ * long, so a push allocates nothing once the array has grown and nothing
+ * is locked. A listener is told of every move pushed and popped, so the
+ * history can be journaled as it changes.
+ *
+ * A packed move holds, from the low bits up, the pile moved from, the
+ * first and last pile moved to, 8 bits each, the card count and the
+ * flags, 16 bits each. A move to a range of piles moves count cards to
+ * each of them, as dealing a row does.
+ */
+public class MoveHistory {
+
+  public static final int FLAG_INVERT = 0x0001;
+  public static final int FLAG_UNHIDE = 0x0002;
+  public static final int FLAG_ADD_DEAL_COUNT = 0x0004;
+
+  private static final int SHIFT_TO_BEGIN = 8;
+  private static final int SHIFT_TO_END = 16;
+  private static final int SHIFT_COUNT = 24;
+  private static final int SHIFT_FLAGS = 40;
+
+  /**
+   * Told of changes to the history
+   */
+  public interface Listener {
+    void onPush(long move);
+    void onPop();
+  }
+
+  private long[] mMoves;
+  private int mSize;
+  private Listener mListener;
+
+  public MoveHistory() {
+    mMoves = new long[64];
+  }
+
+  // ==========================================================================
+  // Getters and Setters
+  // -------------------
+  public void setListener(Listener listener) { mListener = listener; }
+  public int size() { return mSize; }
+  public boolean isEmpty() { return mSize == 0; }
+
+  // ==========================================================================
+  // Packed moves
+  // ------------
+
+  /**
+   * Pack a move
+   * @param from move from
+   * @param toBegin move to begin
+   * @param toEnd move to end
+   * @param count movement count
+   * @param flags movement flags
+   * @return the packed move
+   */
+  public static long pack(int from, int toBegin, int toEnd, int count, int flags) {
+    return (from & 0xFFL) |
+        (toBegin & 0xFFL) << SHIFT_TO_BEGIN |
+        (toEnd & 0xFFL) << SHIFT_TO_END |
+        (count & 0xFFFFL) << SHIFT_COUNT |
+        (flags & 0xFFFFL) << SHIFT_FLAGS;
+  }
+
+  public static int getFrom(long move) { return (int)move & 0xFF; }
+  public static int getToBegin(long move) { return (int)(move >>> SHIFT_TO_BEGIN) & 0xFF; }
+  public static int getToEnd(long move) { return (int)(move >>> SHIFT_TO_END) & 0xFF; }
+  public static int getCount(long move) { return (int)(move >>> SHIFT_COUNT) & 0xFFFF; }
+  public static int getFlags(long move) { return (int)(move >>> SHIFT_FLAGS) & 0xFFFF; }
+  public static boolean getInvert(long move) { return (getFlags(move) & FLAG_INVERT) != 0; }
+  public static boolean getUnhide(long move) { return (getFlags(move) & FLAG_UNHIDE) != 0; }
+  public static boolean getAddDealCount(long move) {
+    return (getFlags(move) & FLAG_ADD_DEAL_COUNT) != 0;
+  }
+
+  // ==========================================================================
+  // Stack
+  // -----
+
+  /**
+   * Push a move of cards to one pile
+   * @param from move from
+   * @param to move to
+   * @param count movement count
+   * @param invert invert card
+   * @param unhide un-hide card
+   */
+  public void push(int from, int to, int count, boolean invert, boolean unhide) {
+    push(from, to, count, invert, unhide, false);
+  }
+
+  /**
+   * Push a move of cards to one pile
+   * @param from move from
+   * @param to move to
+   * @param count movement count
+   * @param invert invert card
+   * @param unhide un-hide card
+   * @param addDealCount add to deal count
+   */
+  public void push(int from, int to, int count, boolean invert, boolean unhide,
+                   boolean addDealCount) {
+    int flags = (invert ? FLAG_INVERT : 0) | (unhide ? FLAG_UNHIDE : 0) |
+        (addDealCount ? FLAG_ADD_DEAL_COUNT : 0);
+    push(pack(from, to, to, count, flags));
+  }
+
+  /**
+   * Push a move of count cards to each of a range of piles
+   * @param from move from
+   * @param toBegin move to begin
+   * @param toEnd move to end
+   * @param count movement count
+   * @param invert invert card
+   * @param unhide un-hide card
+   */
+  public void push(int from, int toBegin, int toEnd, int count, boolean invert,
+                   boolean unhide) {
+    int flags = (invert ? FLAG_INVERT : 0) | (unhide ? FLAG_UNHIDE : 0);
+    push(pack(from, toBegin, toEnd, count, flags));
+  }
+
+  /**
+   * Push a packed move
+   * @param move the packed move
+   */
+  public void push(long move) {
+    if (mSize == mMoves.length) {
+      mMoves = Arrays.copyOf(mMoves, mSize * 2);
+    }
+    mMoves[mSize++] = move;
+    if (mListener != null) {
+      mListener.onPush(move);
+    }
+  }
+
+  /**
+   * Pop the newest move
+   * @return the packed move
+   */
+  public long pop() {
+    if (mSize == 0) {
+      throw new IllegalStateException("Empty history");
+    }
+    long move = mMoves[--mSize];
+    if (mListener != null) {
+      mListener.onPop();
+    }
+    return move;
+  }
+
+  /**
+   * Get the newest move
+   * @return the packed move
+   */
+  public long peek() {
+    if (mSize == 0) {
+      throw new IllegalStateException("Empty history");
+    }
+    return mMoves[mSize - 1];
+  }
+
+  /**
+   * Get a move, the oldest is 0
+   * @param index index of the move
+   * @return the packed move
+   */
+  public long get(int index) {
+    if (index < 0 || index >= mSize) {
+      throw new IndexOutOfBoundsException("Move " + index + " of " + mSize);
+    }
+    return mMoves[index];
+  }
+
+  /**
+   * Copy the moves, oldest first
+   * @return a new array of the packed moves
+   */
+  public long[] toArray() {
+    return Arrays.copyOf(mMoves, mSize);
+  }
+
+  /**
+   * Remove all moves, the listener is not told
+   */
+  public void clear() {
+    mSize = 0;
+  }
+}
@@ -0,0 +1,87 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+/**
+ * Binary min heap of node indexes ordered by an int priority, ties go to
+ * the lower node index. Entries are packed into a long array so pushing
+ * and popping never allocates.
+ */
+public class NodeQueue {
+
+  private long[] mHeap;
+  private int mSize;
+
+  /**
+   * Create a new queue
+   * @param capacity the most nodes queued at once
+   */
+  public NodeQueue(final int capacity) {
+    mHeap = new long[Math.max(capacity, 1)];
+  }
+
+  public int size() { return mSize; }
+  public boolean isEmpty() { return mSize == 0; }
+  public void clear() { mSize = 0; }
+
+  /**
+   * Queue a node
+   * @param priority the node priority, lower comes out first
+   * @param node the node index, not negative
+   */
+  public void push(final int priority, final int node) {
+    if (mSize == mHeap.length) {
+      long[] heap = new long[mHeap.length * 2];
+      System.arraycopy(mHeap, 0, heap, 0, mSize);
+      mHeap = heap;
+    }
+    long entry = ((long)priority << 32) | node;
+    int idx = mSize++;
+    while (idx > 0) {
+      int parent = (idx - 1) >> 1;
+      if (mHeap[parent] <= entry) {
+        break;
+      }
+      mHeap[idx] = mHeap[parent];
+      idx = parent;
+    }
+    mHeap[idx] = entry;
+  }
+
+  /**
+   * Take the node with the lowest priority
+   * @return the node index
+   */
+  public int pop() {
+    long top = mHeap[0];
+    long last = mHeap[--mSize];
+    int idx = 0;
+    int half = mSize >> 1;
+    while (idx < half) {
+      int child = 2 * idx + 1;
+      if (child + 1 < mSize && mHeap[child + 1] < mHeap[child]) {
+        child++;
+      }
+      if (last <= mHeap[child]) {
+        break;
+      }
+      mHeap[idx] = mHeap[child];
+      idx = child;
+    }
+    mHeap[idx] = last;
+    return (int)top;
+  }
+}
@@ -0,0 +1,316 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs any solver on all cores of a ForkJoinPool. The legal moves of the
+ * root are split into a task each, and a task splits its own moves again
+ * while the pool is short of queued work, down to getSplitDepth() moves
+ * from the root. Other tasks solve their position with a solver of the
+ * worker thread, all of them sharing one ConcurrentTranspositionTable, so
+ * a position searched under one branch is skipped under the others. The
+ * first branch to find a solution cancels all the others.
+ *
+ * The answer is UNSOLVABLE only if every branch is, and UNKNOWN if any
+ * branch ran out of budget. Solvers that commit to a line as they go,
+ * like HONEST Klondike, answer for each first move on its own.
+ */
+public class ParallelSolver {
+
+  /**
+   * Creates the solver used by a worker thread
+   */
+  public interface Factory {
+    /**
+     * Create a solver
+     * @param game the game at a position to solve, later ones are set
+     *        through Solver.setPosition()
+     * @param tableSize the size to make the solver's own transposition
+     *        table, small as the shared table replaces it
+     * @return the solver
+     */
+    Solver create(Game game, int tableSize);
+  }
+
+  // Split while fewer tasks than this are queued by the worker
+  private static final int SURPLUS = 2;
+  // Size of the table a worker's solver is made with before it shares one
+  private static final int WORKER_TABLE_SIZE = 1;
+
+  private final Game mRoot;
+  private final Factory mFactory;
+  private final ForkJoinPool mPool;
+  private final ConcurrentTranspositionTable mTable;
+
+  private int mSplitDepth;
+  private long mTimeLimit;
+
+  // State of the running search
+  private ThreadLocal<Solver> mSolver;
+  private final List<Solver> mSolvers;
+  private final AtomicLong mNodes;
+  private long mDeadline;
+  private volatile boolean mDone;
+  private volatile boolean mUnknown;
+  private volatile boolean mCancelled;
+  private long[] mMoves;
+
+  /**
+   * Create a driver on a pool with a worker for every core
+   * @param game the game at the position to solve, it is copied
+   * @param factory creates the solver of each worker
+   * @param tableSize the number of positions the shared table holds
+   */
+  public ParallelSolver(final Game game, final Factory factory, final int tableSize) {
+    this(game, factory, tableSize, DefaultPool.POOL);
+  }
+
+  /**
+   * Create a driver
+   * @param game the game at the position to solve, it is copied
+   * @param factory creates the solver of each worker
+   * @param tableSize the number of positions the shared table holds
+   * @param pool the pool to search on
+   */
+  public ParallelSolver(final Game game,
+                        final Factory factory,
+                        final int tableSize,
+                        final ForkJoinPool pool) {
+    mRoot = game.copy();
+    mFactory = factory;
+    mPool = pool;
+    mTable = new ConcurrentTranspositionTable(tableSize);
+    mSplitDepth = 3;
+    mSolvers = new ArrayList<>();
+    mNodes = new AtomicLong();
+  }
+
+  // ==========================================================================
+  // Getters and Setters
+  // -------------------
+  public Game getGame() { return mRoot; }
+  public ForkJoinPool getPool() { return mPool; }
+  public TranspositionTable getTable() { return mTable; }
+  public int getSplitDepth() { return mSplitDepth; }
+  public long getTimeLimit() { return mTimeLimit; }
+  public boolean isCancelled() { return mCancelled; }
+
+  /**
+   * Set how deep tasks may split their moves into more tasks
+   * @param splitDepth most moves from the root, at least 1
+   */
+  public void setSplitDepth(int splitDepth) { mSplitDepth = Math.max(splitDepth, 1); }
+
+  /**
+   * Set the time budget of the whole search
+   * @param timeLimit the time limit in milliseconds, 0 for none
+   */
+  public void setTimeLimit(long timeLimit) { mTimeLimit = timeLimit; }
+
+  /**
+   * Stop a running search, solve() returns CANCELLED. The cancel holds
+   * until the next solve() starts.
+   */
+  public void cancel() {
+    mCancelled = true;
+    stop();
+  }
+
+  // ==========================================================================
+  // Searching
+  // ---------
+
+  /**
+   * Search for a solution on the pool, waiting for the answer
+   * @return the solution, or why there is none
+   */
+  public Solution solve() {
+    long start = System.nanoTime();
+    mDeadline = mTimeLimit > 0 ? start + mTimeLimit * 1000000L : 0;
+    mSolver = new ThreadLocal<>();
+    synchronized (mSolvers) {
+      mSolvers.clear();
+    }
+    mNodes.set(0);
+    mTable.clear();
+    mTable.newGeneration();
+    // In this order, a cancel() from now on stops the search
+    mDone = false;
+    mCancelled = false;
+    mUnknown = false;
+    mMoves = null;
+
+    mPool.invoke(new Branch(mRoot.copy(), new int[0]));
+
+    int status;
+    if (mMoves != null) {
+      status = Solution.SOLVED;
+    } else if (mCancelled) {
+      status = Solution.CANCELLED;
+    } else {
+      status = mUnknown ? Solution.UNKNOWN : Solution.UNSOLVABLE;
+    }
+    return new Solution(status, mMoves, mNodes.get(), System.nanoTime() - start, mTable.getCount());
+  }
+
+  /**
+   * Get the solver of the current worker thread, set to a position
+   */
+  private Solver getSolver(final Game game) {
+    Solver solver = mSolver.get();
+    if (solver == null) {
+      solver = mFactory.create(game, WORKER_TABLE_SIZE);
+      solver.shareTable(mTable);
+      mSolver.set(solver);
+      synchronized (mSolvers) {
+        mSolvers.add(solver);
+      }
+      // A solver made after stop() would miss the cancel
+      if (mDone) {
+        solver.cancel();
+      }
+    } else {
+      solver.setPosition(game);
+    }
+    return solver;
+  }
+
+  /**
+   * Record a solution if it is the first one and stop all other branches
+   * @param path packed moves from the root to the position solved
+   * @param solution the solution of that position, null if won by the path
+   */
+  private synchronized void found(final Solver solver, final int[] path, final Solution solution) {
+    if (mMoves != null || mCancelled) {
+      return;
+    }
+    Game game = mRoot.copy();
+    game.setRecordHistory(true);
+    solver.autoPlay(game);
+    for (int move : path) {
+      Solver.play(game, move);
+      solver.autoPlay(game);
+    }
+    MoveHistory moves = game.getMoveHistory();
+    if (solution != null) {
+      for (int i = 0; i < solution.getMoveCount(); i++) {
+        moves.push(solution.getMove(i));
+      }
+    }
+    mMoves = moves.toArray();
+    stop();
+  }
+
+  private void stop() {
+    mDone = true;
+    synchronized (mSolvers) {
+      for (Solver solver : mSolvers) {
+        solver.cancel();
+      }
+    }
+  }
+
+  private long getTimeLeft() {
+    if (mDeadline == 0) {
+      return 0;
+    }
+    // Never 0, that would mean no limit
+    return Math.max((mDeadline - System.nanoTime()) / 1000000L, 1);
+  }
+
+  /**
+   * Search of the position reached by a path of moves from the root
+   */
+  private class Branch extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Game mGame;
+    private final int[] mPath;
+
+    Branch(final Game game, final int[] path) {
+      mGame = game;
+      mPath = path;
+    }
+
+    @Override
+    protected void compute() {
+      if (mDone) {
+        return;
+      }
+      Solver solver = getSolver(mGame);
+      int depth = mPath.length;
+      if (depth == 0 || (depth < mSplitDepth && getSurplusQueuedTaskCount() < SURPLUS)) {
+        split(solver);
+        return;
+      }
+      solver.setRootDepth(depth);
+      solver.setTimeLimit(getTimeLeft());
+      // Worker solvers are new each search, stop() may cancel them early
+      Solution solution = solver.solveUnlessCancelled();
+      mNodes.addAndGet(solution.getNodes());
+      if (solution.isSolved()) {
+        found(solver, mPath, solution);
+      } else if (solution.getStatus() != Solution.UNSOLVABLE) {
+        mUnknown = true;
+      }
+    }
+
+    /**
+     * Fork a branch for every move of the position
+     */
+    private void split(final Solver solver) {
+      int[] moves = new int[Solver.MAX_MOVES];
+      int count = solver.expand(mGame, moves);
+      if (mGame.isWon()) {
+        found(solver, mPath, null);
+        return;
+      }
+      List<Branch> branches = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        Game child = mGame.copy();
+        child.setRecordHistory(false);
+        if (!Solver.play(child, moves[i])) {
+          continue;
+        }
+        solver.autoPlay(child);
+        mNodes.incrementAndGet();
+        int[] path = new int[mPath.length + 1];
+        System.arraycopy(mPath, 0, path, 0, mPath.length);
+        path[mPath.length] = moves[i];
+        if (child.isWon()) {
+          found(solver, path, null);
+          return;
+        }
+        branches.add(new Branch(child, path));
+      }
+      invokeAll(branches);
+    }
+  }
+
+  /**
+   * Pool used unless one is given, made on first use
+   */
+  private static class DefaultPool {
+    static final ForkJoinPool POOL = new ForkJoinPool();
+  }
+}
@@ -0,0 +1,425 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+/**
+ * Rules of a single pile (anchor) of cards. A pile holds no cards
+ * itself, the cards live in a State, so the same pile rules can be
+ * evaluated against any number of positions.
+ *
+ * The rules are compiled into tables whenever they change, one mask of
+ * 52 card bits per card code: the cards that may be built or dropped on
+ * it, and the cards that move together with it, so checking a pair of
+ * cards is a single lookup. Masks for building on an empty pile are
+ * kept at index 0, the card codes at code + 1.
+ */
+public class Pile {
+
+  // Pile kinds, one per anchor type of the app
+  public static final int SEQ_SINK = 1;
+  public static final int SUIT_SEQ_STACK = 2;
+  public static final int DEAL_FROM = 3;
+  public static final int DEAL_TO = 4;
+  public static final int SPIDER_STACK = 5;
+  public static final int FREECELL_STACK = 6;
+  public static final int FREECELL_HOLD = 7;
+  public static final int GENERIC = 8;
+
+  //Sequence start values
+  public static final int START_ANY=1; // An empty stack can take any card.
+  public static final int START_KING=2; // An empty stack can take only a king.
+
+  //Value Sequences
+  public static final int SEQ_ANY=1; //You can build as you like
+  public static final int SEQ_SEQ=2;  //Building only allows sequential
+  public static final int SEQ_ASC=3;  //Ascending only
+  public static final int SEQ_DSC=4;  //Descending only
+
+  //Suit Sequences that limits how adding cards to the stack works
+  public static final int SUIT_ANY=1;  //Build doesn't care about suite
+  public static final int SUIT_RB=2;  //Must alternate Red & Black
+  public static final int SUIT_OTHER=3;//As long as different
+  public static final int SUIT_COLOR=4;//As long as same color
+  public static final int SUIT_SAME=5; //As long as same suit
+
+  //Pickup & Dropoff Behavior
+  public static final int PACK_NONE=1;  // Interaction in this mode not allowed
+  public static final int PACK_ONE=2;  //Can only accept 1 card
+  public static final int PACK_MULTI=3;  //Can accept multiple cards
+  public static final int PACK_FIXED=4;  //Don't think this will ever be used
+  public static final int PACK_LIMIT_BY_FREE=5; //For freecell style movement
+
+  //Anchor Display (Hidden vs. Shown faces)
+  public static final int DISPLAY_ALL=1;  //All cards are shown
+  public static final int DISPLAY_HIDE=2; //All cards are hidden
+  public static final int DISPLAY_MIX=3;  //Uses a mixture
+  public static final int DISPLAY_ONE=4;  //Displays one only
+
+  //Hack to fix Spider Dealing
+  public static final int DEALHACK=1;
+
+  private final int mKind;
+  private int mStartSeq;
+  private int mBuildSeq;
+  private int mMoveSeq;
+  private int mBuildSuit;
+  private int mMoveSuit;
+  private boolean mBuildWrap;
+  private boolean mMoveWrap;
+  private int mDropoff;
+  private int mPickup;
+  private int mDisplay;
+  private int mHack;
+
+  // Compiled rules, see compile()
+  private final long[] mBuildTable;
+  private final long[] mDropTable;
+  private final long[] mLinkTable;
+  private int mDropLimit;
+
+  /**
+   * Create a new pile
+   * @param kind the pile kind
+   */
+  public Pile(final int kind) {
+    mKind = kind;
+    mStartSeq = START_ANY;
+    mBuildSeq = SEQ_ANY;
+    mMoveSeq = SEQ_ANY;
+    mBuildSuit = SUIT_ANY;
+    mMoveSuit = SUIT_ANY;
+    mBuildWrap = false;
+    mMoveWrap = false;
+    mDropoff = PACK_NONE;
+    mPickup = PACK_NONE;
+    mDisplay = DISPLAY_ALL;
+    mHack = 0;
+    mBuildTable = new long[Cards.DECK_SIZE + 1];
+    mDropTable = new long[Cards.DECK_SIZE + 1];
+    mLinkTable = new long[Cards.DECK_SIZE];
+    compile();
+  }
+
+  // ==========================================================================
+  // Getters and Setters
+  // -------------------
+  public int getKind() { return mKind; }
+  public int getDisplay() { return mDisplay; }
+  public int getHack() { return mHack; }
+
+  public void setStartSeq(int seq){ mStartSeq = seq; compile(); }
+  public void setBuildSeq(int buildseq){ mBuildSeq = buildseq; compile(); }
+  public void setMoveSeq(int moveseq){ mMoveSeq = moveseq; compile(); }
+
+  public void setWrap(boolean wrap){ mBuildWrap = wrap; mMoveWrap = wrap; compile(); }
+  public void setBuildWrap(boolean buildwrap){ mBuildWrap = buildwrap; compile(); }
+
+  public void setSuit(int suit){ mBuildSuit = suit; mMoveSuit = suit; compile(); }
+  public void setBuildSuit(int buildsuit){ mBuildSuit = buildsuit; compile(); }
+  public void setMoveSuit(int movesuit){ mMoveSuit = movesuit; compile(); }
+
+  public void setBehavior(int beh){ mDropoff = beh; mPickup = beh; compile(); }
+  public void setDropoff(int dropoff){ mDropoff = dropoff; compile(); }
+  public void setPickup(int pickup){ mPickup = pickup; }
+
+  public void setDisplay(int display){ mDisplay = display; }
+
+  public void setHack(int hack){ mHack = hack; }
+
+  /**
+   * Can cards be dealt or moved off this pile by the player
+   * @return true if cards can be picked up, false if not
+   */
+  public boolean canPickup() {
+    switch (mKind) {
+      case DEAL_FROM:
+        return false;
+      case GENERIC:
+        return mPickup != PACK_NONE;
+      default:
+        return true;
+    }
+  }
+
+  /**
+   * Check if a card may be built on top of another, GENERIC piles only
+   * @param top the card on top of the pile, Cards.NONE if empty
+   * @param card the card to build
+   * @return true if the card may be built, false if not
+   */
+  public boolean canBuild(final int top, final int card) {
+    return ((mBuildTable[top + 1] >>> card) & 1) != 0;
+  }
+
+  /**
+   * Check if cards may be dropped on this pile
+   * @param top the card on top of the pile, Cards.NONE if empty
+   * @param card the bottom card of the cards being dropped
+   * @param count the count of cards being dropped
+   * @param free the free spaces, counting this pile if it is empty
+   * @return true if the cards may be dropped, false if not
+   */
+  public boolean canDrop(final int top,
+                         final int card,
+                         final int count,
+                         final int free) {
+    // Only an empty Freecell column limits the count by the free spaces
+    int limit = mKind == FREECELL_STACK && top == Cards.NONE ? free : mDropLimit;
+    return ((mDropTable[top + 1] >>> card) & 1) != 0 && count <= limit;
+  }
+
+  /**
+   * Check if two adjacent cards can be moved together
+   * @param below the card lower in the pile
+   * @param above the card directly on top of it
+   * @return true if the cards form part of a movable run, false if not
+   */
+  public boolean isLink(final int below, final int above) {
+    return ((mLinkTable[below] >>> above) & 1) != 0;
+  }
+
+  /**
+   * Build the rule tables from the current rules
+   */
+  private void compile() {
+    mDropLimit = mKind == SEQ_SINK || mKind == FREECELL_HOLD ? 1 : Integer.MAX_VALUE;
+    for (int top = Cards.NONE; top < Cards.DECK_SIZE; top++) {
+      long build = 0;
+      long drop = 0;
+      long link = 0;
+      for (int card = 0; card < Cards.DECK_SIZE; card++) {
+        if (evaluateBuild(top, card)) {
+          build |= 1L << card;
+        }
+        if (evaluateDrop(top, card)) {
+          drop |= 1L << card;
+        }
+        if (top != Cards.NONE && evaluateLink(top, card)) {
+          link |= 1L << card;
+        }
+      }
+      mBuildTable[top + 1] = build;
+      mDropTable[top + 1] = drop;
+      if (top != Cards.NONE) {
+        mLinkTable[top] = link;
+      }
+    }
+  }
+
+  private boolean evaluateBuild(final int top, final int card) {
+    // SEQ_ANY will allow all
+    if (mBuildSeq == SEQ_ANY) {
+      return true;
+    }
+    // Rules for empty stacks
+    if (top == Cards.NONE) {
+      switch (mStartSeq) {
+        case START_KING:
+          return Cards.value(card) == Cards.KING;
+        case START_ANY:
+        default:
+          return true;
+      }
+    }
+    int value = Cards.value(card);
+    int suit = Cards.suit(card);
+    int tvalue = Cards.value(top);
+    int tsuit = Cards.suit(top);
+    // Fail if sequence is wrong
+    switch (mBuildSeq) {
+      case SEQ_ASC:
+        if (value - tvalue != 1) {
+          return false;
+        }
+        break;
+      case SEQ_DSC:
+        if (tvalue - value != 1) {
+          return false;
+        }
+        break;
+      case SEQ_SEQ:
+        if (Math.abs(tvalue - value) != 1) {
+          return false;
+        }
+        break;
+    }
+    // Fail if suit is wrong
+    switch (mBuildSuit) {
+      case SUIT_RB:
+        if (Math.abs(tsuit - suit)%2 == 0) { return false; }
+        break;
+      case SUIT_OTHER:
+        if (tsuit == suit) { return false; }
+        break;
+      case SUIT_COLOR:
+        if (Math.abs(tsuit - suit) != 2) { return false; }
+        break;
+      case SUIT_SAME:
+        if (tsuit != suit) { return false; }
+        break;
+    }
+    // Passes all rules
+    return true;
+  }
+
+  /**
+   * Check if a card may go on top of another by the kind of pile, the
+   * count of cards is checked against mDropLimit
+   */
+  private boolean evaluateDrop(final int top, final int card) {
+    switch (mKind) {
+      case SEQ_SINK:
+        return (top == Cards.NONE && Cards.value(card) == Cards.ACE) ||
+               (top != Cards.NONE && Cards.suit(card) == Cards.suit(top) &&
+                Cards.value(card) == Cards.value(top) + 1);
+      case SUIT_SEQ_STACK:
+        if (top == Cards.NONE) {
+          return Cards.value(card) == Cards.KING;
+        }
+        return Cards.color(card) != Cards.color(top) &&
+               Cards.value(card) == Cards.value(top) - 1;
+      case SPIDER_STACK:
+        return top == Cards.NONE || Cards.value(card) == Cards.value(top) - 1;
+      case FREECELL_STACK:
+        if (top == Cards.NONE) {
+          return true;
+        }
+        return Cards.color(card) != Cards.color(top) &&
+               Cards.value(card) == Cards.value(top) - 1;
+      case FREECELL_HOLD:
+        return top == Cards.NONE;
+      case GENERIC:
+        return mDropoff != PACK_NONE && evaluateBuild(top, card);
+      default:
+        return false;
+    }
+  }
+
+  private boolean evaluateLink(final int below, final int above) {
+    switch (mKind) {
+      case SUIT_SEQ_STACK:
+        return true;
+      case SPIDER_STACK:
+        return Cards.suit(below) == Cards.suit(above) &&
+               Cards.value(below) == Cards.value(above) + 1;
+      case FREECELL_STACK:
+        return Cards.color(below) != Cards.color(above) &&
+               Cards.value(below) == Cards.value(above) + 1;
+      case GENERIC:
+        break;
+      default:
+        return false;
+    }
+
+    switch (mMoveSeq) {
+      case SEQ_ASC:
+        if (!isSeqAsc(below, above, mMoveWrap)) {
+          return false;
+        }
+        break;
+      case SEQ_DSC:
+        if (!isSeqAsc(above, below, mMoveWrap)) {
+          return false;
+        }
+        break;
+      case SEQ_SEQ:
+        if (!isSeqAsc(above, below, mMoveWrap) &&
+            !isSeqAsc(below, above, mMoveWrap)) {
+          return false;
+        }
+        break;
+    }
+    switch (mMoveSuit) {
+      case SUIT_COLOR:
+        return Cards.color(below) == Cards.color(above);
+      case SUIT_OTHER:
+        return Cards.suit(below) != Cards.suit(above);
+      case SUIT_RB:
+        return Cards.color(below) != Cards.color(above);
+      case SUIT_SAME:
+        return Cards.suit(below) == Cards.suit(above);
+      default:
+        return true;
+    }
+  }
+
+  /**
+   * Limit the length of a run by the pickup behavior of the pile
+   * @param run the length of the run on top of the pile
+   * @param free the free spaces
+   * @return the count of cards that may be picked up
+   */
+  public int limitRun(final int run, final int free) {
+    switch (mKind) {
+      case DEAL_FROM:
+        return 0;
+      case FREECELL_STACK:
+        return Math.min(free + 1, run);
+      case GENERIC:
+        break;
+      default:
+        return run;
+    }
+    switch (mPickup) {
+      case PACK_NONE:
+        return 0;
+      case PACK_ONE:
+        return Math.min(1, run);
+      case PACK_LIMIT_BY_FREE:
+        return Math.min(free + 1, run);
+      case PACK_MULTI:
+      case PACK_FIXED:
+      default:
+        return run;
+    }
+  }
+
+  /**
+   * Get the count of cards that can be moved off a pile
+   * @param state the position, keeping the runs by the rules of this pile
+   * @param pile the index of this pile in the state
+   * @param free the free spaces
+   * @return the count of movable cards
+   */
+  public int getMovableCount(final State state, final int pile, final int free) {
+    if (state.getVisibleCount(pile) <= 0 || !canPickup()) {
+      return 0;
+    }
+    switch (mKind) {
+      case SEQ_SINK:
+      case DEAL_TO:
+      case FREECELL_HOLD:
+        return 1;
+    }
+    return limitRun(state.getRun(pile), free);
+  }
+
+  /**
+   * Is c1 directly above c2 in value
+   * @param c1 first card
+   * @param c2 second card
+   * @param wrap true if an ace is above a king
+   * @return true if c1 is one higher than c2
+   */
+  private static boolean isSeqAsc(final int c1, final int c2, final boolean wrap) {
+    int v1 = Cards.value(c1);
+    int v2 = Cards.value(c2);
+    if (v2 + 1 == v1) {
+      return true;
+    }
+    return wrap && v2 == Cards.KING && v1 == Cards.ACE;
+  }
+}
@@ -0,0 +1,345 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Command line Monte Carlo simulator. Plays a range of seeded deals of
+ * every configuration asked for with an automated Strategy, on all cores,
+ * and prints the win rate with its 95% confidence interval, the mean
+ * moves played and the games played per second per core.
+ *
+ * Cards are auto moved home as the auto move level asks, with
+ * AUTO_MOVE_ALWAYS after every move, with AUTO_MOVE_FLING_ONLY only
+ * after the player flings a card home. The simulated player flings a
+ * card it sends home, rather than dragging it, at the fling rate given.
+ */
+public class Simulator {
+
+  // Deals played by a task without splitting
+  private static final int CHUNK = 64;
+
+  private static final double Z95 = 1.959964;
+
+  private final String mStrategy;
+  private final long mSeed;
+  private final int mMaxMoves;
+  private final int mFlingPercent;
+  private final ForkJoinPool mPool;
+
+  /**
+   * Create a simulator
+   * @param strategy name of the strategy, see Strategy.create()
+   * @param seed seed the deal numbers are made from
+   * @param maxMoves moves played before a game counts as lost
+   * @param flingPercent chance in percent the player flings a card it sends home
+   * @param threads worker threads
+   */
+  public Simulator(final String strategy,
+                   final long seed,
+                   final int maxMoves,
+                   final int flingPercent,
+                   final int threads) {
+    mStrategy = strategy;
+    mSeed = seed;
+    mMaxMoves = maxMoves;
+    mFlingPercent = flingPercent;
+    mPool = new ForkJoinPool(threads);
+  }
+
+  public int getThreads() { return mPool.getParallelism(); }
+
+  /**
+   * Play deals of a configuration
+   * @param type the game type
+   * @param options the rule options and auto move level
+   * @param deals the count of deals
+   * @return the totals
+   */
+  public Tally run(final int type, final GameOptions options, final int deals) {
+    long start = System.nanoTime();
+    Tally tally = mPool.invoke(new Batch(type, options, 0, deals));
+    tally.mElapsed = System.nanoTime() - start;
+    return tally;
+  }
+
+  /**
+   * Play one deal to the end
+   * @return moves played, negative if lost
+   */
+  private int play(final Game game, final Strategy strategy, final int autoMove, final long deal) {
+    game.deal(game.newDealNumber(Zobrist.mix(mSeed + deal)));
+    strategy.reset(game);
+    SplitMix random = new SplitMix(mSeed ^ Zobrist.mix(deal));
+    // Flings are drawn apart so every auto move level plays the same deals alike
+    SplitMix flings = new SplitMix(mSeed ^ Zobrist.mix(~deal));
+    int moves = 0;
+    while (!game.isWon()) {
+      int move = moves < mMaxMoves ? strategy.nextMove(game, random) : Strategy.NONE;
+      if (move == Strategy.NONE) {
+        return -moves - 1;
+      }
+      Solver.play(game, move);
+      moves++;
+      // Only a card sent home can be flung
+      boolean home = Solver.getFrom(move) != Solver.STOCK &&
+                     game.getPile(Solver.getTo(move)).getKind() == Pile.SEQ_SINK;
+      boolean fling = home && flings.nextInt(100) < mFlingPercent;
+      if (autoMove == GameOptions.AUTO_MOVE_ALWAYS ||
+          (autoMove == GameOptions.AUTO_MOVE_FLING_ONLY && fling)) {
+        moves += game.autoMove();
+      }
+    }
+    return moves;
+  }
+
+  /**
+   * Totals of a run
+   */
+  public static class Tally {
+    private long mGames;
+    private long mWins;
+    private long mMoves;
+    private long mElapsed;
+
+    public long getGames() { return mGames; }
+    public long getWins() { return mWins; }
+    public long getElapsedNanos() { return mElapsed; }
+    public double getWinRate() { return mGames > 0 ? (double)mWins / mGames : 0; }
+    public double getMeanMoves() { return mGames > 0 ? (double)mMoves / mGames : 0; }
+
+    /**
+     * Get the Wilson score interval of the win rate
+     * @param low true for the lower bound, false for the upper
+     * @return the bound
+     */
+    public double getWinRateBound(final boolean low) {
+      if (mGames == 0) {
+        return low ? 0 : 1;
+      }
+      double p = getWinRate();
+      double z2 = Z95 * Z95 / mGames;
+      double center = p + z2 / 2;
+      double half = Z95 * Math.sqrt(p * (1 - p) / mGames + z2 / (4 * mGames));
+      return (low ? center - half : center + half) / (1 + z2);
+    }
+
+    /**
+     * Get the speed of the run
+     * @return games per second
+     */
+    public double getGamesPerSecond() {
+      return mElapsed > 0 ? mGames * 1e9 / mElapsed : 0;
+    }
+
+    private void add(final Tally tally) {
+      mGames += tally.mGames;
+      mWins += tally.mWins;
+      mMoves += tally.mMoves;
+    }
+  }
+
+  /**
+   * Plays a range of deals, splitting it while it is large
+   */
+  private class Batch extends RecursiveTask<Tally> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int mType;
+    private final GameOptions mOptions;
+    private final int mFirst;
+    private final int mEnd;
+
+    Batch(final int type, final GameOptions options, final int first, final int end) {
+      mType = type;
+      mOptions = options;
+      mFirst = first;
+      mEnd = end;
+    }
+
+    @Override
+    protected Tally compute() {
+      if (mEnd - mFirst > CHUNK) {
+        int mid = (mFirst + mEnd) >>> 1;
+        Batch left = new Batch(mType, mOptions, mFirst, mid);
+        left.fork();
+        Tally tally = new Batch(mType, mOptions, mid, mEnd).compute();
+        tally.add(left.join());
+        return tally;
+      }
+      Tally tally = new Tally();
+      Game game = Game.create(mType, mOptions);
+      game.setRecordHistory(false);
+      Strategy strategy = Strategy.create(mStrategy);
+      for (int deal = mFirst; deal < mEnd; deal++) {
+        int moves = play(game, strategy, mOptions.getAutoMoveLevel(), deal);
+        tally.mGames++;
+        if (moves >= 0) {
+          tally.mWins++;
+        } else {
+          moves = -moves - 1;
+        }
+        tally.mMoves += moves;
+      }
+      return tally;
+    }
+  }
+
+  // ==========================================================================
+  // Command line
+  // ------------
+
+  /**
+   * Run from the command line
+   * @param args options, see usage()
+   */
+  public static void main(final String[] args) {
+    String game = "all";
+    String strategy = "greedy";
+    int deals = 10000;
+    long seed = 1;
+    int maxMoves = 1000;
+    int flingPercent = 50;
+    int threads = Runtime.getRuntime().availableProcessors();
+    try {
+      for (int i = 0; i < args.length; i++) {
+        String arg = args[i];
+        if (i + 1 == args.length) {
+          usage();
+          return;
+        }
+        String value = args[++i];
+        if ("--game".equals(arg)) {
+          game = value;
+        } else if ("--strategy".equals(arg)) {
+          strategy = value;
+        } else if ("--deals".equals(arg)) {
+          deals = Integer.parseInt(value);
+        } else if ("--seed".equals(arg)) {
+          seed = Long.parseLong(value);
+        } else if ("--max-moves".equals(arg)) {
+          maxMoves = Integer.parseInt(value);
+        } else if ("--fling".equals(arg)) {
+          flingPercent = Integer.parseInt(value);
+        } else if ("--threads".equals(arg)) {
+          threads = Integer.parseInt(value);
+        } else {
+          usage();
+          return;
+        }
+      }
+    } catch (NumberFormatException e) {
+      usage();
+      return;
+    }
+    if (Strategy.create(strategy) == null || deals < 1 || threads < 1 ||
+        flingPercent < 0 || flingPercent > 100) {
+      usage();
+      return;
+    }
+
+    List<Integer> types = new ArrayList<>();
+    List<GameOptions> configs = new ArrayList<>();
+    addConfigs(game, types, configs);
+    if (configs.isEmpty()) {
+      usage();
+      return;
+    }
+
+    Simulator simulator = new Simulator(strategy, seed, maxMoves, flingPercent, threads);
+    System.out.println("strategy=" + strategy + " deals=" + deals + " seed=" + seed +
+                       " fling=" + flingPercent + "% threads=" + simulator.getThreads());
+    for (int i = 0; i < configs.size(); i++) {
+      GameOptions options = configs.get(i);
+      Tally tally = simulator.run(types.get(i), options, deals);
+      System.out.println(String.format(Locale.US,
+          "%-42s win=%.4f ci95=[%.4f,%.4f] moves=%.1f games/s=%.0f games/s/core=%.0f",
+          describe(types.get(i), options), tally.getWinRate(),
+          tally.getWinRateBound(true), tally.getWinRateBound(false), tally.getMeanMoves(),
+          tally.getGamesPerSecond(), tally.getGamesPerSecond() / simulator.getThreads()));
+    }
+    simulator.mPool.shutdown();
+  }
+
+  /**
+   * Add every option set of the games asked for
+   */
+  private static void addConfigs(final String game, final List<Integer> types, final List<GameOptions> configs) {
+    boolean all = "all".equals(game);
+    for (int autoMove = GameOptions.AUTO_MOVE_NEVER; autoMove <= GameOptions.AUTO_MOVE_ALWAYS; autoMove++) {
+      if (all || "klondike".equals(game)) {
+        for (int dealThree = 0; dealThree < 2; dealThree++) {
+          for (int styleNormal = 0; styleNormal < 2; styleNormal++) {
+            GameOptions options = new GameOptions();
+            options.setDealThree(dealThree == 1);
+            options.setStyleNormal(styleNormal == 1);
+            options.setAutoMoveLevel(autoMove);
+            types.add(Game.SOLITAIRE);
+            configs.add(options);
+          }
+        }
+      }
+      if (all || "freecell".equals(game)) {
+        GameOptions options = new GameOptions();
+        options.setAutoMoveLevel(autoMove);
+        types.add(Game.FREECELL);
+        configs.add(options);
+      }
+      if (all || "fortythieves".equals(game)) {
+        GameOptions options = new GameOptions();
+        options.setAutoMoveLevel(autoMove);
+        types.add(Game.FORTYTHIEVES);
+        configs.add(options);
+      }
+    }
+    // Spider has no auto move, completed runs always go
+    if (all || "spider".equals(game)) {
+      for (int suits = 1; suits <= 4; suits *= 2) {
+        GameOptions options = new GameOptions();
+        options.setSpiderSuits(suits);
+        types.add(Game.SPIDER);
+        configs.add(options);
+      }
+    }
+  }
+
+  private static String describe(final int type, final GameOptions options) {
+    switch (type) {
+      case Game.SOLITAIRE:
+        return "Klondike dealThree=" + options.getDealThree() +
+               " styleNormal=" + options.getStyleNormal() +
+               " autoMove=" + options.getAutoMoveLevel();
+      case Game.SPIDER:
+        return "Spider suits=" + options.getSpiderSuits();
+      case Game.FREECELL:
+        return "Freecell autoMove=" + options.getAutoMoveLevel();
+      default:
+        return "FortyThieves autoMove=" + options.getAutoMoveLevel();
+    }
+  }
+
+  private static void usage() {
+    System.err.println("usage: Simulator [--game all|klondike|spider|freecell|fortythieves]\n" +
+                       "                 [--strategy greedy|random] [--deals N] [--seed S]\n" +
+                       "                 [--max-moves M] [--fling PERCENT] [--threads T]");
+  }
+}
@@ -0,0 +1,101 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+/**
+ * Result of a solver run, the moves that win the game if one was found
+ * and how much searching it took
+ */
+public class Solution {
+
+  public static final int SOLVED = 1;
+  public static final int UNSOLVABLE = 2;
+  // The node, memory or time budget ran out before an answer was found,
+  // or the search skipped moves so it cannot rule a win out
+  public static final int UNKNOWN = 3;
+  public static final int CANCELLED = 4;
+
+  private final int mStatus;
+  private final long[] mMoves;
+  private final long mNodes;
+  private final long mElapsed;
+  private final int mPeakTableCount;
+
+  /**
+   * Create a new solution
+   * @param status one of SOLVED, UNSOLVABLE, UNKNOWN or CANCELLED
+   * @param moves the winning moves packed as in MoveHistory, null unless solved
+   * @param nodes count of positions searched
+   * @param elapsed time taken in nanoseconds
+   * @param peakTableCount most positions held in the transposition table
+   */
+  public Solution(final int status,
+                  final long[] moves,
+                  final long nodes,
+                  final long elapsed,
+                  final int peakTableCount) {
+    mStatus = status;
+    mMoves = moves == null ? new long[0] : moves;
+    mNodes = nodes;
+    mElapsed = elapsed;
+    mPeakTableCount = peakTableCount;
+  }
+
+  // ==========================================================================
+  // Getters and Setters
+  // -------------------
+  public int getStatus() { return mStatus; }
+  public boolean isSolved() { return mStatus == SOLVED; }
+  public int getMoveCount() { return mMoves.length; }
+  public long getMove(int index) { return mMoves[index]; }
+  public long getNodes() { return mNodes; }
+  public long getElapsedNanos() { return mElapsed; }
+  public long getElapsedMillis() { return mElapsed / 1000000; }
+  public int getPeakTableCount() { return mPeakTableCount; }
+
+  /**
+   * Get the search speed
+   * @return positions searched per second
+   */
+  public long getNodesPerSecond() {
+    return mElapsed > 0 ? mNodes * 1000000000L / mElapsed : 0;
+  }
+
+  /**
+   * Get a name for a status
+   * @param status the status
+   * @return the status name
+   */
+  public static String getStatusString(final int status) {
+    switch (status) {
+      case SOLVED:
+        return "solved";
+      case UNSOLVABLE:
+        return "unsolvable";
+      case CANCELLED:
+        return "cancelled";
+      default:
+        return "unknown";
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getStatusString(mStatus) + " moves=" + mMoves.length + " nodes=" + mNodes +
+           " ms=" + getElapsedMillis() + " nodes/s=" + getNodesPerSecond() +
+           " table=" + mPeakTableCount;
+  }
+}
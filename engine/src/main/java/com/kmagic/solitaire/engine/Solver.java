@@ -0,0 +1,308 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+/**
+ * Base of the game solvers. A solver searches from a copy of a game
+ * position, within a node and time budget, for moves that win it.
+ *
+ * Moves are packed into an int while searching, count << 16 | to << 8 |
+ * from, with from set to STOCK for dealing count times from the stock.
+ * Only the moves picked by the search are played again at the end to
+ * record the MoveHistory moves of the solution. After every searched
+ * move autoPlay() gets to play forced moves, and is repeated the same
+ * way when the solution is built.
+ */
+public abstract class Solver {
+
+  // From pile of a deal from the stock
+  public static final int STOCK = 0xFF;
+
+  // Room for the moves of one position
+  public static final int MAX_MOVES = 512;
+
+  protected final Game mRoot;
+  protected final Game mGame;
+  protected final State mState;
+  protected final MoveGenerator mGenerator;
+  protected TranspositionTable mTable;
+
+  protected int mNodeLimit;
+  protected long mTimeLimit;
+  protected long mNodes;
+  // Moves from the position the table depths count from, see setRootDepth()
+  protected int mRootDepth;
+  private boolean mSharedTable;
+  private long mDeadline;
+  // Budget checks since the clock was last read
+  private int mChecks;
+  private int mPeakTableCount;
+  private volatile boolean mCancelled;
+
+  /**
+   * Create a new solver
+   * @param game the game at the position to solve, it is copied
+   * @param tableSize the number of positions the transposition table holds
+   */
+  protected Solver(final Game game, final int tableSize) {
+    mRoot = game.copy();
+    mGame = game.copy();
+    mGame.setRecordHistory(false);
+    mState = mGame.getState();
+    mGenerator = new MoveGenerator(mGame);
+    mTable = new TranspositionTable(tableSize);
+    mNodeLimit = 1000000;
+    mTimeLimit = 0;
+  }
+
+  /**
+   * Create the solver for a game type, with its default budget
+   * @param game the game at the position to solve
+   * @return the solver, null if there is none for the game type
+   */
+  public static Solver create(final Game game) {
+    switch (game.getType()) {
+      case Game.SOLITAIRE:
+        return new KlondikeSolver(game, KlondikeSolver.THOUGHTFUL);
+      case Game.SPIDER:
+        return new SpiderSolver(game);
+      case Game.FREECELL:
+        return new FreecellSolver(game);
+    }
+    return null;
+  }
+
+  // ==========================================================================
+  // Getters and Setters
+  // -------------------
+  public Game getGame() { return mRoot; }
+  public TranspositionTable getTable() { return mTable; }
+  public int getNodeLimit() { return mNodeLimit; }
+  public long getTimeLimit() { return mTimeLimit; }
+  public int getRootDepth() { return mRootDepth; }
+  public boolean isCancelled() { return mCancelled; }
+
+  public void setTable(TranspositionTable table) { mTable = table; mSharedTable = false; }
+  public void setNodeLimit(int nodeLimit) { mNodeLimit = nodeLimit; }
+
+  /**
+   * Search with a table other solvers use at the same time, solve()
+   * leaves starting a new generation to the owner of the table
+   * @param table the shared table
+   */
+  public void shareTable(TranspositionTable table) { mTable = table; mSharedTable = true; }
+
+  /**
+   * Set how many moves the position to solve is from the position a
+   * shared table was started for, so depths stored by solvers of
+   * different subtrees compare
+   * @param rootDepth the count of moves
+   */
+  public void setRootDepth(int rootDepth) { mRootDepth = rootDepth; }
+
+  /**
+   * Change the position to solve, so one solver can be used for many
+   * @param game a game of the same rules at the position to solve, it is copied
+   */
+  public void setPosition(final Game game) {
+    mRoot.getState().copyFrom(game.getState());
+    mRoot.setRulesExtra(game.getRulesExtra());
+  }
+
+  /**
+   * Set the time budget
+   * @param timeLimit the time limit in milliseconds, 0 for none
+   */
+  public void setTimeLimit(long timeLimit) { mTimeLimit = timeLimit; }
+
+  /**
+   * Stop a running search, solve() returns CANCELLED. The cancel holds
+   * until the next solve() starts.
+   */
+  public void cancel() { mCancelled = true; }
+
+  /**
+   * Forget a cancel, see solveUnlessCancelled()
+   */
+  public void clearCancel() { mCancelled = false; }
+
+  // ==========================================================================
+  // Searching
+  // ---------
+
+  /**
+   * Search for a solution, a cancel of an earlier search is cleared
+   * @return the solution, or why there is none
+   */
+  public Solution solve() {
+    clearCancel();
+    return solveUnlessCancelled();
+  }
+
+  /**
+   * Search for a solution, unless cancel() was called since
+   * clearCancel(). A thread that makes the solver known to the thread
+   * cancelling it calls clearCancel() before and this after, so a cancel
+   * made in between is not lost.
+   * @return the solution, or why there is none
+   */
+  public Solution solveUnlessCancelled() {
+    long start = System.nanoTime();
+    mNodes = 0;
+    mChecks = 0;
+    mPeakTableCount = 0;
+    mDeadline = mTimeLimit > 0 ? start + mTimeLimit * 1000000L : 0;
+    if (!mSharedTable) {
+      mTable.newGeneration();
+    }
+    mState.copyFrom(mRoot.getState());
+    mGame.setRulesExtra(mRoot.getRulesExtra());
+
+    int status = search();
+    long[] moves = null;
+    if (status == Solution.SOLVED) {
+      moves = buildMoves();
+    }
+    updatePeak();
+    return new Solution(status, moves, mNodes, System.nanoTime() - start, mPeakTableCount);
+  }
+
+  /**
+   * Run the search from mState
+   * @return the Solution status
+   */
+  abstract protected int search();
+
+  /**
+   * Get the packed moves picked by a successful search, from the root
+   * @return array holding the path, getPathLength() moves long
+   */
+  abstract protected int[] getPath();
+  abstract protected int getPathLength();
+
+  /**
+   * Key of the current position in the transposition table, solvers
+   * add anything not held in the State or fold symmetric positions
+   * @return the position key
+   */
+  protected long getKey() {
+    return mState.getHash();
+  }
+
+  /**
+   * Play forced moves after a searched move
+   * @param game the game to play them on
+   */
+  protected void autoPlay(final Game game) { }
+
+  /**
+   * Check the budget, called once per node. The clock is read every
+   * 256 calls, counted apart from mNodes, which can step by many
+   * children between calls.
+   * @return true if the search has to stop
+   */
+  protected boolean isOutOfBudget() {
+    if (mCancelled || mNodes >= mNodeLimit) {
+      return true;
+    }
+    if ((++mChecks & 0xFF) == 0) {
+      updatePeak();
+      return mDeadline != 0 && System.nanoTime() > mDeadline;
+    }
+    return false;
+  }
+
+  /**
+   * Get the status to return when the budget ran out
+   * @return CANCELLED or UNKNOWN
+   */
+  protected int getBudgetStatus() {
+    return mCancelled ? Solution.CANCELLED : Solution.UNKNOWN;
+  }
+
+  private void updatePeak() {
+    mPeakTableCount = Math.max(mPeakTableCount, mTable.getCount());
+  }
+
+  // ==========================================================================
+  // Moves
+  // -----
+  public static int encode(final int from, final int to, final int count) {
+    return (count << 16) | (to << 8) | from;
+  }
+  public static int getFrom(final int move) { return move & 0xFF; }
+  public static int getTo(final int move) { return (move >>> 8) & 0xFF; }
+  public static int getCount(final int move) { return move >>> 16; }
+
+  /**
+   * Generate the legal moves of the current position
+   * @param buffer array to add the packed moves to
+   * @param off index to add the first move at
+   * @return the count of moves added
+   */
+  protected int generateMoves(final int[] buffer, final int off) {
+    return mGenerator.generate(buffer, off);
+  }
+
+  /**
+   * Generate the moves of a position other than the one searched, used
+   * to split a search. Forced moves are played on the game first, the
+   * same as after a searched move.
+   * @param game the position, a game of the same rules
+   * @param buffer array to put the packed moves in
+   * @return the count of moves
+   */
+  protected int expand(final Game game, final int[] buffer) {
+    autoPlay(game);
+    mState.copyFrom(game.getState());
+    mGame.setRulesExtra(game.getRulesExtra());
+    return generateMoves(buffer, 0);
+  }
+
+  /**
+   * Play a packed move
+   * @param game the game to play it on
+   * @param move the packed move
+   * @return true if the move was played, false if the stock could not be dealt
+   */
+  public static boolean play(final Game game, final int move) {
+    if (getFrom(move) == STOCK) {
+      boolean dealt = game.dealStock();
+      for (int i = 1; i < getCount(move) && dealt; i++) {
+        dealt = game.dealStock();
+      }
+      return dealt;
+    }
+    game.move(getFrom(move), getTo(move), getCount(move));
+    return true;
+  }
+
+  /**
+   * Play the path of the search again from the root with history on
+   * @return the packed moves of the solution
+   */
+  private long[] buildMoves() {
+    Game game = mRoot.copy();
+    game.setRecordHistory(true);
+    autoPlay(game);
+    int[] path = getPath();
+    for (int i = 0; i < getPathLength(); i++) {
+      play(game, path[i]);
+      autoPlay(game);
+    }
+    return game.getMoveHistory().toArray();
+  }
+}
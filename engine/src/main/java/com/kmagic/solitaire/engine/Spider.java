@@ -0,0 +1,159 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+/**
+ * Spider, with one, two or four suits. Completed runs of thirteen are
+ * removed to the out of play pile 11.
+ */
+public class Spider extends Game {
+
+  private final int mSuits;
+
+  /**
+   * Create Spider rules
+   * @param suits count of suits in play, 1, 2 or 4
+   */
+  public Spider(final int suits) {
+    super(SPIDER, 104, 12);
+    mSuits = suits;
+
+    for (int i = 0; i < 10; i++) {
+      mPile[i] = new Pile(Pile.GENERIC);
+      mPile[i].setBuildSeq(Pile.SEQ_DSC);
+      mPile[i].setBuildSuit(Pile.SUIT_ANY);
+      mPile[i].setMoveSeq(Pile.SEQ_ASC);
+      mPile[i].setMoveSuit(Pile.SUIT_SAME);
+      mPile[i].setBehavior(Pile.PACK_MULTI);
+      mPile[i].setDisplay(Pile.DISPLAY_MIX);
+      mPile[i].setHack(Pile.DEALHACK);
+    }
+
+    // Out of play piles for the stock and completed runs
+    mPile[10] = new Pile(Pile.DEAL_FROM);
+    mPile[11] = new Pile(Pile.DEAL_TO);
+  }
+
+  public int getSuits() { return mSuits; }
+
+  @Override
+  protected Game newInstance() {
+    return new Spider(mSuits);
+  }
+
+  @Override
+  protected Deck createDeck() {
+    return new Deck(2, mSuits);
+  }
+
+  @Override
+  protected void deal(final Deck deck) {
+    int i = 54;
+    while (i > 0) {
+      for (int j = 0; j < 10 && i > 0; j++) {
+        i--;
+        mState.push(j, deck.popCard());
+        mState.setHiddenCount(j, mState.getCount(j) - 1);
+      }
+    }
+
+    while (!deck.isEmpty()) {
+      mState.push(10, deck.popCard());
+    }
+  }
+
+  @Override
+  public boolean dealStock() {
+    if (mState.getCount(10) == 0) {
+      return false;
+    }
+    int count = mState.getCount(10) > 10 ? 10 : mState.getCount(10);
+    if (mRecordHistory) {
+      mMoveHistory.push(10, 0, count-1, 1, false, false);
+    }
+    for (int i = 0; i < count; i++) {
+      mState.push(i, mState.pop(10));
+      afterMove(i);
+    }
+    return true;
+  }
+
+  /**
+   * Remove a completed run of thirteen from the top of a pile
+   * @param pile the pile cards landed on
+   */
+  @Override
+  protected void afterMove(final int pile) {
+    if (pile >= 10 || mState.getVisibleCount(pile) < 13) {
+      return;
+    }
+    int count = mState.getCount(pile);
+    int top = mState.getCard(pile, count - 1);
+    if (Cards.value(top) != Cards.ACE) {
+      return;
+    }
+    int suit = Cards.suit(top);
+    int val = 2;
+    for (int i = count - 2; i >= 0 && val < 14; i--, val++) {
+      int card = mState.getCard(pile, i);
+      if (Cards.value(card) != val || Cards.suit(card) != suit) {
+        break;
+      }
+    }
+    if (val == 14) {
+      for (int j = 0; j < 13; j++) {
+        mState.push(11, mState.pop(pile));
+      }
+      boolean unhide = mState.unhideTopCard(pile);
+      if (mRecordHistory) {
+        mMoveHistory.push(pile, 11, 13, true, unhide);
+      }
+    }
+  }
+
+  /**
+   * Cards dealt from the stock or removed as a completed run are out of play
+   */
+  @Override
+  public int getMovableCount(final int pile, final int free) {
+    return pile >= 10 ? 0 : super.getMovableCount(pile, free);
+  }
+
+  @Override
+  public boolean isWon() {
+    return mState.getCount(11) == mCardCount;
+  }
+
+  @Override
+  public String getGameTypeString() {
+    if (mSuits == 1) {
+      return "Spider1Suit";
+    } else if (mSuits == 2) {
+      return "Spider2Suit";
+    }
+    return "Spider4Suit";
+  }
+
+  @Override
+  public String getPrettyGameTypeString() {
+    if (mSuits == 1) {
+      return "Spider One Suit";
+    } else if (mSuits == 2) {
+      return "Spider Two Suit";
+    }
+    return "Spider Four Suit";
+  }
+}
@@ -0,0 +1,307 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+/**
+ * Spider solver, a depth bounded beam search. Each level expands every
+ * position of the beam, rates the children and keeps the best of them
+ * for the next level, skipping positions seen on earlier levels through
+ * the transposition table. Dealing the stock to all ten columns is a
+ * move like any other and completed runs go to pile 11 as the rules
+ * remove them. Positions live in two preallocated beams and the parent
+ * and move of every kept position in per level arrays, so searching
+ * never allocates.
+ *
+ * The rating counts runs built in suit above runs built off suit, more
+ * so the fewer suits are in play, as only runs in suit move together.
+ * A beam that runs dry or reaches the depth bound gives UNKNOWN, beam
+ * search is not complete so it never proves a deal unsolvable.
+ */
+public class SpiderSolver extends Solver {
+
+  private static final int COLUMNS = 10;
+  private static final int STOCK_PILE = 10;
+  private static final int DONE = 11;
+
+  private final int mSuits;
+  private final int mWidth;
+  private final int mMaxDepth;
+  private final int mStride;
+
+  private byte[] mBeam;
+  private byte[] mNextBeam;
+  private final int[] mParent;
+  private final int[] mMove;
+  private final State mParentState;
+  private final int[] mMoves;
+
+  // Children picked for the next level, a heap with the worst on top
+  private final int[] mPickScore;
+  private final int[] mPickParent;
+  private final int[] mPickMove;
+  private int mPickCount;
+
+  private int mGoalLevel;
+  private int mGoalNode;
+  private int[] mPath;
+  private int mPathLength;
+
+  /**
+   * Create a solver with the default beam
+   * @param game a Spider game at the position to solve
+   */
+  public SpiderSolver(final Game game) {
+    this(game, 256, 1000);
+  }
+
+  /**
+   * Create a solver
+   * @param game a Spider game at the position to solve
+   * @param width positions kept at each level
+   * @param maxDepth most moves searched
+   */
+  public SpiderSolver(final Game game, final int width, final int maxDepth) {
+    this(game, width, maxDepth, width * maxDepth / 2);
+  }
+
+  /**
+   * Create a solver
+   * @param game a Spider game at the position to solve
+   * @param width positions kept at each level
+   * @param maxDepth most moves searched
+   * @param tableSize the number of positions the transposition table holds
+   */
+  public SpiderSolver(final Game game, final int width, final int maxDepth,
+                      final int tableSize) {
+    super(game, tableSize);
+    if (game.getType() != Game.SPIDER) {
+      throw new IllegalArgumentException("Not a Spider game");
+    }
+    mSuits = ((Spider)game).getSuits();
+    mWidth = width;
+    mMaxDepth = maxDepth;
+    mStride = mState.getSize();
+    mBeam = new byte[width * mStride];
+    mNextBeam = new byte[width * mStride];
+    mParent = new int[width * maxDepth];
+    mMove = new int[width * maxDepth];
+    mParentState = new State(mState);
+    mMoves = new int[MAX_MOVES];
+    mPickScore = new int[width];
+    mPickParent = new int[width];
+    mPickMove = new int[width];
+    mPath = new int[maxDepth];
+    mNodeLimit = Integer.MAX_VALUE;
+  }
+
+  public int getWidth() { return mWidth; }
+  public int getMaxDepth() { return mMaxDepth; }
+
+  @Override
+  protected int search() {
+    mPathLength = 0;
+    if (mGame.isWon()) {
+      mGoalLevel = -1;
+      return Solution.SOLVED;
+    }
+    mTable.put(getKey(), 0, 0);
+    mState.writeTo(mBeam, 0);
+    int beamSize = 1;
+
+    for (int level = 0; level < mMaxDepth; level++) {
+      // Rate every child of the beam, keeping the best of them
+      mPickCount = 0;
+      for (int node = 0; node < beamSize; node++) {
+        mParentState.readFrom(mBeam, node * mStride);
+        mState.copyFrom(mParentState);
+        int count = generateMoves(mMoves, 0);
+        for (int i = 0; i < count; i++) {
+          if (isOutOfBudget()) {
+            return getBudgetStatus();
+          }
+          if (i > 0) {
+            mState.copyFrom(mParentState);
+          }
+          play(mGame, mMoves[i]);
+          mNodes++;
+          if (mGame.isWon()) {
+            mParent[level * mWidth] = node;
+            mMove[level * mWidth] = mMoves[i];
+            mGoalLevel = level;
+            mGoalNode = 0;
+            return Solution.SOLVED;
+          }
+          if (mTable.probe(getKey()) != TranspositionTable.NOT_FOUND) {
+            continue;
+          }
+          pick(evaluate(), node, mMoves[i]);
+        }
+      }
+      if (mPickCount == 0) {
+        return Solution.UNKNOWN;
+      }
+
+      // Build the next beam from the picked children
+      int next = 0;
+      for (int i = 0; i < mPickCount; i++) {
+        mState.readFrom(mBeam, mPickParent[i] * mStride);
+        play(mGame, mPickMove[i]);
+        if (!mTable.put(getKey(), level + 1, level + 1)) {
+          // Reached twice on this level
+          continue;
+        }
+        mState.writeTo(mNextBeam, next * mStride);
+        mParent[level * mWidth + next] = mPickParent[i];
+        mMove[level * mWidth + next] = mPickMove[i];
+        next++;
+      }
+      byte[] beam = mBeam;
+      mBeam = mNextBeam;
+      mNextBeam = beam;
+      beamSize = next;
+    }
+    return Solution.UNKNOWN;
+  }
+
+  /**
+   * Offer a child for the next beam, replacing the worst one when full
+   */
+  private void pick(final int score, final int parent, final int move) {
+    if (mPickCount == mWidth) {
+      if (score <= mPickScore[0]) {
+        return;
+      }
+      mPickCount--;
+      siftDown(0, mPickScore[mPickCount], mPickParent[mPickCount], mPickMove[mPickCount]);
+    }
+    int idx = mPickCount++;
+    while (idx > 0) {
+      int up = (idx - 1) >> 1;
+      if (mPickScore[up] <= score) {
+        break;
+      }
+      set(idx, mPickScore[up], mPickParent[up], mPickMove[up]);
+      idx = up;
+    }
+    set(idx, score, parent, move);
+  }
+
+  private void siftDown(int idx, final int score, final int parent, final int move) {
+    int half = mPickCount >> 1;
+    while (idx < half) {
+      int child = 2 * idx + 1;
+      if (child + 1 < mPickCount && mPickScore[child + 1] < mPickScore[child]) {
+        child++;
+      }
+      if (score <= mPickScore[child]) {
+        break;
+      }
+      set(idx, mPickScore[child], mPickParent[child], mPickMove[child]);
+      idx = child;
+    }
+    set(idx, score, parent, move);
+  }
+
+  private void set(final int idx, final int score, final int parent, final int move) {
+    mPickScore[idx] = score;
+    mPickParent[idx] = parent;
+    mPickMove[idx] = move;
+  }
+
+  /**
+   * Generate moves of runs in suit onto a card one higher or an empty
+   * column, and dealing. Only the first empty column is tried and moving
+   * a whole column into an empty one is skipped.
+   */
+  @Override
+  protected int generateMoves(final int[] buffer, final int off) {
+    int n = off;
+    int emptyColumn = -1;
+    for (int i = 0; i < COLUMNS && emptyColumn == -1; i++) {
+      if (mState.getCount(i) == 0) {
+        emptyColumn = i;
+      }
+    }
+    for (int from = 0; from < COLUMNS; from++) {
+      int movable = mGame.getMovableCount(from);
+      int count = mState.getCount(from);
+      for (int run = 1; run <= movable; run++) {
+        int value = Cards.value(mState.getCard(from, count - run));
+        for (int to = 0; to < COLUMNS; to++) {
+          int top = mState.getTop(to);
+          if (to == from || (top != Cards.NONE && Cards.value(top) != value + 1)) {
+            continue;
+          }
+          if (top == Cards.NONE && (to != emptyColumn || run == count)) {
+            continue;
+          }
+          buffer[n++] = encode(from, to, run);
+        }
+      }
+    }
+    if (mState.getCount(STOCK_PILE) > 0) {
+      buffer[n++] = encode(STOCK, 0, 1);
+    }
+    return n - off;
+  }
+
+  /**
+   * Rate the current position, higher is better
+   */
+  private int evaluate() {
+    int inSuit = mSuits == 1 ? 10 : (mSuits == 2 ? 14 : 18);
+    int offSuit = mSuits == 1 ? 10 : 3;
+    int score = 1000 * (mState.getCount(DONE) / 13) - 2 * mState.getCount(STOCK_PILE);
+    for (int i = 0; i < COLUMNS; i++) {
+      int count = mState.getCount(i);
+      if (count == 0) {
+        score += 60;
+        continue;
+      }
+      int hidden = mState.getHiddenCount(i);
+      score -= 15 * hidden;
+      int below = mState.getCard(i, hidden);
+      for (int j = hidden + 1; j < count; j++) {
+        int card = mState.getCard(i, j);
+        if (Cards.value(below) == Cards.value(card) + 1) {
+          score += Cards.suit(below) == Cards.suit(card) ? inSuit : offSuit;
+        }
+        below = card;
+      }
+    }
+    return score;
+  }
+
+  @Override
+  protected int[] getPath() {
+    if (mGoalLevel < 0) {
+      mPathLength = 0;
+      return mPath;
+    }
+    mPathLength = mGoalLevel + 1;
+    int node = mGoalNode;
+    for (int level = mGoalLevel; level >= 0; level--) {
+      mPath[level] = mMove[level * mWidth + node];
+      node = mParent[level * mWidth + node];
+    }
+    return mPath;
+  }
+
+  @Override
+  protected int getPathLength() {
+    return mPathLength;
+  }
+}
@@ -0,0 +1,68 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+/**
+ * SplitMix64 random numbers. The whole state is one long stepped by a
+ * constant, so a deal number can seed it directly and split() hands out
+ * independent generators for parallel work. Not thread safe, give each
+ * thread its own.
+ */
+public class SplitMix {
+
+  private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+  private long mSeed;
+
+  /**
+   * Create a new generator
+   * @param seed the seed, every seed gives its own sequence
+   */
+  public SplitMix(final long seed) {
+    mSeed = seed;
+  }
+
+  /**
+   * Get the next 64 random bits
+   * @return the random bits
+   */
+  public long nextLong() {
+    mSeed += GOLDEN_GAMMA;
+    return Zobrist.mix(mSeed);
+  }
+
+  /**
+   * Get a random int in a range without modulo bias
+   * @param bound the end of the range, exclusive and positive
+   * @return a number from 0 to bound - 1
+   */
+  public int nextInt(final int bound) {
+    long limit = (1L << 32) - (1L << 32) % bound;
+    long bits;
+    do {
+      bits = nextLong() >>> 32;
+    } while (bits >= limit);
+    return (int)(bits % bound);
+  }
+
+  /**
+   * Create a generator independent of this one, advancing this one
+   * @return the new generator
+   */
+  public SplitMix split() {
+    return new SplitMix(nextLong());
+  }
+}
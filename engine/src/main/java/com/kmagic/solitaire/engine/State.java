@@ -0,0 +1,363 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+/**
+ * A position, the cards of every pile of a game and which of them are
+ * face down. Piles are addressed by the same index as the anchors of the
+ * app, screen positions are left to the app.
+ *
+ * Every pile has a fixed slot in one byte array, room for all the cards
+ * in play, so adding and taking a card never moves the other piles and
+ * copying and comparing positions never allocates. A card is its code
+ * with FACE_DOWN set while it is hidden.
+ *
+ * Alongside the cards the state keeps, as cards are added, taken and
+ * turned, a Zobrist hash of the position (see Zobrist), the count of
+ * face down cards and the runs of each pile. The run of a card is the
+ * count of face up cards ending at it that move together by the link
+ * rule of the Pile, so the movable run on top of a pile is known without
+ * walking it. The rules of a pile are read as cards are added, so they
+ * are set before the cards are dealt.
+ */
+public class State {
+
+  // Maximum cards in a single pile, two decks
+  public static final int MAX_CARDS = 104;
+
+  // Set on the byte of a face down card
+  public static final int FACE_DOWN = 0x80;
+  private static final int CARD_MASK = 0x7F;
+
+  private final int mPileCount;
+  // Rules of each pile for the runs, a null pile links no cards
+  private final Pile[] mPiles;
+
+  // Slot of each pile in mData and mRun, bytes
+  private final int mSlotSize;
+  private final byte[] mData;
+  private final byte[] mRun;
+  private final int[] mCount;
+  private final int[] mHidden;
+  // Bit per pile set while it is empty, piles past 64 are left out
+  private long mEmpty;
+
+  private final long[] mPileHash;
+  private long mHash;
+
+  /**
+   * Create a new empty state of piles that link no cards
+   * @param piles the number of piles
+   * @param cards the total number of cards in play
+   */
+  public State(final int piles, final int cards) {
+    this(new Pile[piles], cards);
+  }
+
+  /**
+   * Create a new empty state
+   * @param piles the rules of every pile, the array is kept
+   * @param cards the total number of cards in play
+   */
+  public State(final Pile[] piles, final int cards) {
+    mPileCount = piles.length;
+    mPiles = piles;
+    mSlotSize = cards;
+    mData = new byte[mPileCount * cards];
+    mRun = new byte[mPileCount * cards];
+    mCount = new int[mPileCount];
+    mHidden = new int[mPileCount];
+    mPileHash = new long[mPileCount];
+    clear();
+  }
+
+  /**
+   * Create a copy of a state, sharing the pile rules
+   * @param state the state to copy
+   */
+  public State(final State state) {
+    this(state.mPiles, state.mSlotSize);
+    copyFrom(state);
+  }
+
+  /**
+   * Copy another state of the same game into this one
+   * @param state the state to copy
+   */
+  public void copyFrom(final State state) {
+    System.arraycopy(state.mData, 0, mData, 0, mData.length);
+    System.arraycopy(state.mRun, 0, mRun, 0, mRun.length);
+    System.arraycopy(state.mCount, 0, mCount, 0, mPileCount);
+    System.arraycopy(state.mHidden, 0, mHidden, 0, mPileCount);
+    System.arraycopy(state.mPileHash, 0, mPileHash, 0, mPileCount);
+    mEmpty = state.mEmpty;
+    mHash = state.mHash;
+  }
+
+  /**
+   * Remove all cards
+   */
+  public void clear() {
+    for (int i = 0; i < mPileCount; i++) {
+      mCount[i] = 0;
+      mHidden[i] = 0;
+      mPileHash[i] = 0;
+    }
+    mEmpty = mPileCount >= 64 ? -1L : (1L << mPileCount) - 1;
+    mHash = 0;
+  }
+
+  /**
+   * Check if two states of the same game hold the same position
+   * @param state the state to compare with
+   * @return true if every pile holds the same cards face the same way
+   */
+  public boolean equals(final State state) {
+    if (state.mHash != mHash || state.mEmpty != mEmpty) {
+      return false;
+    }
+    for (int i = 0, slot = 0; i < mPileCount; i++, slot += mSlotSize) {
+      if (mCount[i] != state.mCount[i]) {
+        return false;
+      }
+      for (int j = slot; j < slot + mCount[i]; j++) {
+        if (mData[j] != state.mData[j]) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    return o instanceof State && equals((State)o);
+  }
+
+  @Override
+  public int hashCode() {
+    return (int)(mHash ^ (mHash >>> 32));
+  }
+
+  /**
+   * Get the size of the state in bytes, as written by writeTo()
+   * @return the size in bytes
+   */
+  public int getSize() { return mPileCount + mSlotSize; }
+
+  /**
+   * Write the state into part of a byte array, used to keep many
+   * positions in one arena. The piles are packed, the card count of
+   * each pile followed by the cards of every pile bottom up.
+   * @param dst the array to write to
+   * @param off offset to write at, getSize() bytes are written
+   */
+  public void writeTo(final byte[] dst, final int off) {
+    int at = off + mPileCount;
+    for (int i = 0, slot = 0; i < mPileCount; i++, slot += mSlotSize) {
+      dst[off + i] = (byte)mCount[i];
+      System.arraycopy(mData, slot, dst, at, mCount[i]);
+      at += mCount[i];
+    }
+  }
+
+  /**
+   * Read a state written by writeTo() of a state of the same game
+   * @param src the array to read from
+   * @param off offset to read at
+   */
+  public void readFrom(final byte[] src, final int off) {
+    mHash = 0;
+    mEmpty = 0;
+    int at = off + mPileCount;
+    for (int i = 0, slot = 0; i < mPileCount; i++, slot += mSlotSize) {
+      int count = src[off + i];
+      System.arraycopy(src, at, mData, slot, count);
+      at += count;
+      mCount[i] = count;
+      long hash = 0;
+      for (int j = 0; j < count; j++) {
+        hash ^= Zobrist.card(j, mData[slot + j]);
+      }
+      mPileHash[i] = hash;
+      mHash ^= Zobrist.pile(i, hash);
+      if (count == 0) {
+        setEmpty(i, true);
+      }
+      updateRuns(i);
+    }
+  }
+
+  // ==========================================================================
+  // Getters and Setters
+  // -------------------
+  public int getPileCount() { return mPileCount; }
+  public int getCount(int pile) { return mCount[pile]; }
+  public int getCard(int pile, int idx) { return mData[pile * mSlotSize + idx] & CARD_MASK; }
+  public boolean isFaceDown(int pile, int idx) { return (mData[pile * mSlotSize + idx] & FACE_DOWN) != 0; }
+  public int getHiddenCount(int pile) { return mHidden[pile]; }
+  public int getVisibleCount(int pile) { return mCount[pile] - mHidden[pile]; }
+  public long getHash() { return mHash; }
+  public long getPileHash(int pile) { return mPileHash[pile]; }
+
+  /**
+   * Get the piles that hold no cards
+   * @return a bit per empty pile, 1 << pile
+   */
+  public long getEmptyPiles() { return mEmpty; }
+
+  public int getTop(int pile) {
+    return mCount[pile] > 0 ? mData[pile * mSlotSize + mCount[pile] - 1] & CARD_MASK : Cards.NONE;
+  }
+
+  /**
+   * Get the length of the run on top of a pile, the face up cards that
+   * link by the rules of the pile
+   * @param pile the pile index
+   * @return the count of cards, 0 if the top card is face down or there is none
+   */
+  public int getRun(final int pile) {
+    return mCount[pile] > 0 ? mRun[pile * mSlotSize + mCount[pile] - 1] : 0;
+  }
+
+  /**
+   * Turn the bottom cards of a pile face down and the rest face up
+   * @param pile the pile index
+   * @param count count of face down cards
+   */
+  public void setHiddenCount(final int pile, final int count) {
+    int start = pile * mSlotSize;
+    long hash = mPileHash[pile];
+    for (int i = 0; i < mCount[pile]; i++) {
+      byte card = (byte)(i < count ? mData[start + i] | FACE_DOWN : mData[start + i] & CARD_MASK);
+      if (card != mData[start + i]) {
+        hash ^= Zobrist.card(i, mData[start + i]) ^ Zobrist.card(i, card);
+        mData[start + i] = card;
+      }
+    }
+    setPileHash(pile, hash);
+    updateRuns(pile);
+  }
+
+  // ==========================================================================
+  // Functions to add and take cards
+  // -------------------------------
+
+  /**
+   * Add a face up card on top of a pile
+   * @param pile the pile index
+   * @param card the card code
+   */
+  public void push(final int pile, final int card) {
+    int count = mCount[pile];
+    mData[pile * mSlotSize + count] = (byte)card;
+    setPileHash(pile, mPileHash[pile] ^ Zobrist.card(count, card));
+    mCount[pile] = count + 1;
+    if (count == 0) {
+      setEmpty(pile, false);
+    }
+    if ((card & FACE_DOWN) != 0 && mHidden[pile] == count) {
+      mHidden[pile]++;
+    }
+    updateRun(pile, count);
+  }
+
+  /**
+   * Take the top card off a pile
+   * @param pile the pile index
+   * @return the card code
+   */
+  public int pop(final int pile) {
+    int count = mCount[pile] - 1;
+    byte card = mData[pile * mSlotSize + count];
+    setPileHash(pile, mPileHash[pile] ^ Zobrist.card(count, card));
+    mCount[pile] = count;
+    if (count == 0) {
+      setEmpty(pile, true);
+    }
+    mHidden[pile] = Math.min(mHidden[pile], count);
+    return card & CARD_MASK;
+  }
+
+  /**
+   * Turn the top card face up when every card left is face down
+   * @param pile the pile index
+   * @return true if a card was turned, false if not
+   */
+  public boolean unhideTopCard(final int pile) {
+    int count = mCount[pile];
+    int at = pile * mSlotSize + count - 1;
+    if (count > 0 && (mData[at] & FACE_DOWN) != 0) {
+      long hash = mPileHash[pile] ^ Zobrist.card(count - 1, mData[at]);
+      mData[at] &= CARD_MASK;
+      setPileHash(pile, hash ^ Zobrist.card(count - 1, mData[at]));
+      mHidden[pile] = Math.min(mHidden[pile], count - 1);
+      updateRun(pile, count - 1);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Replace the hash of a pile and update the position hash with it
+   * @param pile the pile index
+   * @param hash the new pile hash
+   */
+  private void setPileHash(final int pile, final long hash) {
+    mHash ^= Zobrist.pile(pile, mPileHash[pile]) ^ Zobrist.pile(pile, hash);
+    mPileHash[pile] = hash;
+  }
+
+  private void setEmpty(final int pile, final boolean empty) {
+    if (pile < 64) {
+      mEmpty = empty ? mEmpty | (1L << pile) : mEmpty & ~(1L << pile);
+    }
+  }
+
+  /**
+   * Set the run of a card from the card below it
+   * @param pile the pile index
+   * @param idx the index of the card in the pile
+   */
+  private void updateRun(final int pile, final int idx) {
+    int at = pile * mSlotSize + idx;
+    int run = 0;
+    if ((mData[at] & FACE_DOWN) == 0) {
+      run = 1;
+      if (idx > 0 && mRun[at - 1] > 0 && mPiles[pile] != null &&
+          mPiles[pile].isLink(mData[at - 1], mData[at])) {
+        run += mRun[at - 1];
+      }
+    }
+    mRun[at] = (byte)run;
+  }
+
+  /**
+   * Set the runs and the face down count of a whole pile
+   * @param pile the pile index
+   */
+  private void updateRuns(final int pile) {
+    int start = pile * mSlotSize;
+    int hidden = 0;
+    while (hidden < mCount[pile] && (mData[start + hidden] & FACE_DOWN) != 0) {
+      hidden++;
+    }
+    mHidden[pile] = hidden;
+    for (int i = 0; i < mCount[pile]; i++) {
+      updateRun(pile, i);
+    }
+  }
+}
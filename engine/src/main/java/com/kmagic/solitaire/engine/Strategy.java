@@ -0,0 +1,111 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+/**
+ * An automated player for the Simulator. The legal moves of a position
+ * are generated for it, less the moves back to a position already seen
+ * this game, and it picks one of them or gives up.
+ */
+public abstract class Strategy {
+
+  // Returned by nextMove() to give up
+  public static final int NONE = -1;
+
+  private final int[] mMoves;
+  private final TranspositionTable mSeen;
+  private MoveGenerator mGenerator;
+  private State mStart;
+
+  protected Strategy() {
+    mMoves = new int[Solver.MAX_MOVES];
+    mSeen = new TranspositionTable(1 << 12);
+  }
+
+  /**
+   * Create a strategy by name
+   * @param name "greedy" or "random"
+   * @return the strategy, null on an unknown name
+   */
+  public static Strategy create(final String name) {
+    if ("greedy".equals(name)) {
+      return new GreedyStrategy();
+    } else if ("random".equals(name)) {
+      return new RandomStrategy();
+    }
+    return null;
+  }
+
+  /**
+   * Start a new game
+   * @param game the game, just dealt
+   */
+  public void reset(final Game game) {
+    if (mGenerator == null || mGenerator.getGame() != game) {
+      mGenerator = new MoveGenerator(game);
+    }
+    mSeen.clear();
+    mSeen.put(game.getPositionKey(), 0, 0);
+  }
+
+  /**
+   * Pick the next move
+   * @param game the game at the position to move from
+   * @param random the generator to break ties with
+   * @return the packed move, see Solver, or NONE to give up
+   */
+  public int nextMove(final Game game, final SplitMix random) {
+    State state = game.getState();
+    if (mStart == null || mStart.getSize() != state.getSize()) {
+      mStart = new State(state);
+    } else {
+      mStart.copyFrom(state);
+    }
+    boolean record = game.getRecordHistory();
+    int extra = game.getRulesExtra();
+    game.setRecordHistory(false);
+
+    int count = mGenerator.generate(mMoves, 0);
+    int n = 0;
+    for (int i = 0; i < count; i++) {
+      if (Solver.play(game, mMoves[i]) && mSeen.probe(game.getPositionKey()) == TranspositionTable.NOT_FOUND) {
+        mMoves[n++] = mMoves[i];
+      }
+      state.copyFrom(mStart);
+      game.setRulesExtra(extra);
+    }
+    game.setRecordHistory(record);
+
+    int move = n > 0 ? pick(game, mMoves, n, random) : NONE;
+    if (move != NONE) {
+      Solver.play(game, move);
+      mSeen.put(game.getPositionKey(), 0, 0);
+      state.copyFrom(mStart);
+      game.setRulesExtra(extra);
+    }
+    return move;
+  }
+
+  /**
+   * Pick one of the moves
+   * @param game the game at the position to move from, not to be changed
+   * @param moves the packed moves, none of them back to a position seen
+   * @param count the count of moves, at least one
+   * @param random the generator to break ties with
+   * @return the packed move, or NONE to give up
+   */
+  abstract protected int pick(Game game, int[] moves, int count, SplitMix random);
+}
@@ -0,0 +1,184 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size transposition table keyed by position hash. Slots are kept
+ * in a primitive long array, a key followed by its packed entry, and
+ * grouped in aligned buckets of a few slots a key is looked up in. When
+ * the bucket is full the entry from the oldest search generation, then
+ * the shallowest one, is replaced. Entries of older generations are not
+ * found, they only wait to be replaced.
+ */
+public class TranspositionTable {
+
+  // Returned by probe() when a position is not in the table
+  public static final int NOT_FOUND = Integer.MIN_VALUE;
+
+  // Slots of a bucket, checked for a key before replacing one
+  protected static final int PROBES = 4;
+
+  // Results of store()
+  protected static final int UPDATED = 0;
+  protected static final int ADDED = 1;
+  protected static final int REPLACED = 2;
+
+  private static final long EMPTY = 0;
+
+  private final long[] mTable;
+  private final int mMask;
+  private int mGeneration;
+  private int mCount;
+  private long mReplaced;
+
+  /**
+   * Create a new table
+   * @param capacity the minimum number of entries, rounded up to a power of two
+   */
+  public TranspositionTable(final int capacity) {
+    int size = Integer.highestOneBit(Math.max(capacity, PROBES) - 1) << 1;
+    mTable = new long[size * 2];
+    mMask = size - 1;
+  }
+
+  // ==========================================================================
+  // Getters and Setters
+  // -------------------
+  public int getCapacity() { return mMask + 1; }
+  public int getCount() { return mCount; }
+  public long getReplaced() { return mReplaced; }
+  public int getGeneration() { return mGeneration; }
+
+  /**
+   * Start a new search, entries of older searches are no longer found
+   * and are replaced first
+   */
+  public void newGeneration() {
+    mGeneration = (mGeneration + 1) & 0xFFFF;
+  }
+
+  /**
+   * Remove all entries
+   */
+  public void clear() {
+    Arrays.fill(mTable, EMPTY);
+    mCount = 0;
+    mReplaced = 0;
+  }
+
+  /**
+   * Look up a position
+   * @param hash the position hash
+   * @return the stored value, NOT_FOUND if not stored this generation
+   */
+  public int probe(final long hash) {
+    long key = toKey(hash);
+    int slot = getBucket(key);
+    for (int i = 0; i < PROBES; i++, slot++) {
+      long stored = mTable[slot * 2];
+      if (stored == key) {
+        long entry = mTable[slot * 2 + 1];
+        return (int)(entry >>> 48) == mGeneration ? (int)entry : NOT_FOUND;
+      } else if (stored == EMPTY) {
+        break;
+      }
+    }
+    return NOT_FOUND;
+  }
+
+  /**
+   * Store a position
+   * @param hash the position hash
+   * @param value the value to store with it
+   * @param depth how much work the value is worth, deeper entries are kept longer
+   * @return true if a new entry was made, false if the position was already
+   *         stored this generation
+   */
+  public boolean put(final long hash, final int value, final int depth) {
+    int result = store(hash, value, depth);
+    if (result == ADDED) {
+      mCount++;
+    } else if (result == REPLACED) {
+      mReplaced++;
+    }
+    return result != UPDATED;
+  }
+
+  /**
+   * Store a position without counting it
+   * @param hash the position hash
+   * @param value the value to store with it
+   * @param depth how much work the value is worth
+   * @return UPDATED, ADDED or REPLACED
+   */
+  protected final int store(final long hash, final int value, final int depth) {
+    long key = toKey(hash);
+    long entry = pack(value, depth);
+    int slot = getBucket(key);
+    int victim = -1;
+    long victimScore = Long.MAX_VALUE;
+    for (int i = 0; i < PROBES; i++, slot++) {
+      long stored = mTable[slot * 2];
+      if (stored == key) {
+        // The same position from an older search counts as a new one
+        boolean old = (int)(mTable[slot * 2 + 1] >>> 48) != mGeneration;
+        mTable[slot * 2 + 1] = entry;
+        return old ? REPLACED : UPDATED;
+      } else if (stored == EMPTY) {
+        mTable[slot * 2] = key;
+        mTable[slot * 2 + 1] = entry;
+        return ADDED;
+      }
+      long score = score(mTable[slot * 2 + 1]);
+      if (score < victimScore) {
+        victimScore = score;
+        victim = slot;
+      }
+    }
+    mTable[victim * 2] = key;
+    mTable[victim * 2 + 1] = entry;
+    return REPLACED;
+  }
+
+  /**
+   * Get the first slot of the bucket of a position
+   * @param hash the position hash
+   * @return the slot index
+   */
+  protected final int getBucket(final long hash) {
+    long key = toKey(hash);
+    return (int)(key ^ (key >>> 32)) & mMask & -PROBES;
+  }
+
+  // Zero marks an empty slot, so move that one hash out of the way
+  private static long toKey(final long hash) {
+    return hash == EMPTY ? 1 : hash;
+  }
+
+  private long pack(final int value, final int depth) {
+    return ((long)mGeneration << 48) | ((long)(depth & 0xFFFF) << 32) | (value & 0xFFFFFFFFL);
+  }
+
+  // Lower scores are replaced first, entries of this search beat older ones
+  private long score(final long entry) {
+    int generation = (int)(entry >>> 48) & 0xFFFF;
+    int depth = (int)(entry >>> 32) & 0xFFFF;
+    int age = (mGeneration - generation) & 0xFFFF;
+    return ((long)(0xFFFF - age) << 16) | depth;
+  }
+}
@@ -0,0 +1,70 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+/**
+ * Zobrist keys for hashing positions. A pile hashes the card byte at
+ * each depth, and a position mixes each pile hash with its pile index,
+ * so both can be kept up to date in O(1) as single cards come and go.
+ */
+public final class Zobrist {
+
+  // Card bytes are looked up as code | DOWN_KEY when face down
+  private static final int DOWN_KEY = 0x40;
+  private static final int KEYS_PER_DEPTH = 0x80;
+
+  private static final long[] KEY = new long[State.MAX_CARDS * KEYS_PER_DEPTH];
+
+  static {
+    for (int i = 0; i < KEY.length; i++) {
+      KEY[i] = mix(0x5DEECE66DL + i);
+    }
+  }
+
+  private Zobrist() {}
+
+  /**
+   * Get the key of a card at a depth of a pile
+   * @param depth index of the card in the pile, 0 is the bottom
+   * @param card the card byte, code with State.FACE_DOWN if hidden
+   * @return the key
+   */
+  public static long card(final int depth, final int card) {
+    int idx = (card & 0x3F) | ((card & State.FACE_DOWN) != 0 ? DOWN_KEY : 0);
+    return KEY[depth * KEYS_PER_DEPTH + idx];
+  }
+
+  /**
+   * Combine the hash of a pile with its index
+   * @param pile the pile index
+   * @param hash the pile hash
+   * @return the contribution of the pile to the position hash
+   */
+  public static long pile(final int pile, final long hash) {
+    return hash == 0 ? 0 : mix(hash + pile * 0x9E3779B97F4A7C15L);
+  }
+
+  /**
+   * Scramble 64 bits, the SplitMix64 finalizer
+   * @param z the value to scramble
+   * @return the scrambled value
+   */
+  public static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
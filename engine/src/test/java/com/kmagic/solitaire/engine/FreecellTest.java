@@ -0,0 +1,110 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks Freecell deals against the Microsoft Freecell deals of the same
+ * number
+ */
+public class FreecellTest {
+
+  // Rows of the columns, top row first, as Microsoft Freecell shows them
+  private static final String[] DEAL_1 = {
+    "JD 2D 9H JC 5D 7H 7C 5H",
+    "KD KC 9S 5S AD QC KH 3H",
+    "2S KS 9D QD JS AS AH 3C",
+    "4C 5C TS QH 4H AC 4D 7S",
+    "3S TD 4S TH 8H 2C JH 7D",
+    "6D 8S 8D QS 6C 3D 8C TC",
+    "6S 9C 2H 6H",
+  };
+
+  private static final String[] DEAL_617 = {
+    "7D AD 5C 3S 5S 8C 2D AH",
+    "TD 7S QD AC 6D 8H AS KH",
+    "TH QC 3H 9D 6S 8D 3D TC",
+    "KD 5H 9S 3C 8S 7H 4D JS",
+    "4C QS 9C 9H 7C 6H 2C 2S",
+    "4S TS 2H 5D JC 6C JH QH",
+    "JD KS KC 4H",
+  };
+
+  @Test
+  public void dealsMatchMicrosoftNumbers() {
+    assertDeal(1, DEAL_1);
+    assertDeal(617, DEAL_617);
+  }
+
+  @Test
+  public void sameNumberSameDeal() {
+    Freecell a = new Freecell();
+    Freecell b = new Freecell();
+    a.deal(Freecell.MS_DEALS + 5);
+    b.deal(Freecell.MS_DEALS + 5);
+    assertEquals(Freecell.MS_DEALS + 5, a.getDealNumber());
+    assertTrue(a.getState().equals(b.getState()));
+  }
+
+  @Test
+  public void randomDealsAreMicrosoftNumbers() {
+    Freecell game = new Freecell();
+    for (int i = 0; i < 100; i++) {
+      game.deal();
+      assertTrue(game.getDealNumber() >= 1 && game.getDealNumber() <= Freecell.MS_DEALS);
+    }
+  }
+
+  private static void assertDeal(final long number, final String[] rows) {
+    Freecell game = new Freecell();
+    game.deal(number);
+    State state = game.getState();
+    for (int row = 0; row < rows.length; row++) {
+      String[] cards = rows[row].split(" ");
+      for (int column = 0; column < cards.length; column++) {
+        assertEquals("deal " + number + " row " + row + " column " + column,
+                     parse(cards[column]), state.getCard(8 + column, row));
+      }
+    }
+    for (int column = 0; column < 8; column++) {
+      assertEquals(column < 4 ? 7 : 6, state.getCount(8 + column));
+    }
+  }
+
+  private static int parse(final String card) {
+    int value = "A23456789TJQK".indexOf(card.charAt(0)) + 1;
+    int suit;
+    switch (card.charAt(1)) {
+      case 'C':
+        suit = Cards.CLUBS;
+        break;
+      case 'D':
+        suit = Cards.DIAMONDS;
+        break;
+      case 'H':
+        suit = Cards.HEARTS;
+        break;
+      default:
+        suit = Cards.SPADES;
+        break;
+    }
+    return Cards.make(value, suit);
+  }
+}
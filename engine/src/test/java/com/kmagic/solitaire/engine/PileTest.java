@@ -0,0 +1,143 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the rule tables each kind of pile compiles
+ */
+public class PileTest {
+
+  private static final int NONE = Cards.NONE;
+
+  @Test
+  public void foundationTakesAceThenSuitUp() {
+    Pile pile = new Pile(Pile.SEQ_SINK);
+    assertTrue(pile.canDrop(NONE, card(Cards.ACE, Cards.HEARTS), 1, 0));
+    assertFalse(pile.canDrop(NONE, card(2, Cards.HEARTS), 1, 0));
+    assertTrue(pile.canDrop(card(Cards.ACE, Cards.CLUBS), card(2, Cards.CLUBS), 1, 0));
+    assertFalse(pile.canDrop(card(Cards.ACE, Cards.CLUBS), card(2, Cards.SPADES), 1, 0));
+    assertFalse(pile.canDrop(card(Cards.ACE, Cards.CLUBS), card(3, Cards.CLUBS), 1, 0));
+    assertFalse(pile.canDrop(card(Cards.KING, Cards.CLUBS), card(Cards.ACE, Cards.CLUBS), 1, 0));
+    // One card at a time
+    assertFalse(pile.canDrop(card(Cards.ACE, Cards.CLUBS), card(2, Cards.CLUBS), 2, 0));
+  }
+
+  @Test
+  public void klondikeColumnBuildsDownInAlternateColors() {
+    Pile pile = new Pile(Pile.SUIT_SEQ_STACK);
+    assertTrue(pile.canDrop(NONE, card(Cards.KING, Cards.SPADES), 1, 0));
+    assertFalse(pile.canDrop(NONE, card(Cards.QUEEN, Cards.SPADES), 1, 0));
+    int ten = card(10, Cards.CLUBS);
+    assertTrue(pile.canDrop(ten, card(9, Cards.HEARTS), 1, 0));
+    assertTrue(pile.canDrop(ten, card(9, Cards.DIAMONDS), 5, 0));
+    assertFalse(pile.canDrop(ten, card(9, Cards.SPADES), 1, 0));
+    assertFalse(pile.canDrop(ten, card(8, Cards.HEARTS), 1, 0));
+    assertFalse(pile.canDrop(ten, card(Cards.JACK, Cards.HEARTS), 1, 0));
+  }
+
+  @Test
+  public void freecellColumnLimitsRunsByFreeSpaces() {
+    Pile pile = new Pile(Pile.FREECELL_STACK);
+    int ten = card(10, Cards.SPADES);
+    int nine = card(9, Cards.DIAMONDS);
+    assertTrue(pile.canDrop(ten, nine, 3, 0));
+    assertFalse(pile.canDrop(ten, card(9, Cards.CLUBS), 1, 0));
+    // An empty column takes any card, but only as many as there is room for
+    assertTrue(pile.canDrop(NONE, nine, 2, 2));
+    assertFalse(pile.canDrop(NONE, nine, 3, 2));
+    assertTrue(pile.isLink(ten, nine));
+    assertFalse(pile.isLink(ten, card(9, Cards.SPADES)));
+    assertFalse(pile.isLink(nine, ten));
+    assertEquals(3, pile.limitRun(5, 2));
+    assertEquals(2, pile.limitRun(2, 4));
+  }
+
+  @Test
+  public void freecellCellHoldsOneCard() {
+    Pile pile = new Pile(Pile.FREECELL_HOLD);
+    assertTrue(pile.canDrop(NONE, card(5, Cards.HEARTS), 1, 0));
+    assertFalse(pile.canDrop(NONE, card(5, Cards.HEARTS), 2, 0));
+    assertFalse(pile.canDrop(card(6, Cards.CLUBS), card(5, Cards.HEARTS), 1, 0));
+  }
+
+  @Test
+  public void spiderBuildsAnySuitButMovesOneSuit() {
+    Pile pile = new Pile(Pile.SPIDER_STACK);
+    int ten = card(10, Cards.SPADES);
+    assertTrue(pile.canDrop(NONE, card(4, Cards.HEARTS), 1, 0));
+    assertTrue(pile.canDrop(ten, card(9, Cards.SPADES), 1, 0));
+    assertTrue(pile.canDrop(ten, card(9, Cards.HEARTS), 1, 0));
+    assertFalse(pile.canDrop(ten, card(8, Cards.SPADES), 1, 0));
+    assertTrue(pile.isLink(ten, card(9, Cards.SPADES)));
+    assertFalse(pile.isLink(ten, card(9, Cards.CLUBS)));
+  }
+
+  @Test
+  public void stockCannotBePickedUp() {
+    assertFalse(new Pile(Pile.DEAL_FROM).canPickup());
+    assertEquals(0, new Pile(Pile.DEAL_FROM).limitRun(3, 0));
+    assertTrue(new Pile(Pile.DEAL_TO).canPickup());
+  }
+
+  @Test
+  public void genericPileFollowsItsRules() {
+    Pile pile = new Pile(Pile.GENERIC);
+    assertFalse(pile.canPickup());
+    pile.setBuildSeq(Pile.SEQ_DSC);
+    pile.setSuit(Pile.SUIT_SAME);
+    pile.setStartSeq(Pile.START_KING);
+    pile.setBehavior(Pile.PACK_MULTI);
+    assertTrue(pile.canPickup());
+    assertTrue(pile.canDrop(NONE, card(Cards.KING, Cards.CLUBS), 1, 0));
+    assertFalse(pile.canDrop(NONE, card(Cards.QUEEN, Cards.CLUBS), 1, 0));
+    int eight = card(8, Cards.DIAMONDS);
+    assertTrue(pile.canDrop(eight, card(7, Cards.DIAMONDS), 1, 0));
+    assertFalse(pile.canDrop(eight, card(7, Cards.HEARTS), 1, 0));
+    assertFalse(pile.canDrop(eight, card(9, Cards.DIAMONDS), 1, 0));
+
+    // Rules set later are compiled again
+    pile.setBuildSuit(Pile.SUIT_RB);
+    assertTrue(pile.canDrop(eight, card(7, Cards.SPADES), 1, 0));
+    assertFalse(pile.canDrop(eight, card(7, Cards.DIAMONDS), 1, 0));
+
+    pile.setBehavior(Pile.PACK_NONE);
+    assertFalse(pile.canDrop(eight, card(7, Cards.SPADES), 1, 0));
+  }
+
+  @Test
+  public void movableCountStopsAtBrokenRun() {
+    Pile pile = new Pile(Pile.FREECELL_STACK);
+    State state = new State(new Pile[] { pile }, 4);
+    state.push(0, card(4, Cards.HEARTS));
+    state.push(0, card(10, Cards.SPADES));
+    state.push(0, card(9, Cards.HEARTS));
+    state.push(0, card(8, Cards.CLUBS));
+    assertEquals(3, pile.getMovableCount(state, 0, 4));
+    assertEquals(2, pile.getMovableCount(state, 0, 1));
+    state.setHiddenCount(0, 2);
+    assertEquals(2, pile.getMovableCount(state, 0, 4));
+  }
+
+  private static int card(final int value, final int suit) {
+    return Cards.make(value, suit);
+  }
+}
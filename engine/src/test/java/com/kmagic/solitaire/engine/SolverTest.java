@@ -0,0 +1,164 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the solutions solvers find win the game when replayed
+ * from the deal
+ */
+public class SolverTest {
+
+  private static final int TABLE_SIZE = 1 << 16;
+  private static final long TIME_LIMIT = 5000;
+  // Deals tried before a solver counts as failing
+  private static final int DEALS = 10;
+
+  @Test
+  public void freecellSolutionsReplay() {
+    assertSolves(new Freecell(), new Factory() {
+      public Solver create(Game game) {
+        return new FreecellSolver(game, TABLE_SIZE / 2, TABLE_SIZE);
+      }
+    });
+  }
+
+  @Test
+  public void klondikeSolutionsReplay() {
+    assertSolves(new Klondike(false, true), new Factory() {
+      public Solver create(Game game) {
+        return new KlondikeSolver(game, KlondikeSolver.THOUGHTFUL, TABLE_SIZE);
+      }
+    });
+  }
+
+  @Test
+  public void klondikeBlockedDealIsUnsolvable() {
+    // A five on every other card face down, with a stock of cards that
+    // can never be played, leaves only dealing, a move the search skips
+    // at first
+    Game game = new Klondike(false, true);
+    game.deal(1);
+    State state = game.getState();
+    state.clear();
+    int five = Cards.make(5, Cards.HEARTS);
+    int[] stock = { Cards.make(7, Cards.SPADES), Cards.make(9, Cards.DIAMONDS),
+                    Cards.make(Cards.JACK, Cards.CLUBS) };
+    for (int card = 0; card < Cards.DECK_SIZE; card++) {
+      if (card != five && card != stock[0] && card != stock[1] && card != stock[2]) {
+        state.push(12, card);
+      }
+    }
+    state.setHiddenCount(12, state.getCount(12));
+    state.push(12, five);
+    for (int card : stock) {
+      state.push(0, card);
+    }
+    Solver solver = new KlondikeSolver(game, KlondikeSolver.THOUGHTFUL, TABLE_SIZE);
+    solver.setTimeLimit(TIME_LIMIT);
+    assertEquals(Solution.UNSOLVABLE, solver.solve().getStatus());
+  }
+
+  @Test
+  public void spiderSolutionsReplay() {
+    assertSolves(new Spider(1), new Factory() {
+      public Solver create(Game game) {
+        return new SpiderSolver(game, 256, 1000, TABLE_SIZE);
+      }
+    });
+  }
+
+  @Test
+  public void parallelSolutionReplays() {
+    Game game = new Freecell();
+    game.deal(1);
+    ParallelSolver solver = new ParallelSolver(game, new ParallelSolver.Factory() {
+      public Solver create(Game game, int tableSize) {
+        return new FreecellSolver(game, TABLE_SIZE / 2, tableSize);
+      }
+    }, TABLE_SIZE);
+    solver.setTimeLimit(TIME_LIMIT);
+    Solution solution = solver.solve();
+    assertTrue(solution.toString(), solution.isSolved());
+    assertReplayWins(game, solution);
+  }
+
+  @Test
+  public void reusedSolverMatchesFresh() {
+    Game game = new Freecell();
+    game.deal(1);
+    Solver reused = new FreecellSolver(game, TABLE_SIZE / 2, TABLE_SIZE);
+    for (int deal = 1; deal <= DEALS; deal++) {
+      game.deal(deal);
+      Solver fresh = new FreecellSolver(game, TABLE_SIZE / 2, TABLE_SIZE);
+      fresh.setTimeLimit(TIME_LIMIT);
+      reused.setPosition(game);
+      reused.setTimeLimit(TIME_LIMIT);
+      assertEquals("deal " + deal, fresh.solve().isSolved(), reused.solve().isSolved());
+    }
+  }
+
+  @Test
+  public void cancelHoldsUntilNextSolve() {
+    Game game = new Freecell();
+    game.deal(1);
+    Solver solver = new FreecellSolver(game, TABLE_SIZE / 2, TABLE_SIZE);
+    solver.cancel();
+    solver.setTimeLimit(TIME_LIMIT);
+    assertEquals(Solution.CANCELLED, solver.solveUnlessCancelled().getStatus());
+    assertTrue(solver.solve().isSolved());
+  }
+
+  /**
+   * Solve deals until one is solved, and replay its solution
+   */
+  private static void assertSolves(final Game game, final Factory factory) {
+    for (int deal = 1; deal <= DEALS; deal++) {
+      game.deal(deal);
+      Solver solver = factory.create(game);
+      solver.setTimeLimit(TIME_LIMIT);
+      Solution solution = solver.solve();
+      if (solution.isSolved()) {
+        assertReplayWins(game, solution);
+        return;
+      }
+    }
+    assertTrue("no deal of " + DEALS + " solved", false);
+  }
+
+  /**
+   * Apply moves to a fresh deal of a game, as a replay does
+   */
+  private static void assertReplayWins(final Game game, final Solution solution) {
+    Game replay = game.copy();
+    replay.deal(game.getDealNumber());
+    assertFalse(solution.getMoveCount() == 0);
+    for (int i = 0; i < solution.getMoveCount(); i++) {
+      assertFalse(replay.isWon());
+      replay.apply(solution.getMove(i));
+    }
+    assertTrue(replay.isWon());
+  }
+
+  private interface Factory {
+    Solver create(Game game);
+  }
+}
@@ -0,0 +1,160 @@
+/*
+  Copyright 2016 Obsidian-Studios, Inc.
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+package com.kmagic.solitaire.engine;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the Zobrist hash, face down counts and runs a State keeps up
+ * to date against ones computed from scratch
+ */
+public class StateTest {
+
+  private static final int PILES = 10;
+  private static final int CARDS = 52;
+  private static final Pile[] RULES = new Pile[PILES];
+
+  static {
+    for (int i = 0; i < PILES; i++) {
+      RULES[i] = new Pile(Pile.FREECELL_STACK);
+    }
+  }
+
+  @Test
+  public void incrementalHashMatchesRecomputed() {
+    State state = new State(RULES, CARDS);
+    for (int i = 0; i < CARDS; i++) {
+      state.push(i % PILES, i);
+    }
+    Random random = new Random(42);
+    for (int step = 0; step < 5000; step++) {
+      int from = random.nextInt(PILES);
+      int to = random.nextInt(PILES);
+      switch (random.nextInt(3)) {
+        case 0:
+          if (state.getCount(from) > 0) {
+            state.push(to, state.pop(from));
+          }
+          break;
+        case 1:
+          state.setHiddenCount(from, random.nextInt(state.getCount(from) + 1));
+          break;
+        default:
+          state.unhideTopCard(from);
+          break;
+      }
+      State fresh = recompute(state);
+      assertEquals("step " + step, fresh.getHash(), state.getHash());
+      assertEquals("step " + step, fresh.getEmptyPiles(), state.getEmptyPiles());
+      for (int i = 0; i < PILES; i++) {
+        assertEquals("step " + step, fresh.getHiddenCount(i), state.getHiddenCount(i));
+        assertEquals("step " + step, fresh.getRun(i), state.getRun(i));
+      }
+    }
+  }
+
+  @Test
+  public void runFollowsLinks() {
+    State state = new State(RULES, CARDS);
+    state.push(0, Cards.make(4, Cards.HEARTS));
+    state.push(0, Cards.make(10, Cards.SPADES));
+    state.push(0, Cards.make(9, Cards.HEARTS));
+    assertEquals(2, state.getRun(0));
+    state.push(0, Cards.make(3, Cards.CLUBS));
+    assertEquals(1, state.getRun(0));
+    state.pop(0);
+    assertEquals(2, state.getRun(0));
+    state.setHiddenCount(0, 2);
+    assertEquals(1, state.getRun(0));
+    state.pop(0);
+    assertEquals(0, state.getRun(0));
+    assertTrue(state.unhideTopCard(0));
+    assertEquals(1, state.getRun(0));
+    assertEquals(1, state.getHiddenCount(0));
+  }
+
+  @Test
+  public void samePositionSameHash() {
+    State a = new State(2, 3);
+    State b = new State(2, 3);
+    a.push(0, 5);
+    a.push(1, 6);
+    a.push(0, 7);
+    b.push(1, 6);
+    b.push(0, 5);
+    b.push(1, 7);
+    b.push(0, b.pop(1));
+    assertEquals(a.getHash(), b.getHash());
+    assertTrue(a.equals(b));
+
+    a.setHiddenCount(0, 1);
+    assertNotEquals(a.getHash(), b.getHash());
+    assertFalse(a.equals(b));
+    b.setHiddenCount(0, 1);
+    assertEquals(a.getHash(), b.getHash());
+  }
+
+  @Test
+  public void pilesAreNotInterchangeable() {
+    State a = new State(2, 1);
+    State b = new State(2, 1);
+    a.push(0, 9);
+    b.push(1, 9);
+    assertNotEquals(a.getHash(), b.getHash());
+  }
+
+  @Test
+  public void emptyStateHashesToZero() {
+    State state = new State(3, 2);
+    state.push(1, 4);
+    state.push(2, 5);
+    state.pop(1);
+    state.pop(2);
+    assertEquals(0, state.getHash());
+  }
+
+  @Test
+  public void copyKeepsHash() {
+    State state = new State(PILES, CARDS);
+    for (int i = 0; i < CARDS; i++) {
+      state.push(i % PILES, i);
+    }
+    state.setHiddenCount(3, 2);
+    State copy = new State(state);
+    assertEquals(state.getHash(), copy.getHash());
+    assertTrue(copy.equals(state));
+    copy.pop(3);
+    assertEquals(recompute(copy).getHash(), copy.getHash());
+  }
+
+  /**
+   * Make a state of the same position with its hash computed from scratch
+   */
+  private static State recompute(final State state) {
+    byte[] data = new byte[state.getSize()];
+    state.writeTo(data, 0);
+    State fresh = new State(RULES, CARDS);
+    fresh.readFrom(data, 0);
+    return fresh;
+  }
+}